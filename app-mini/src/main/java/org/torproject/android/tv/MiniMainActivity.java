@@ -22,6 +22,7 @@ import android.net.VpnService;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.text.Html;
 import android.text.TextUtils;
 import android.util.Log;
@@ -59,6 +60,7 @@ import org.torproject.android.core.ui.SettingsPreferencesActivity;
 import org.torproject.android.tv.ui.AppConfigActivity;
 import org.torproject.android.tv.ui.AppManagerActivity;
 import org.torproject.android.tv.ui.onboarding.OnboardingActivity;
+import org.torproject.android.service.BandwidthHistory;
 import org.torproject.android.service.OrbotConstants;
 import org.torproject.android.service.OrbotService;
 import org.torproject.android.service.TorServiceConstants;
@@ -173,16 +175,15 @@ public class MiniMainActivity extends AppCompatActivity implements OrbotConstant
                 mStatusUpdateHandler.sendMessage(msg);
 
             } else if (action.equals(TorServiceConstants.LOCAL_ACTION_BANDWIDTH)) {
-                long upload = intent.getLongExtra("up", 0);
-                long download = intent.getLongExtra("down", 0);
-                long written = intent.getLongExtra("written", 0);
-                long read = intent.getLongExtra("read", 0);
+                // the broadcast only says there is new traffic, the numbers come from the history
+                BandwidthHistory history = OrbotService.getBandwidthHistory();
+                long now = SystemClock.elapsedRealtime();
 
                 Message msg = mStatusUpdateHandler.obtainMessage(MESSAGE_TRAFFIC_COUNT);
-                msg.getData().putLong("download", download);
-                msg.getData().putLong("upload", upload);
-                msg.getData().putLong("readTotal", read);
-                msg.getData().putLong("writeTotal", written);
+                msg.getData().putLong("download", history.getReadRate(BandwidthHistory.Resolution.SECOND, now, BandwidthHistory.CURRENT_RATE_SECONDS));
+                msg.getData().putLong("upload", history.getWriteRate(BandwidthHistory.Resolution.SECOND, now, BandwidthHistory.CURRENT_RATE_SECONDS));
+                msg.getData().putLong("readTotal", history.getSessionRead());
+                msg.getData().putLong("writeTotal", history.getSessionWritten());
                 msg.getData().putString("status", intent.getStringExtra(TorServiceConstants.EXTRA_STATUS));
 
                 mStatusUpdateHandler.sendMessage(msg);
@@ -24,7 +24,10 @@ import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -35,6 +38,7 @@ import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemSelectedListener;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.Spinner;
@@ -42,6 +46,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import net.freehaven.tor.control.TorControlCommands;
+import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.SwitchCompat;
@@ -50,11 +55,15 @@ import androidx.core.content.res.ResourcesCompat;
 import androidx.core.view.GravityCompat;
 import androidx.drawerlayout.widget.DrawerLayout;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import org.torproject.android.core.Languages;
 import org.torproject.android.core.LocaleHelper;
 import org.torproject.android.core.ui.Rotate3dAnimation;
 import org.torproject.android.core.ui.SettingsPreferencesActivity;
+import org.torproject.android.service.LogBuffer;
+import org.torproject.android.service.BandwidthHistory;
 import org.torproject.android.service.OrbotConstants;
 import org.torproject.android.service.OrbotService;
 import org.torproject.android.service.TorServiceConstants;
@@ -68,6 +77,7 @@ import org.torproject.android.ui.hiddenservices.HiddenServicesActivity;
 import org.torproject.android.ui.hiddenservices.backup.BackupUtils;
 import org.torproject.android.ui.hiddenservices.permissions.PermissionManager;
 import org.torproject.android.ui.hiddenservices.providers.HSContentProvider;
+import org.torproject.android.ui.log.LogAdapter;
 import org.torproject.android.ui.onboarding.BridgeWizardActivity;
 import org.torproject.android.ui.onboarding.OnboardingActivity;
 import org.torproject.android.ui.v3onionservice.OnionServiceContentProvider;
@@ -80,6 +90,7 @@ import java.lang.ref.WeakReference;
 import java.net.URLDecoder;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Locale;
 import java.util.StringTokenizer;
@@ -109,6 +120,11 @@ public class OrbotMainActivity extends AppCompatActivity implements OrbotConstan
     private static final int STATUS_UPDATE = 1;
     private static final int MESSAGE_TRAFFIC_COUNT = 2;
     private static final int MESSAGE_PORTS = 3;
+    private static final int MESSAGE_LOG = 4;
+    // log lines taken from the service's log buffer per handler message
+    private static final int LOG_PAGE_SIZE = 200;
+    // log lines kept for the log panel
+    private static final int LOG_VIEW_CAPACITY = 5000;
     private static final float ROTATE_FROM = 0.0f;
     private static final float ROTATE_TO = 360.0f * 4f;// 3.141592654f * 32.0f;
     private static final String[] COUNTRY_CODES = {"DE", "AT", "SE", "CH", "IS", "CA", "US", "ES", "FR", "BG", "PL", "AU", "BR", "CZ", "DK", "FI", "GB", "HU", "NL", "JP", "RO", "RU", "SG", "SK"};
@@ -125,7 +141,12 @@ public class OrbotMainActivity extends AppCompatActivity implements OrbotConstan
     private ImageView imgStatus; //the main touchable image for activating Orbot
     private TextView downloadText;
     private TextView uploadText;
-    private TextView mTxtOrbotLog;
+    private RecyclerView mLogView;
+    private LogAdapter mLogAdapter;
+    private Spinner mSpnLogSeverity;
+    private EditText mTxtLogSearch;
+    private Button mBtnJumpToLatest;
+    private long mLogCursor = OrbotService.getLogBuffer().getFirstSequence();
     private Button mBtnStart;
     private SwitchCompat mBtnVPN;
     private SwitchCompat mBtnBridges;
@@ -150,24 +171,23 @@ public class OrbotMainActivity extends AppCompatActivity implements OrbotConstan
 
             switch (action) {
                 case TorServiceConstants.LOCAL_ACTION_LOG: {
-                    Message msg = mStatusUpdateHandler.obtainMessage(STATUS_UPDATE);
-                    msg.obj = intent.getStringExtra(TorServiceConstants.LOCAL_EXTRA_LOG);
+                    // the lines themselves are read from the log buffer
+                    Message msg = mStatusUpdateHandler.obtainMessage(MESSAGE_LOG);
                     msg.getData().putString("status", intent.getStringExtra(TorServiceConstants.EXTRA_STATUS));
                     mStatusUpdateHandler.sendMessage(msg);
 
                     break;
                 }
                 case TorServiceConstants.LOCAL_ACTION_BANDWIDTH: {
-                    long upload = intent.getLongExtra("up", 0);
-                    long download = intent.getLongExtra("down", 0);
-                    long written = intent.getLongExtra("written", 0);
-                    long read = intent.getLongExtra("read", 0);
+                    // the broadcast only says there is new traffic, the numbers come from the history
+                    BandwidthHistory history = OrbotService.getBandwidthHistory();
+                    long now = SystemClock.elapsedRealtime();
 
                     Message msg = mStatusUpdateHandler.obtainMessage(MESSAGE_TRAFFIC_COUNT);
-                    msg.getData().putLong("download", download);
-                    msg.getData().putLong("upload", upload);
-                    msg.getData().putLong("readTotal", read);
-                    msg.getData().putLong("writeTotal", written);
+                    msg.getData().putLong("download", history.getReadRate(BandwidthHistory.Resolution.SECOND, now, BandwidthHistory.CURRENT_RATE_SECONDS));
+                    msg.getData().putLong("upload", history.getWriteRate(BandwidthHistory.Resolution.SECOND, now, BandwidthHistory.CURRENT_RATE_SECONDS));
+                    msg.getData().putLong("readTotal", history.getSessionRead());
+                    msg.getData().putLong("writeTotal", history.getSessionWritten());
                     msg.getData().putString("status", intent.getStringExtra(TorServiceConstants.EXTRA_STATUS));
 
                     mStatusUpdateHandler.sendMessage(msg);
@@ -292,7 +312,7 @@ public class OrbotMainActivity extends AppCompatActivity implements OrbotConstan
 
         mDrawer = findViewById(R.id.drawer_layout);
 
-        mTxtOrbotLog = findViewById(R.id.orbotLog);
+        setupLogView();
 
         lblStatus = findViewById(R.id.lblStatus);
         lblStatus.setOnClickListener(v -> mDrawer.openDrawer(GravityCompat.END));
@@ -354,6 +374,25 @@ public class OrbotMainActivity extends AppCompatActivity implements OrbotConstan
         }
     }
 
+    /**
+     * @return the countries of the service's GeoIP files that have a name, by name, or a
+     * short list until the service loaded the files
+     */
+    private static String[] getExitCountries() {
+        String[] codes = OrbotService.getExitCountries();
+        if (codes == null)
+            return COUNTRY_CODES;
+
+        ArrayList<String> named = new ArrayList<>();
+        for (String code : codes) {
+            // skips "??" and the like, Locale gives back the code for those
+            if (!code.equalsIgnoreCase(new Locale("", code).getDisplayCountry()))
+                named.add(code);
+        }
+        Collections.sort(named, (a, b) -> new Locale("", a).getDisplayCountry().compareTo(new Locale("", b).getDisplayCountry()));
+        return named.toArray(new String[0]);
+    }
+
     private void setCountrySpinner() {
         String currentExit = Prefs.getExitNodes();
         if (currentExit.length() > 4) {
@@ -366,15 +405,16 @@ public class OrbotMainActivity extends AppCompatActivity implements OrbotConstan
             spnCountries.setEnabled(false);
         } else {
             int selIdx = -1;
+            final String[] countryCodes = getExitCountries();
 
             ArrayList<String> cList = new ArrayList<>();
             cList.add(0, getString(R.string.vpn_default_world));
 
-            for (int i = 0; i < COUNTRY_CODES.length; i++) {
-                Locale locale = new Locale("", COUNTRY_CODES[i]);
+            for (int i = 0; i < countryCodes.length; i++) {
+                Locale locale = new Locale("", countryCodes[i]);
                 cList.add(locale.getDisplayCountry());
 
-                if (currentExit.contains(COUNTRY_CODES[i]))
+                if (currentExit.contains(countryCodes[i]))
                     selIdx = i + 1;
             }
 
@@ -402,7 +442,7 @@ public class OrbotMainActivity extends AppCompatActivity implements OrbotConstan
                     if (position == 0)
                         country = "";
                     else
-                        country = '{' + COUNTRY_CODES[position - 1] + '}';
+                        country = '{' + countryCodes[position - 1] + '}';
 
                     Intent intent = new Intent(OrbotMainActivity.this, OrbotService.class);
                     intent.setAction(TorServiceConstants.CMD_SET_EXIT);
@@ -918,8 +958,6 @@ public class OrbotMainActivity extends AppCompatActivity implements OrbotConstan
             if (torServiceMsg.contains(TorServiceConstants.LOG_NOTICE_HEADER)) {
                 lblStatus.setText(torServiceMsg);
             }
-
-            mTxtOrbotLog.append(torServiceMsg + '\n');
         }
 
         if (torStatus == null || (newTorStatus != null && newTorStatus.equals(torStatus))) {
@@ -1000,6 +1038,106 @@ public class OrbotMainActivity extends AppCompatActivity implements OrbotConstan
         }
     }
 
+    private void setupLogView() {
+        mLogAdapter = new LogAdapter(LOG_VIEW_CAPACITY);
+
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        layoutManager.setStackFromEnd(true);
+        mLogView = findViewById(R.id.orbotLog);
+        mLogView.setLayoutManager(layoutManager);
+        mLogView.setAdapter(mLogAdapter);
+        mLogView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (isLogAtLatest())
+                    mBtnJumpToLatest.setVisibility(View.GONE);
+            }
+        });
+
+        mBtnJumpToLatest = findViewById(R.id.logJumpToLatest);
+        mBtnJumpToLatest.setOnClickListener(v -> scrollLogToLatest());
+
+        String[] severities = new String[LogBuffer.ERR + 1];
+        for (int severity = LogBuffer.DEBUG; severity <= LogBuffer.ERR; severity++)
+            severities[severity] = LogBuffer.getSeverityLabel(severity);
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, severities);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        mSpnLogSeverity = findViewById(R.id.logSeverity);
+        mSpnLogSeverity.setAdapter(adapter);
+        mSpnLogSeverity.setOnItemSelectedListener(new OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parentView, View selectedItemView, int position, long id) {
+                applyLogFilter();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parentView) {
+            }
+        });
+
+        mTxtLogSearch = findViewById(R.id.logSearch);
+        mTxtLogSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                applyLogFilter();
+            }
+        });
+
+        // show what was logged before the activity was created
+        mStatusUpdateHandler.sendEmptyMessage(MESSAGE_LOG);
+    }
+
+    private void applyLogFilter() {
+        mLogAdapter.setFilter(mSpnLogSeverity.getSelectedItemPosition(), mTxtLogSearch.getText().toString());
+        scrollLogToLatest();
+    }
+
+    private boolean isLogAtLatest() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mLogView.getLayoutManager();
+        return layoutManager == null || layoutManager.findLastVisibleItemPosition() >= mLogAdapter.getItemCount() - 1;
+    }
+
+    private void scrollLogToLatest() {
+        if (mLogAdapter.getItemCount() > 0)
+            mLogView.scrollToPosition(mLogAdapter.getItemCount() - 1);
+        mBtnJumpToLatest.setVisibility(View.GONE);
+    }
+
+    /**
+     * Appends the next page of lines from the service's log buffer, and schedules the page
+     * after it so a large backlog doesn't block the main thread in one go.
+     */
+    private void pullLog(String newTorStatus) {
+        ArrayList<LogBuffer.Record> records = new ArrayList<>();
+        mLogCursor = OrbotService.getLogBuffer().read(mLogCursor, LOG_PAGE_SIZE, records);
+
+        String lastLine = null;
+        if (!records.isEmpty()) {
+            boolean atLatest = isLogAtLatest();
+            mLogAdapter.append(records);
+            if (atLatest)
+                scrollLogToLatest();
+            else
+                mBtnJumpToLatest.setVisibility(View.VISIBLE);
+            lastLine = records.get(records.size() - 1).toString();
+        }
+        updateStatus(lastLine, newTorStatus);
+
+        if (records.size() == LOG_PAGE_SIZE) {
+            Message msg = mStatusUpdateHandler.obtainMessage(MESSAGE_LOG);
+            msg.getData().putString("status", newTorStatus);
+            mStatusUpdateHandler.sendMessage(msg);
+        }
+    }
+
     /**
      * Starts tor and related daemons by sending an
      * {@link TorServiceConstants#ACTION_START} {@link Intent} to
@@ -1007,7 +1145,7 @@ public class OrbotMainActivity extends AppCompatActivity implements OrbotConstan
      */
     private void startTor() {
         sendIntentToService(ACTION_START);
-        mTxtOrbotLog.setText("");
+        mLogAdapter.clear();
     }
 
     /**
@@ -1196,6 +1334,12 @@ public class OrbotMainActivity extends AppCompatActivity implements OrbotConstan
                     oma.uploadText.setText(String.format("%s / %s", oma.formatCount(upload), oma.formatTotal(totalWrite)));
                     break;
 
+                case MESSAGE_LOG:
+                    if (oma.torStatus == null && data.getString("status") != null) //first time status
+                        oma.findViewById(R.id.frameMain).setVisibility(View.VISIBLE);
+                    oma.pullLog(data.getString("status"));
+                    break;
+
                 case MESSAGE_PORTS:
                     int socksPort = data.getInt("socks");
                     int httpPort = data.getInt("http");
@@ -0,0 +1,86 @@
+package org.torproject.android.ui.log;
+
+import android.graphics.Color;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.torproject.android.R;
+import org.torproject.android.service.LogBuffer;
+
+import java.util.List;
+
+/**
+ * Shows the lines of a {@link LogStore}, only the rows on screen are ever laid out.
+ */
+public class LogAdapter extends RecyclerView.Adapter<LogAdapter.ViewHolder> {
+
+    private static final int COLOR_WARN = Color.parseColor("#FFC107");
+    private static final int COLOR_ERR = Color.parseColor("#FF5252");
+
+    private final LogStore mStore;
+
+    public LogAdapter(int capacity) {
+        mStore = new LogStore(capacity);
+    }
+
+    public void append(List<LogBuffer.Record> records) {
+        int before = mStore.size();
+        int removed = mStore.append(records);
+        int added = mStore.size() - before + removed;
+
+        if (removed > 0)
+            notifyItemRangeRemoved(0, removed);
+        if (added > 0)
+            notifyItemRangeInserted(mStore.size() - added, added);
+    }
+
+    public void setFilter(int minSeverity, String query) {
+        mStore.setFilter(minSeverity, query);
+        notifyDataSetChanged();
+    }
+
+    public void clear() {
+        mStore.clear();
+        notifyDataSetChanged();
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.layout_log_item, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        LogBuffer.Record record = mStore.get(position);
+        holder.text.setText(record.toString());
+        if (record.severity >= LogBuffer.ERR)
+            holder.text.setTextColor(COLOR_ERR);
+        else if (record.severity == LogBuffer.WARN)
+            holder.text.setTextColor(COLOR_WARN);
+        else
+            holder.text.setTextColor(holder.defaultColor);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mStore.size();
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView text;
+        final int defaultColor;
+
+        ViewHolder(View view) {
+            super(view);
+            text = (TextView) view;
+            defaultColor = text.getCurrentTextColor();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.torproject.android.ui.log;
+
+import org.torproject.android.service.LogBuffer;
+
+import java.util.List;
+
+/**
+ * The log lines the log panel can show, at most {@code capacity} of them, and the subset
+ * that passes the current severity and search filter. Both are rings, so appending a line
+ * and dropping the oldest one cost the same no matter how long tor has been running.
+ *
+ * Searching is incremental: when the new query extends the previous one only the lines that
+ * matched before are searched again.
+ */
+public class LogStore {
+
+    private final LogBuffer.Record[] mRecords;
+    // absolute index of the oldest record held
+    private long mFirst = 0;
+    private int mCount = 0;
+
+    // absolute indexes of the records that pass the filter, oldest first
+    private final long[] mMatches;
+    private int mMatchStart = 0;
+    private int mMatchCount = 0;
+
+    private int mMinSeverity = LogBuffer.DEBUG;
+    private String mQuery = "";
+
+    public LogStore(int capacity) {
+        mRecords = new LogBuffer.Record[capacity];
+        mMatches = new long[capacity];
+    }
+
+    /**
+     * @return how many lines the change removed from the start of the filtered lines, the
+     * number added at the end is the growth of {@link #size()} plus that
+     */
+    public int append(List<LogBuffer.Record> records) {
+        int removed = 0;
+        for (LogBuffer.Record record : records) {
+            if (mCount == mRecords.length) {
+                if (mMatchCount > 0 && mMatches[mMatchStart] == mFirst) {
+                    mMatchStart = (mMatchStart + 1) % mMatches.length;
+                    mMatchCount--;
+                    removed++;
+                }
+                mFirst++;
+                mCount--;
+            }
+
+            long index = mFirst + mCount;
+            mRecords[(int) (index % mRecords.length)] = record;
+            mCount++;
+
+            if (matches(record))
+                mMatches[(mMatchStart + mMatchCount++) % mMatches.length] = index;
+        }
+        return removed;
+    }
+
+    /**
+     * @return the number of lines that pass the filter
+     */
+    public int size() {
+        return mMatchCount;
+    }
+
+    /**
+     * @param position among the lines that pass the filter
+     */
+    public LogBuffer.Record get(int position) {
+        long index = mMatches[(mMatchStart + position) % mMatches.length];
+        return mRecords[(int) (index % mRecords.length)];
+    }
+
+    public void setFilter(int minSeverity, String query) {
+        query = query == null ? "" : query;
+        boolean narrowing = minSeverity >= mMinSeverity && query.startsWith(mQuery);
+        mMinSeverity = minSeverity;
+        mQuery = query;
+
+        if (narrowing) {
+            // only what passed the old filter can pass the new one
+            int kept = 0;
+            for (int i = 0; i < mMatchCount; i++) {
+                long index = mMatches[(mMatchStart + i) % mMatches.length];
+                if (matches(mRecords[(int) (index % mRecords.length)]))
+                    mMatches[(mMatchStart + kept++) % mMatches.length] = index;
+            }
+            mMatchCount = kept;
+        } else {
+            mMatchStart = 0;
+            mMatchCount = 0;
+            for (long index = mFirst; index < mFirst + mCount; index++) {
+                if (matches(mRecords[(int) (index % mRecords.length)]))
+                    mMatches[mMatchCount++] = index;
+            }
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < mRecords.length; i++)
+            mRecords[i] = null;
+        mFirst += mCount;
+        mCount = 0;
+        mMatchStart = 0;
+        mMatchCount = 0;
+    }
+
+    private boolean matches(LogBuffer.Record record) {
+        return record.severity >= mMinSeverity && containsIgnoreCase(record.message, mQuery);
+    }
+
+    private static boolean containsIgnoreCase(String text, String query) {
+        int length = query.length();
+        for (int i = 0; i <= text.length() - length; i++) {
+            if (text.regionMatches(true, i, query, 0, length))
+                return true;
+        }
+        return false;
+    }
+}
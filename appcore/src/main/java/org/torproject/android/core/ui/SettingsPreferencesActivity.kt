@@ -10,6 +10,8 @@ import android.view.inputmethod.EditorInfo
 import androidx.annotation.XmlRes
 import org.torproject.android.core.Languages
 import org.torproject.android.core.LocaleHelper
+import org.torproject.android.service.util.Prefs
+import org.torproject.android.service.vpn.MtuManager
 
 class SettingsPreferencesActivity : PreferenceActivity() {
     private var prefLocale: ListPreference? = null
@@ -30,6 +32,24 @@ class SettingsPreferencesActivity : PreferenceActivity() {
             finish()
             false
         }
+        (findPreference("pref_vpn_mtu") as EditTextPreference?)?.let { bindVpnMtuOverride(it) }
+    }
+
+    /**
+     * The VPN MTU is overridden per network, the preference shows and edits the override of the
+     * network the device is on now.
+     */
+    private fun bindVpnMtuOverride(preference: EditTextPreference) {
+        val networkKey = MtuManager.getNetworkKey(this)
+        val mtu = Prefs.getVpnMtuOverride(networkKey)
+        preference.text = if (mtu > 0) mtu.toString() else ""
+        preference.title = "${preference.title} ($networkKey)"
+        preference.onPreferenceChangeListener = OnPreferenceChangeListener { _: Preference?, newValue: Any? ->
+            val value = (newValue as String?)?.trim()?.toIntOrNull() ?: 0
+            Prefs.setVpnMtuOverride(networkKey, value)
+            preference.text = if (value > 0) value.toString() else ""
+            false
+        }
     }
 
     override fun attachBaseContext(newBase: Context) = super.attachBaseContext(LocaleHelper.onAttach(newBase))
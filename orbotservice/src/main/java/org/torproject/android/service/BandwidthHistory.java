@@ -0,0 +1,218 @@
+package org.torproject.android.service;
+
+import java.util.Arrays;
+
+/**
+ * Bytes read and written by tor, bucketed per second, minute and hour in fixed size ring
+ * buffers. Adding a sample only updates a few array slots, and windows are copied into
+ * arrays the caller owns, so neither side allocates.
+ *
+ * Times are {@link android.os.SystemClock#elapsedRealtime()}, which doesn't jump when the
+ * wall clock is changed and keeps counting in deep sleep.
+ */
+public class BandwidthHistory {
+
+    /**
+     * The number of complete seconds the current rates in the notification and the app are
+     * averaged over.
+     */
+    public static final int CURRENT_RATE_SECONDS = 2;
+
+    public enum Resolution {
+        SECOND(1000L, 300),
+        MINUTE(60 * 1000L, 24 * 60),
+        HOUR(60 * 60 * 1000L, 7 * 24);
+
+        public final long bucketMs;
+        public final int capacity;
+
+        Resolution(long bucketMs, int capacity) {
+            this.bucketMs = bucketMs;
+            this.capacity = capacity;
+        }
+    }
+
+    private final Ring[] mRings = new Ring[Resolution.values().length];
+    private long mTotalRead = 0;
+    private long mTotalWritten = 0;
+    private long mSessionStartRead = 0;
+    private long mSessionStartWritten = 0;
+
+    public BandwidthHistory() {
+        for (Resolution resolution : Resolution.values())
+            mRings[resolution.ordinal()] = new Ring(resolution);
+    }
+
+    public synchronized void add(long timeMs, long read, long written) {
+        for (Ring ring : mRings)
+            ring.add(timeMs, read, written);
+        mTotalRead += read;
+        mTotalWritten += written;
+    }
+
+    public synchronized long getTotalRead() {
+        return mTotalRead;
+    }
+
+    public synchronized long getTotalWritten() {
+        return mTotalWritten;
+    }
+
+    /**
+     * The history outlives a single start of tor, session totals count from here.
+     */
+    public synchronized void startSession() {
+        mSessionStartRead = mTotalRead;
+        mSessionStartWritten = mTotalWritten;
+    }
+
+    public synchronized long getSessionRead() {
+        return mTotalRead - mSessionStartRead;
+    }
+
+    public synchronized long getSessionWritten() {
+        return mTotalWritten - mSessionStartWritten;
+    }
+
+    /**
+     * @return average bytes per second read over the last {@code buckets} complete buckets
+     */
+    public synchronized long getReadRate(Resolution resolution, long nowMs, int buckets) {
+        Ring ring = mRings[resolution.ordinal()];
+        return ring.sum(ring.read, nowMs, buckets) * 1000 / (resolution.bucketMs * clamp(buckets, resolution));
+    }
+
+    /**
+     * @return average bytes per second written over the last {@code buckets} complete buckets
+     */
+    public synchronized long getWriteRate(Resolution resolution, long nowMs, int buckets) {
+        Ring ring = mRings[resolution.ordinal()];
+        return ring.sum(ring.written, nowMs, buckets) * 1000 / (resolution.bucketMs * clamp(buckets, resolution));
+    }
+
+    /**
+     * @return the highest bytes per second read in a single bucket of the last {@code buckets}
+     */
+    public synchronized long getPeakReadRate(Resolution resolution, long nowMs, int buckets) {
+        Ring ring = mRings[resolution.ordinal()];
+        return ring.max(ring.read, nowMs, buckets) * 1000 / resolution.bucketMs;
+    }
+
+    public synchronized long getPeakWriteRate(Resolution resolution, long nowMs, int buckets) {
+        Ring ring = mRings[resolution.ordinal()];
+        return ring.max(ring.written, nowMs, buckets) * 1000 / resolution.bucketMs;
+    }
+
+    /**
+     * Copies the bytes of the last {@code read.length} complete buckets, oldest first.
+     * Buckets without traffic, or from before the history started, are 0.
+     *
+     * @param read    receives the bytes read per bucket, may be null
+     * @param written receives the bytes written per bucket, may be null
+     */
+    public synchronized void copyWindow(Resolution resolution, long nowMs, long[] read, long[] written) {
+        Ring ring = mRings[resolution.ordinal()];
+        if (read != null)
+            ring.copy(ring.read, nowMs, read);
+        if (written != null)
+            ring.copy(ring.written, nowMs, written);
+    }
+
+    public synchronized void clear() {
+        for (Ring ring : mRings)
+            ring.clear();
+        mTotalRead = 0;
+        mTotalWritten = 0;
+        mSessionStartRead = 0;
+        mSessionStartWritten = 0;
+    }
+
+    private static int clamp(int buckets, Resolution resolution) {
+        return Math.max(1, Math.min(buckets, resolution.capacity - 1));
+    }
+
+    private static class Ring {
+        final long bucketMs;
+        final long[] read;
+        final long[] written;
+        // the bucket number (time / bucketMs) of the newest slot, -1 while empty
+        long newest = -1;
+
+        Ring(Resolution resolution) {
+            bucketMs = resolution.bucketMs;
+            read = new long[resolution.capacity];
+            written = new long[resolution.capacity];
+        }
+
+        void add(long timeMs, long bytesRead, long bytesWritten) {
+            long bucket = timeMs / bucketMs;
+            advance(bucket);
+            if (bucket < newest - read.length + 1)
+                return; // older than anything the ring still holds
+            int slot = (int) (bucket % read.length);
+            read[slot] += bytesRead;
+            written[slot] += bytesWritten;
+        }
+
+        /**
+         * Moves the newest slot forward to {@code bucket}, zeroing the slots in between.
+         */
+        void advance(long bucket) {
+            if (bucket <= newest)
+                return;
+            long steps = newest == -1 ? read.length : Math.min(bucket - newest, read.length);
+            for (long b = bucket - steps + 1; b <= bucket; b++) {
+                int slot = (int) (b % read.length);
+                read[slot] = 0;
+                written[slot] = 0;
+            }
+            newest = bucket;
+        }
+
+        /**
+         * The current bucket is still filling up, windows end at the one before it.
+         */
+        long lastComplete(long nowMs) {
+            return nowMs / bucketMs - 1;
+        }
+
+        long valueAt(long[] values, long bucket) {
+            if (newest == -1 || bucket > newest || bucket <= newest - values.length)
+                return 0;
+            return values[(int) (bucket % values.length)];
+        }
+
+        long sum(long[] values, long nowMs, int buckets) {
+            long last = lastComplete(nowMs);
+            long sum = 0;
+            for (long b = last - clampCount(buckets) + 1; b <= last; b++)
+                sum += valueAt(values, b);
+            return sum;
+        }
+
+        long max(long[] values, long nowMs, int buckets) {
+            long last = lastComplete(nowMs);
+            long max = 0;
+            for (long b = last - clampCount(buckets) + 1; b <= last; b++)
+                max = Math.max(max, valueAt(values, b));
+            return max;
+        }
+
+        void copy(long[] values, long nowMs, long[] out) {
+            long last = lastComplete(nowMs);
+            long first = last - out.length + 1;
+            for (int i = 0; i < out.length; i++)
+                out[i] = valueAt(values, first + i);
+        }
+
+        int clampCount(int buckets) {
+            return Math.max(1, Math.min(buckets, read.length - 1));
+        }
+
+        void clear() {
+            Arrays.fill(read, 0);
+            Arrays.fill(written, 0);
+            newest = -1;
+        }
+    }
+}
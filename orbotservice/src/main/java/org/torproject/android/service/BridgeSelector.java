@@ -0,0 +1,184 @@
+package org.torproject.android.service;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.torproject.android.service.util.Utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Picks the bridges to put in the torrc. Candidates are ranked by how often tor managed to
+ * bootstrap through them, kept in a small file so the ranking survives restarts. The ranking
+ * is jittered so Orbot does not always pick the same bridges out of the built-in list.
+ *
+ * A bootstrap is credited to the bridge tor used as the guard of its first circuit, the
+ * others of the torrc were not needed and are left as they were. A start that failed counts
+ * against all of them, none got tor a circuit.
+ *
+ * Bridges are never contacted from here: a direct connect to a bridge before tor starts
+ * would show it to a censor watching the network, and would delay the start.
+ */
+public class BridgeSelector {
+
+    private static final String STATS_FILE = "bridge_stats.json";
+    private static final double JITTER = 0.5;
+
+    private final File mStatsFile;
+    private final Random mRandom;
+    private HashMap<String, Stats> mStats = null;
+
+    public BridgeSelector(File dir, Random random) {
+        mStatsFile = new File(dir, STATS_FILE);
+        mRandom = random;
+    }
+
+    /**
+     * @param lines bridge lines, without the leading "Bridge"
+     * @return up to {@code count} of the lines, best first
+     */
+    public synchronized List<String> select(List<String> lines, int count) {
+        loadStats();
+
+        ArrayList<Candidate> candidates = new ArrayList<>();
+        for (String line : lines)
+            candidates.add(new Candidate(line));
+
+        for (Candidate candidate : candidates)
+            candidate.score = score(mStats.get(candidate.endpoint)) * (1 + JITTER * mRandom.nextDouble());
+
+        Collections.sort(candidates, (a, b) -> Double.compare(a.score, b.score));
+
+        ArrayList<String> selected = new ArrayList<>();
+        for (int i = 0; i < candidates.size() && i < count; i++)
+            selected.add(candidates.get(i).line);
+        return selected;
+    }
+
+    /**
+     * @param lines            the bridge lines tor was started with
+     * @param guardFingerprint the first hop of tor's first circuit, which is one of the bridges
+     * @return false if none of the lines has that fingerprint, nothing is recorded then
+     */
+    public synchronized boolean recordBootstrap(Collection<String> lines, String guardFingerprint) {
+        for (String line : lines) {
+            Candidate candidate = new Candidate(line);
+            if (candidate.endpoint != null && guardFingerprint.equalsIgnoreCase(candidate.fingerprint)) {
+                loadStats();
+                getOrCreate(candidate.endpoint).bootstraps++;
+                saveStats();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param lines the bridge lines of a start that failed before tor built a circuit
+     */
+    public synchronized void recordFailure(Collection<String> lines) {
+        loadStats();
+        for (String line : lines) {
+            Candidate candidate = new Candidate(line);
+            if (candidate.endpoint != null)
+                getOrCreate(candidate.endpoint).bootstrapFailures++;
+        }
+        saveStats();
+    }
+
+    /**
+     * Lower is better, the share of failed bootstraps with one success and one failure assumed
+     * up front. Bridges without any data rank in the middle, so new ones still get picked now
+     * and then.
+     */
+    private static double score(Stats stats) {
+        if (stats == null)
+            return 0.5;
+        return (stats.bootstrapFailures + 1.0) / (stats.bootstraps + stats.bootstrapFailures + 2.0);
+    }
+
+    private Stats getOrCreate(String endpoint) {
+        Stats stats = mStats.get(endpoint);
+        if (stats == null) {
+            stats = new Stats();
+            mStats.put(endpoint, stats);
+        }
+        return stats;
+    }
+
+    private void loadStats() {
+        if (mStats != null)
+            return;
+
+        mStats = new HashMap<>();
+        if (!mStatsFile.exists())
+            return;
+
+        try {
+            JSONObject json = new JSONObject(Utils.readString(new FileInputStream(mStatsFile)));
+            Iterator<String> endpoints = json.keys();
+            while (endpoints.hasNext()) {
+                String endpoint = endpoints.next();
+                JSONObject entry = json.getJSONObject(endpoint);
+                Stats stats = new Stats();
+                stats.bootstraps = entry.optInt("bootstraps");
+                stats.bootstrapFailures = entry.optInt("bootstrapFailures");
+                mStats.put(endpoint, stats);
+            }
+        } catch (IOException | JSONException e) {
+            Log.d(OrbotConstants.TAG, "discarding unreadable bridge statistics", e);
+            mStats.clear();
+        }
+    }
+
+    private void saveStats() {
+        try {
+            JSONObject json = new JSONObject();
+            for (Map.Entry<String, Stats> entry : mStats.entrySet()) {
+                Stats stats = entry.getValue();
+                json.put(entry.getKey(), new JSONObject()
+                        .put("bootstraps", stats.bootstraps)
+                        .put("bootstrapFailures", stats.bootstrapFailures));
+            }
+            Utils.writeFileAtomically(mStatsFile, json.toString());
+        } catch (JSONException e) {
+            Log.d(OrbotConstants.TAG, "unable to save bridge statistics", e);
+        }
+    }
+
+    private static class Stats {
+        int bootstraps;
+        int bootstrapFailures;
+    }
+
+    private static class Candidate {
+        final String line;
+        final String endpoint;
+        final String fingerprint;
+        double score;
+
+        /**
+         * Bridge lines are "[transport] address:port [fingerprint] [options]".
+         */
+        Candidate(String line) {
+            this.line = line.trim();
+
+            String[] tokens = this.line.split("\\s+");
+            int endpointIndex = tokens.length > 0 && tokens[0].indexOf(':') == -1 ? 1 : 0;
+            this.endpoint = endpointIndex < tokens.length ? tokens[endpointIndex] : null;
+            this.fingerprint = endpointIndex + 1 < tokens.length && tokens[endpointIndex + 1].matches("[0-9A-Fa-f]{40}")
+                    ? tokens[endpointIndex + 1] : null;
+        }
+    }
+}
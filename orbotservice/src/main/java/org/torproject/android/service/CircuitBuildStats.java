@@ -0,0 +1,187 @@
+package org.torproject.android.service;
+
+import android.os.SystemClock;
+
+import org.torproject.android.service.util.LatencyHistogram;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Build times and failures of circuits, fed by CIRC events and kept per way of reaching the
+ * network: "direct", or "bridge:" followed by the transports of the bridges in use. The
+ * segment is taken when a circuit is launched, so circuits that outlive a configuration change
+ * still count for the configuration they were built with. The numbers are kept while the
+ * process lives, so the segments of several starts can be compared.
+ *
+ * jtorctl does not pass on the REASON of FAILED and CLOSED events, failures are instead
+ * counted by how many hops the circuit had when it failed: failing without a single hop
+ * points at the guard or bridge.
+ */
+public class CircuitBuildStats {
+
+    public static final String DIRECT = "direct";
+    // failures with this many hops or more share the last counter
+    private static final int MAX_HOPS_COUNTED = 3;
+
+    private volatile String mSegment = DIRECT;
+    private final ConcurrentHashMap<String, Launch> mLaunches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Segment> mSegments = new ConcurrentHashMap<>();
+
+    /**
+     * @param bridgeLines the bridge lines in use, without the leading "Bridge", empty when
+     *                    connecting directly
+     */
+    public void setBridges(Collection<String> bridgeLines) {
+        mSegment = segmentOf(bridgeLines);
+    }
+
+    public void onCircuitStatus(String circId, String status, int hopCount) {
+        long now = SystemClock.elapsedRealtime();
+
+        if (status.equals("LAUNCHED")) {
+            mLaunches.put(circId, new Launch(now, getSegment(mSegment)));
+            return;
+        }
+
+        Launch launch = mLaunches.get(circId);
+        if (launch == null)
+            return; // launched before we were listening, or already built
+
+        switch (status) {
+            case "EXTENDED":
+                launch.hops = Math.max(launch.hops, hopCount);
+                break;
+            case "BUILT":
+                mLaunches.remove(circId);
+                launch.segment.built.incrementAndGet();
+                launch.segment.buildTimes.record(now - launch.launchedAt);
+                break;
+            case "FAILED":
+                mLaunches.remove(circId);
+                launch.segment.failed.incrementAndGet();
+                launch.segment.failedAtHop.incrementAndGet(Math.min(Math.max(launch.hops, hopCount), MAX_HOPS_COUNTED));
+                break;
+            case "CLOSED":
+                mLaunches.remove(circId);
+                launch.segment.closedUnbuilt.incrementAndGet();
+                break;
+        }
+    }
+
+    /**
+     * Forgets the circuits that are still being built, tor is gone.
+     */
+    public void onTorStopped() {
+        mLaunches.clear();
+    }
+
+    public Map<String, Summary> getSummaries() {
+        HashMap<String, Summary> summaries = new HashMap<>();
+        for (Map.Entry<String, Segment> entry : mSegments.entrySet()) {
+            Segment segment = entry.getValue();
+            long[] failedAtHop = new long[MAX_HOPS_COUNTED + 1];
+            for (int i = 0; i < failedAtHop.length; i++)
+                failedAtHop[i] = segment.failedAtHop.get(i);
+            summaries.put(entry.getKey(), new Summary(entry.getKey(), segment.built.get(), segment.failed.get(),
+                    segment.closedUnbuilt.get(), failedAtHop, segment.buildTimes.getPercentiles()));
+        }
+        return summaries;
+    }
+
+    private Segment getSegment(String name) {
+        Segment segment = mSegments.get(name);
+        if (segment == null) {
+            Segment created = new Segment();
+            segment = mSegments.putIfAbsent(name, created);
+            if (segment == null)
+                segment = created;
+        }
+        return segment;
+    }
+
+    /**
+     * Bridge lines are "[transport] address:port ...", lines without a transport are "vanilla".
+     */
+    static String segmentOf(Collection<String> bridgeLines) {
+        if (bridgeLines.isEmpty())
+            return DIRECT;
+
+        TreeSet<String> transports = new TreeSet<>();
+        for (String line : bridgeLines) {
+            String first = line.trim().split("\\s+")[0];
+            transports.add(first.indexOf(':') == -1 ? first : "vanilla");
+        }
+
+        StringBuilder segment = new StringBuilder("bridge");
+        char separator = ':';
+        for (String transport : transports) {
+            segment.append(separator).append(transport);
+            separator = '+';
+        }
+        return segment.toString();
+    }
+
+    private static class Launch {
+        final long launchedAt;
+        final Segment segment;
+        // only touched by the thread reading control port events
+        int hops = 0;
+
+        Launch(long launchedAt, Segment segment) {
+            this.launchedAt = launchedAt;
+            this.segment = segment;
+        }
+    }
+
+    private static class Segment {
+        final LatencyHistogram buildTimes = new LatencyHistogram();
+        final AtomicLong built = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong closedUnbuilt = new AtomicLong();
+        final AtomicLongArray failedAtHop = new AtomicLongArray(MAX_HOPS_COUNTED + 1);
+    }
+
+    public static class Summary {
+        public final String segment;
+        public final long built;
+        public final long failed;
+        /**
+         * circuits closed before they were built, e.g. because tor no longer needed them
+         */
+        public final long closedUnbuilt;
+        /**
+         * failures by the number of hops the circuit had, the last entry counts the rest
+         */
+        public final long[] failedAtHop;
+        /**
+         * LAUNCHED to BUILT
+         */
+        public final LatencyHistogram.Percentiles buildTime;
+
+        Summary(String segment, long built, long failed, long closedUnbuilt, long[] failedAtHop,
+                LatencyHistogram.Percentiles buildTime) {
+            this.segment = segment;
+            this.built = built;
+            this.failed = failed;
+            this.closedUnbuilt = closedUnbuilt;
+            this.failedAtHop = failedAtHop;
+            this.buildTime = buildTime;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(segment).append(": built=").append(built)
+                    .append(" failed=").append(failed).append(" (by hops");
+            for (long count : failedAtHop)
+                sb.append(' ').append(count);
+            return sb.append(") closedUnbuilt=").append(closedUnbuilt)
+                    .append(" buildTime ").append(buildTime).toString();
+        }
+    }
+}
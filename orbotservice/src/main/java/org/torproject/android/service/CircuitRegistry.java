@@ -0,0 +1,311 @@
+package org.torproject.android.service;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import net.freehaven.tor.control.TorControlConnection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The circuits and streams tor currently has open, fed by CIRC and STREAM events. Every
+ * entry, down to the relays of a circuit, is an immutable object that is replaced on each
+ * event, so readers on any thread get consistent entries from {@link #getCircuits()} and
+ * {@link #getStreams()} without locking.
+ *
+ * jtorctl only passes on the id, status and path of CIRC events and the id, status and
+ * target of STREAM events. The purpose of a circuit and the circuit a stream is attached to
+ * are filled in from GETINFO circuit-status and stream-status on the executor, after a
+ * circuit was built or a stream succeeded; a burst of events shares one lookup. A stream
+ * that closed before the lookup ran is not listed by tor any more and keeps no circuit.
+ */
+public class CircuitRegistry {
+
+    public interface StreamListener {
+        /**
+         * Called on the executor once the circuit of a stream is known.
+         */
+        void onStreamCircuit(String streamId, String circuitId);
+    }
+
+    private final ConcurrentHashMap<String, Circuit> mCircuits = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Stream> mStreams = new ConcurrentHashMap<>();
+    private final AtomicLong mCircuitsBuilt = new AtomicLong();
+    private final AtomicLong mCircuitsFailed = new AtomicLong();
+    private final AtomicLong mStreamsFailed = new AtomicLong();
+    private final AtomicBoolean mRefreshQueued = new AtomicBoolean(false);
+    private final Executor mExecutor;
+    private volatile TorControlConnection mConn;
+    private volatile StreamListener mStreamListener;
+
+    /**
+     * @param executor runs the control port lookups, never the thread reading events
+     */
+    public CircuitRegistry(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * @param conn the connection to look up what the events don't carry on, null while tor is
+     *             not running
+     */
+    public void setConnection(TorControlConnection conn) {
+        mConn = conn;
+    }
+
+    public void setStreamListener(StreamListener listener) {
+        mStreamListener = listener;
+    }
+
+    /**
+     * @param hops the relays of the circuit in {@code hops[0, hopCount)}, only read during the
+     *             call so the caller can reuse the array
+     */
+    public void onCircuitStatus(String circId, String status, TorEventHandler.Node[] hops, int hopCount) {
+        long now = SystemClock.elapsedRealtime();
+        Circuit previous = mCircuits.get(circId);
+
+        if (status.equals("CLOSED") || status.equals("FAILED")) {
+            mCircuits.remove(circId);
+            if (status.equals("FAILED"))
+                mCircuitsFailed.incrementAndGet();
+            return;
+        }
+
+        long launchedAt = previous != null ? previous.launchedAt : now;
+        long buildTimeMs = previous != null ? previous.buildTimeMs : -1;
+        if (status.equals("BUILT") && buildTimeMs == -1) {
+            buildTimeMs = previous != null ? now - launchedAt : -1;
+            mCircuitsBuilt.incrementAndGet();
+            requestRefresh();
+        }
+
+        List<Relay> circuitHops;
+        if (previous != null && (hopCount == 0 || sameRelays(previous.hops, hops, hopCount)))
+            circuitHops = previous.hops;
+        else
+            circuitHops = snapshot(hops, hopCount);
+
+        mCircuits.put(circId, new Circuit(circId, status, circuitHops, previous != null ? previous.purpose : null,
+                launchedAt, buildTimeMs));
+    }
+
+    public void onStreamStatus(String streamId, String status, String target) {
+        if (status.equals("CLOSED") || status.equals("FAILED")) {
+            mStreams.remove(streamId);
+            if (status.equals("FAILED"))
+                mStreamsFailed.incrementAndGet();
+            return;
+        }
+
+        Stream previous = mStreams.get(streamId);
+        mStreams.put(streamId, new Stream(streamId, status, previous != null ? previous.circuitId : null,
+                target, previous != null ? previous.openedAt : SystemClock.elapsedRealtime()));
+
+        if (status.equals("SUCCEEDED"))
+            requestRefresh();
+    }
+
+    public List<Circuit> getCircuits() {
+        return Collections.unmodifiableList(new ArrayList<>(mCircuits.values()));
+    }
+
+    public List<Stream> getStreams() {
+        return Collections.unmodifiableList(new ArrayList<>(mStreams.values()));
+    }
+
+    public Circuit getCircuit(String circId) {
+        return mCircuits.get(circId);
+    }
+
+    public Stream getStream(String streamId) {
+        return mStreams.get(streamId);
+    }
+
+    public long getCircuitsBuilt() {
+        return mCircuitsBuilt.get();
+    }
+
+    public long getCircuitsFailed() {
+        return mCircuitsFailed.get();
+    }
+
+    public long getStreamsFailed() {
+        return mStreamsFailed.get();
+    }
+
+    public void clear() {
+        mCircuits.clear();
+        mStreams.clear();
+        mConn = null;
+    }
+
+    private void requestRefresh() {
+        if (mConn != null && mRefreshQueued.compareAndSet(false, true))
+            mExecutor.execute(this::refresh);
+    }
+
+    /**
+     * Fills in what the events don't carry.
+     */
+    private void refresh() {
+        // events from here on queue another refresh
+        mRefreshQueued.set(false);
+        TorControlConnection conn = mConn;
+        if (conn == null)
+            return;
+
+        StreamListener listener = mStreamListener;
+        try {
+            for (String line : conn.getInfo("circuit-status").split("\n")) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length < 2)
+                    continue;
+                Circuit circuit = mCircuits.get(fields[0]);
+                String purpose = findField(fields, "PURPOSE=");
+                if (circuit != null && purpose != null && !purpose.equals(circuit.purpose))
+                    mCircuits.replace(fields[0], circuit, circuit.withPurpose(purpose));
+            }
+
+            for (String line : conn.getInfo("stream-status").split("\n")) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length < 3)
+                    continue;
+                Stream stream = mStreams.get(fields[0]);
+                if (stream != null && !"0".equals(fields[2]) && !fields[2].equals(stream.circuitId)) {
+                    mStreams.replace(fields[0], stream, stream.withCircuitId(fields[2]));
+                    if (listener != null)
+                        listener.onStreamCircuit(fields[0], fields[2]);
+                }
+            }
+        } catch (IOException e) {
+            Log.d(OrbotConstants.TAG, "unable to refresh circuit details", e);
+        }
+    }
+
+    private static List<Relay> snapshot(TorEventHandler.Node[] hops, int hopCount) {
+        ArrayList<Relay> relays = new ArrayList<>(hopCount);
+        for (int i = 0; i < hopCount; i++) {
+            if (hops[i] != null)
+                relays.add(new Relay(hops[i]));
+        }
+        return Collections.unmodifiableList(relays);
+    }
+
+    /**
+     * @return true if the snapshot still shows the relays, with what is known about them now
+     */
+    private static boolean sameRelays(List<Relay> relays, TorEventHandler.Node[] hops, int hopCount) {
+        int relay = 0;
+        for (int i = 0; i < hopCount; i++) {
+            if (hops[i] == null)
+                continue;
+            if (relay == relays.size() || !relays.get(relay++).matches(hops[i]))
+                return false;
+        }
+        return relay == relays.size();
+    }
+
+    private static String findField(String[] fields, String prefix) {
+        for (String field : fields) {
+            if (field.startsWith(prefix))
+                return field.substring(prefix.length());
+        }
+        return null;
+    }
+
+    public static class Circuit {
+        public final String id;
+        public final String status;
+        /**
+         * the relays of the circuit, guard first
+         */
+        public final List<Relay> hops;
+        /**
+         * GENERAL, HS_CLIENT_REND... or null until it has been looked up
+         */
+        public final String purpose;
+        /**
+         * {@link SystemClock#elapsedRealtime()} of the first event seen for the circuit
+         */
+        public final long launchedAt;
+        /**
+         * milliseconds from the first event to BUILT, or -1
+         */
+        public final long buildTimeMs;
+
+        Circuit(String id, String status, List<Relay> hops, String purpose, long launchedAt, long buildTimeMs) {
+            this.id = id;
+            this.status = status;
+            this.hops = hops;
+            this.purpose = purpose;
+            this.launchedAt = launchedAt;
+            this.buildTimeMs = buildTimeMs;
+        }
+
+        Circuit withPurpose(String purpose) {
+            return new Circuit(id, status, hops, purpose, launchedAt, buildTimeMs);
+        }
+    }
+
+    /**
+     * A relay of a circuit as it was known when the circuit last changed.
+     */
+    public static class Relay {
+        public final String fingerprint;
+        public final String nickname;
+        /**
+         * null until the relay has been looked up
+         */
+        public final String ipAddress;
+        public final String country;
+        public final String organization;
+
+        Relay(TorEventHandler.Node node) {
+            this.fingerprint = node.id;
+            this.nickname = node.name;
+            this.ipAddress = node.ipAddress;
+            this.country = node.country;
+            this.organization = node.organization;
+        }
+
+        boolean matches(TorEventHandler.Node node) {
+            return fingerprint.equals(node.id) && equals(nickname, node.name) && equals(ipAddress, node.ipAddress)
+                    && equals(country, node.country) && equals(organization, node.organization);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    public static class Stream {
+        public final String id;
+        public final String status;
+        /**
+         * null until the stream is attached and it has been looked up
+         */
+        public final String circuitId;
+        public final String target;
+        public final long openedAt;
+
+        Stream(String id, String status, String circuitId, String target, long openedAt) {
+            this.id = id;
+            this.status = status;
+            this.circuitId = circuitId;
+            this.target = target;
+            this.openedAt = openedAt;
+        }
+
+        Stream withCircuitId(String circuitId) {
+            return new Stream(id, status, circuitId, target, openedAt);
+        }
+    }
+}
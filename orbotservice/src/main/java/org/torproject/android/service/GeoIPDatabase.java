@@ -0,0 +1,463 @@
+package org.torproject.android.service;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Answers IP to country questions from tor's geoip and geoip6 files, without going to the
+ * network. The ranges are kept in sorted primitive arrays, IPv4 as ints and IPv6 as pairs of
+ * longs, and looked up by binary search, so a lookup by number allocates nothing.
+ *
+ * Parsing the text files takes a while, so the arrays are also written to an index file next
+ * to them. Later loads map that file and copy the arrays out in bulk, until the text files
+ * change.
+ */
+public class GeoIPDatabase {
+
+    private static final String INDEX_FILE = "geoip.idx";
+    private static final int INDEX_MAGIC = 0x47454f49; // "GEOI"
+    private static final int INDEX_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 * 8 + 3 * 4;
+
+    private final String[] mCountries;
+    // range bounds with the sign bit flipped, so signed comparison orders them as unsigned
+    private final int[] mV4Starts;
+    private final int[] mV4Ends;
+    private final short[] mV4Countries;
+    // four longs per range: start high, start low, end high, end low, sign bits flipped
+    private final long[] mV6Ranges;
+    private final short[] mV6Countries;
+
+    private GeoIPDatabase(String[] countries, int[] v4Starts, int[] v4Ends, short[] v4Countries,
+                          long[] v6Ranges, short[] v6Countries) {
+        mCountries = countries;
+        mV4Starts = v4Starts;
+        mV4Ends = v4Ends;
+        mV4Countries = v4Countries;
+        mV6Ranges = v6Ranges;
+        mV6Countries = v6Countries;
+    }
+
+    /**
+     * @param dir the directory holding geoip and geoip6, the index is written there too
+     */
+    public static GeoIPDatabase load(File dir) throws IOException {
+        File geoip = new File(dir, TorServiceConstants.GEOIP_ASSET_KEY);
+        File geoip6 = new File(dir, TorServiceConstants.GEOIP6_ASSET_KEY);
+        File index = new File(dir, INDEX_FILE);
+        long[] sources = {geoip.length(), geoip.lastModified(), geoip6.length(), geoip6.lastModified()};
+
+        long start = System.currentTimeMillis();
+        GeoIPDatabase database = index.exists() ? readIndex(index, sources) : null;
+        if (database == null) {
+            database = parse(geoip, geoip6);
+            database.writeIndex(index, sources);
+            Log.d(OrbotConstants.TAG, "GeoIP index built in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        return database;
+    }
+
+    /**
+     * @return the two letter country code, or null if the address is not in any range
+     */
+    public String lookup(int ipv4) {
+        int key = ipv4 ^ Integer.MIN_VALUE;
+        int low = 0;
+        int high = mV4Starts.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mV4Starts[mid] <= key) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found != -1 && key <= mV4Ends[found] ? mCountries[mV4Countries[found]] : null;
+    }
+
+    /**
+     * @param high the first 64 bits of the address
+     * @param low  the last 64 bits of the address
+     * @return the two letter country code, or null if the address is not in any range
+     */
+    public String lookup(long high, long low) {
+        long keyHigh = high ^ Long.MIN_VALUE;
+        long keyLow = low ^ Long.MIN_VALUE;
+        int first = 0;
+        int last = mV6Countries.length - 1;
+        int found = -1;
+        while (first <= last) {
+            int mid = (first + last) >>> 1;
+            if (compare(mV6Ranges[mid * 4], mV6Ranges[mid * 4 + 1], keyHigh, keyLow) <= 0) {
+                found = mid;
+                first = mid + 1;
+            } else {
+                last = mid - 1;
+            }
+        }
+        return found != -1 && compare(keyHigh, keyLow, mV6Ranges[found * 4 + 2], mV6Ranges[found * 4 + 3]) <= 0
+                ? mCountries[mV6Countries[found]] : null;
+    }
+
+    /**
+     * @param address an IPv4 or IPv6 literal, names are not resolved
+     * @return the two letter country code, or null if unknown
+     */
+    public String lookup(String address) {
+        if (address.indexOf(':') == -1) {
+            long ipv4 = parseIPv4(address);
+            return ipv4 == -1 ? null : lookup((int) ipv4);
+        }
+
+        long[] ipv6 = new long[2];
+        if (address.startsWith("[") && address.endsWith("]"))
+            address = address.substring(1, address.length() - 1);
+        return parseIPv6(address, ipv6) ? lookup(ipv6[0], ipv6[1]) : null;
+    }
+
+    public int getV4RangeCount() {
+        return mV4Starts.length;
+    }
+
+    public int getV6RangeCount() {
+        return mV6Countries.length;
+    }
+
+    /**
+     * @return the country codes that appear in the files, sorted
+     */
+    public String[] getCountries() {
+        String[] countries = mCountries.clone();
+        Arrays.sort(countries);
+        return countries;
+    }
+
+    private static int compare(long aHigh, long aLow, long bHigh, long bLow) {
+        return aHigh != bHigh ? Long.compare(aHigh, bHigh) : Long.compare(aLow, bLow);
+    }
+
+    /**
+     * Lines are "start,end,CC", decimal numbers in geoip and IPv6 literals in geoip6, sorted
+     * by start. Lines that overlap the previous range are skipped.
+     */
+    private static GeoIPDatabase parse(File geoip, File geoip6) throws IOException {
+        HashMap<String, Short> countryIds = new HashMap<>();
+        ArrayList<String> countries = new ArrayList<>();
+
+        int[] v4Starts = new int[1024];
+        int[] v4Ends = new int[1024];
+        short[] v4Countries = new short[1024];
+        int v4Count = 0;
+        long lastEnd = -1;
+
+        if (geoip.exists()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(geoip), "US-ASCII"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = splitLine(line);
+                    if (fields == null)
+                        continue;
+                    long start, end;
+                    try {
+                        start = Long.parseLong(fields[0]);
+                        end = Long.parseLong(fields[1]);
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    if (start <= lastEnd || end < start || end > 0xffffffffL)
+                        continue;
+
+                    if (v4Count == v4Starts.length) {
+                        v4Starts = Arrays.copyOf(v4Starts, v4Count * 2);
+                        v4Ends = Arrays.copyOf(v4Ends, v4Count * 2);
+                        v4Countries = Arrays.copyOf(v4Countries, v4Count * 2);
+                    }
+                    v4Starts[v4Count] = (int) start ^ Integer.MIN_VALUE;
+                    v4Ends[v4Count] = (int) end ^ Integer.MIN_VALUE;
+                    v4Countries[v4Count] = countryId(fields[2], countryIds, countries);
+                    v4Count++;
+                    lastEnd = end;
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        long[] v6Ranges = new long[1024 * 4];
+        short[] v6Countries = new short[1024];
+        int v6Count = 0;
+        long[] start = new long[2];
+        long[] end = new long[2];
+
+        if (geoip6.exists()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(geoip6), "US-ASCII"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = splitLine(line);
+                    if (fields == null || !parseIPv6(fields[0], start) || !parseIPv6(fields[1], end))
+                        continue;
+
+                    long startHigh = start[0] ^ Long.MIN_VALUE;
+                    long startLow = start[1] ^ Long.MIN_VALUE;
+                    long endHigh = end[0] ^ Long.MIN_VALUE;
+                    long endLow = end[1] ^ Long.MIN_VALUE;
+                    if (compare(endHigh, endLow, startHigh, startLow) < 0)
+                        continue;
+                    if (v6Count > 0 && compare(startHigh, startLow,
+                            v6Ranges[(v6Count - 1) * 4 + 2], v6Ranges[(v6Count - 1) * 4 + 3]) <= 0)
+                        continue;
+
+                    if (v6Count == v6Countries.length) {
+                        v6Ranges = Arrays.copyOf(v6Ranges, v6Count * 8);
+                        v6Countries = Arrays.copyOf(v6Countries, v6Count * 2);
+                    }
+                    v6Ranges[v6Count * 4] = startHigh;
+                    v6Ranges[v6Count * 4 + 1] = startLow;
+                    v6Ranges[v6Count * 4 + 2] = endHigh;
+                    v6Ranges[v6Count * 4 + 3] = endLow;
+                    v6Countries[v6Count] = countryId(fields[2], countryIds, countries);
+                    v6Count++;
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        return new GeoIPDatabase(countries.toArray(new String[0]),
+                Arrays.copyOf(v4Starts, v4Count), Arrays.copyOf(v4Ends, v4Count), Arrays.copyOf(v4Countries, v4Count),
+                Arrays.copyOf(v6Ranges, v6Count * 4), Arrays.copyOf(v6Countries, v6Count));
+    }
+
+    /**
+     * @return the three fields of a range line, or null for comments and malformed lines
+     */
+    private static String[] splitLine(String line) {
+        if (line.isEmpty() || line.charAt(0) == '#')
+            return null;
+        String[] fields = line.split(",");
+        return fields.length == 3 && fields[2].length() == 2 ? fields : null;
+    }
+
+    private static short countryId(String code, HashMap<String, Short> ids, ArrayList<String> countries) {
+        Short id = ids.get(code);
+        if (id == null) {
+            id = (short) countries.size();
+            ids.put(code, id);
+            countries.add(code);
+        }
+        return id;
+    }
+
+    private static GeoIPDatabase readIndex(File index, long[] sources) {
+        try {
+            RandomAccessFile file = new RandomAccessFile(index, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != INDEX_MAGIC || buffer.getInt() != INDEX_VERSION)
+                    return null;
+                for (long source : sources) {
+                    if (buffer.getLong() != source)
+                        return null;
+                }
+
+                int countryCount = buffer.getInt();
+                int v4Count = buffer.getInt();
+                int v6Count = buffer.getInt();
+                long size = (long) HEADER_SIZE + countryCount * 2L + v4Count * 10L + v6Count * 34L;
+                if (countryCount < 0 || v4Count < 0 || v6Count < 0 || size != channel.size())
+                    return null;
+
+                String[] countries = new String[countryCount];
+                char[] code = new char[2];
+                for (int i = 0; i < countryCount; i++) {
+                    code[0] = (char) buffer.get();
+                    code[1] = (char) buffer.get();
+                    countries[i] = new String(code);
+                }
+
+                int[] v4Starts = new int[v4Count];
+                int[] v4Ends = new int[v4Count];
+                short[] v4Countries = new short[v4Count];
+                buffer.asIntBuffer().get(v4Starts);
+                buffer.position(buffer.position() + v4Count * 4);
+                buffer.asIntBuffer().get(v4Ends);
+                buffer.position(buffer.position() + v4Count * 4);
+                buffer.asShortBuffer().get(v4Countries);
+                buffer.position(buffer.position() + v4Count * 2);
+
+                long[] v6Ranges = new long[v6Count * 4];
+                short[] v6Countries = new short[v6Count];
+                buffer.asLongBuffer().get(v6Ranges);
+                buffer.position(buffer.position() + v6Count * 32);
+                buffer.asShortBuffer().get(v6Countries);
+
+                for (short id : v4Countries) {
+                    if (id < 0 || id >= countryCount)
+                        return null;
+                }
+                for (short id : v6Countries) {
+                    if (id < 0 || id >= countryCount)
+                        return null;
+                }
+                return new GeoIPDatabase(countries, v4Starts, v4Ends, v4Countries, v6Ranges, v6Countries);
+            } finally {
+                file.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.d(OrbotConstants.TAG, "discarding unreadable GeoIP index", e);
+            return null;
+        }
+    }
+
+    private void writeIndex(File index, long[] sources) {
+        int v4Count = mV4Starts.length;
+        int v6Count = mV6Countries.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + mCountries.length * 2 + v4Count * 10 + v6Count * 34);
+
+        buffer.putInt(INDEX_MAGIC).putInt(INDEX_VERSION);
+        for (long source : sources)
+            buffer.putLong(source);
+        buffer.putInt(mCountries.length).putInt(v4Count).putInt(v6Count);
+        for (String country : mCountries)
+            buffer.put((byte) country.charAt(0)).put((byte) country.charAt(1));
+
+        buffer.asIntBuffer().put(mV4Starts);
+        buffer.position(buffer.position() + v4Count * 4);
+        buffer.asIntBuffer().put(mV4Ends);
+        buffer.position(buffer.position() + v4Count * 4);
+        buffer.asShortBuffer().put(mV4Countries);
+        buffer.position(buffer.position() + v4Count * 2);
+        buffer.asLongBuffer().put(mV6Ranges);
+        buffer.position(buffer.position() + v6Count * 32);
+        buffer.asShortBuffer().put(mV6Countries);
+
+        File tmp = new File(index.getParentFile(), index.getName() + ".tmp");
+        try {
+            FileOutputStream fos = new FileOutputStream(tmp, false);
+            try {
+                fos.write(buffer.array());
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+            if (!tmp.renameTo(index))
+                throw new IOException("unable to rename " + tmp);
+        } catch (IOException e) {
+            // the next load parses the text files again
+            Log.d(OrbotConstants.TAG, "unable to write GeoIP index", e);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * @return the address as an unsigned 32 bit number, or -1 if it is not a dotted quad
+     */
+    static long parseIPv4(String address) {
+        long result = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = 0; i <= address.length(); i++) {
+            char c = i < address.length() ? address.charAt(i) : '.';
+            if (c == '.') {
+                if (value == -1 || ++octets > 4)
+                    return -1;
+                result = (result << 8) | value;
+                value = -1;
+            } else if (c >= '0' && c <= '9') {
+                value = value == -1 ? c - '0' : value * 10 + c - '0';
+                if (value > 255)
+                    return -1;
+            } else {
+                return -1;
+            }
+        }
+        return octets == 4 ? result : -1;
+    }
+
+    /**
+     * Parses the hex groups of an IPv6 literal, "::" included. Embedded IPv4 suffixes are not
+     * used in the geoip6 file and not supported.
+     *
+     * @param out receives the high and low 64 bits
+     * @return false if the literal is malformed
+     */
+    static boolean parseIPv6(String address, long[] out) {
+        int[] groups = new int[8];
+        int count = 0;
+        int gap = -1;
+        int length = address.length();
+        int i = 0;
+
+        if (address.startsWith("::")) {
+            gap = 0;
+            i = 2;
+        }
+        while (i < length) {
+            int value = 0;
+            int j = i;
+            while (j < length && address.charAt(j) != ':') {
+                int digit = Character.digit(address.charAt(j), 16);
+                if (digit < 0 || j - i == 4)
+                    return false;
+                value = value * 16 + digit;
+                j++;
+            }
+            if (j == i || count == 8)
+                return false;
+            groups[count++] = value;
+            if (j == length)
+                break;
+
+            if (j + 1 < length && address.charAt(j + 1) == ':') {
+                if (gap != -1)
+                    return false;
+                gap = count;
+                i = j + 2;
+            } else {
+                i = j + 1;
+                if (i == length)
+                    return false;
+            }
+        }
+        if (gap == -1 ? count != 8 : count > 7)
+            return false;
+
+        long high = 0;
+        long low = 0;
+        int zeros = 8 - count;
+        for (int k = 0; k < 8; k++) {
+            int group;
+            if (gap == -1 || k < gap)
+                group = groups[k];
+            else if (k < gap + zeros)
+                group = 0;
+            else
+                group = groups[k - zeros];
+
+            if (k < 4)
+                high = (high << 16) | group;
+            else
+                low = (low << 16) | group;
+        }
+        out[0] = high;
+        out[1] = low;
+        return true;
+    }
+}
@@ -0,0 +1,169 @@
+package org.torproject.android.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The most recent log lines of tor and Orbot in a fixed number of slots. Any thread can add
+ * records without taking a lock: each record claims the next sequence number and is stored in
+ * the slot that number maps to, replacing the record that was there. Readers keep their own
+ * sequence cursor and page through whatever has not been overwritten yet, so a slow reader
+ * loses the oldest lines instead of holding up the writers or growing the buffer.
+ *
+ * Messages are truncated to {@link #MAX_MESSAGE_LENGTH}, which together with the capacity
+ * caps the memory the buffer can hold on to.
+ */
+public class LogBuffer {
+
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int NOTICE = 2;
+    public static final int WARN = 3;
+    public static final int ERR = 4;
+
+    public static final String SOURCE_TOR = "tor";
+    public static final String SOURCE_ORBOT = "orbot";
+
+    public static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private static final String[] SEVERITY_LABELS = {"DEBUG", "INFO", "NOTICE", "WARN", "ERR"};
+
+    private final AtomicReferenceArray<Record> mSlots;
+    private final int mMask;
+    private final AtomicLong mNext = new AtomicLong();
+    private final AtomicLong mBytes = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public LogBuffer(int capacity) {
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        mSlots = new AtomicReferenceArray<>(size);
+        mMask = size - 1;
+    }
+
+    /**
+     * @return the sequence number of the record
+     */
+    public long add(int severity, String source, String message) {
+        if (message.length() > MAX_MESSAGE_LENGTH)
+            message = message.substring(0, MAX_MESSAGE_LENGTH) + '…';
+
+        long seq = mNext.getAndIncrement();
+        Record record = new Record(seq, System.currentTimeMillis(), severity, source, message);
+        int slot = (int) (seq & mMask);
+
+        while (true) {
+            Record current = mSlots.get(slot);
+            // a writer that lapped this one already filled the slot with a newer record
+            if (current != null && current.seq > seq)
+                return seq;
+            if (mSlots.compareAndSet(slot, current, record)) {
+                mBytes.addAndGet(record.estimateSize() - (current != null ? current.estimateSize() : 0));
+                return seq;
+            }
+        }
+    }
+
+    /**
+     * Copies records in sequence order, starting at {@code from} or at the oldest record
+     * still held if that was overwritten. Stops early at a slot that was claimed but is not
+     * written yet, it will be there on the next call.
+     *
+     * @return the cursor to pass on the next call
+     */
+    public long read(long from, int max, List<Record> out) {
+        long next = mNext.get();
+        from = Math.max(from, next - mSlots.length());
+
+        int count = 0;
+        while (from < next && count < max) {
+            Record record = mSlots.get((int) (from & mMask));
+            if (record == null || record.seq < from)
+                break;
+            if (record.seq == from) {
+                out.add(record);
+                count++;
+            }
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * @return the sequence number the next record will get
+     */
+    public long getNextSequence() {
+        return mNext.get();
+    }
+
+    /**
+     * @return the sequence number of the oldest record still held
+     */
+    public long getFirstSequence() {
+        return Math.max(0, mNext.get() - mSlots.length());
+    }
+
+    public int getCapacity() {
+        return mSlots.length();
+    }
+
+    /**
+     * @return how many records have been overwritten since the buffer was created
+     */
+    public long getOverwritten() {
+        return getFirstSequence();
+    }
+
+    /**
+     * @return a rough estimate of the bytes held by the buffered records
+     */
+    public long getMemoryUsage() {
+        return mBytes.get();
+    }
+
+    /**
+     * @return the severity of a tor event severity name, unknown names are NOTICE
+     */
+    public static int parseSeverity(String name) {
+        for (int i = 0; i < SEVERITY_LABELS.length; i++) {
+            if (SEVERITY_LABELS[i].equalsIgnoreCase(name))
+                return i;
+        }
+        return name.equalsIgnoreCase("WARNING") ? WARN : NOTICE;
+    }
+
+    public static String getSeverityLabel(int severity) {
+        return SEVERITY_LABELS[severity];
+    }
+
+    public static class Record {
+        public final long seq;
+        public final long time;
+        public final int severity;
+        public final String source;
+        public final String message;
+
+        Record(long seq, long time, int severity, String source, String message) {
+            this.seq = seq;
+            this.time = time;
+            this.severity = severity;
+            this.source = source;
+            this.message = message;
+        }
+
+        long estimateSize() {
+            // object headers, fields and the char array of the message
+            return 64 + 2L * message.length();
+        }
+
+        /**
+         * @return the line as it has always been shown in the log, tor lines carry their severity
+         */
+        @Override
+        public String toString() {
+            return SOURCE_TOR.equals(source) ? SEVERITY_LABELS[severity] + ": " + message : message;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.torproject.android.service;
+
+import android.annotation.SuppressLint;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Handler;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import androidx.core.app.NotificationCompat;
+
+import net.freehaven.tor.control.TorControlCommands;
+
+import org.torproject.android.service.util.Prefs;
+
+/**
+ * Keeps the foreground notification up to date without rebuilding it for every bandwidth
+ * event. The builder, its content intent and the new identity action are created once,
+ * updates that would not change what is shown are dropped, and the remaining ones are posted
+ * at most once per {@link Prefs#getNotificationUpdateInterval()}; the last update of a burst
+ * is posted when the interval has passed. While the screen is off nothing is posted, the
+ * latest content is shown when it comes back on.
+ *
+ * Updates that carry a ticker (errors, hidden service problems) are urgent and bypass both
+ * the interval and the screen check.
+ */
+public class NotificationRenderer {
+
+    private final Service mService;
+    private final Handler mHandler;
+    private final NotificationManager mNotificationManager;
+    private final String mChannelId;
+    private final int mNotifyId;
+
+    private NotificationCompat.Builder mBuilder;
+    private NotificationCompat.Action mNewNymAction;
+
+    // what the user currently sees
+    private String mShownText;
+    private int mShownIcon;
+    private boolean mShownNewNym;
+    private String mShownTicker;
+    private long mLastPostedAt = 0;
+    private boolean mShowing = false;
+
+    // the latest content asked for, possibly not posted yet
+    private String mText;
+    private int mIcon;
+    private boolean mNewNym;
+    private String mTicker;
+    private boolean mFlushScheduled = false;
+    private final Runnable mFlush = this::flush;
+
+    private boolean mScreenOn = true;
+    private long mPosted = 0;
+    private long mSkipped = 0;
+
+    private final BroadcastReceiver mScreenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onScreenChanged(Intent.ACTION_SCREEN_ON.equals(intent.getAction()));
+        }
+    };
+
+    public NotificationRenderer(Service service, Handler handler, String channelId, int notifyId) {
+        mService = service;
+        mHandler = handler;
+        mChannelId = channelId;
+        mNotifyId = notifyId;
+        mNotificationManager = (NotificationManager) service.getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+
+    @SuppressWarnings("deprecation")
+    public void register() {
+        PowerManager pm = (PowerManager) mService.getSystemService(Context.POWER_SERVICE);
+        if (pm != null)
+            mScreenOn = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH ? pm.isInteractive() : pm.isScreenOn();
+
+        IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        mService.registerReceiver(mScreenReceiver, filter);
+    }
+
+    public void release() {
+        try {
+            mService.unregisterReceiver(mScreenReceiver);
+        } catch (IllegalArgumentException e) {
+            // never registered
+        }
+    }
+
+    /**
+     * @param newNym whether to offer the new identity action, only useful with a control connection
+     * @param ticker announced by accessibility services, marks the update as urgent, may be null
+     */
+    public synchronized void show(String text, int icon, boolean newNym, String ticker) {
+        mText = text;
+        mIcon = icon;
+        mNewNym = newNym;
+        mTicker = ticker;
+
+        if (!mShowing || ticker != null) {
+            render();
+            return;
+        }
+
+        if (!mScreenOn || isShown()) {
+            mSkipped++;
+            return;
+        }
+
+        long wait = mLastPostedAt + Prefs.getNotificationUpdateInterval() - SystemClock.elapsedRealtime();
+        if (wait <= 0) {
+            render();
+        } else if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlush, wait);
+        } else {
+            mSkipped++;
+        }
+    }
+
+    /**
+     * Makes the next update go out right away through {@link Service#startForeground}, needed
+     * after every start of the service and after the notification was cancelled.
+     */
+    public synchronized void reset() {
+        // a deferred update must not bring back a notification that was just removed
+        mHandler.removeCallbacks(mFlush);
+        mFlushScheduled = false;
+        mShowing = false;
+        mShownText = null;
+        mShownTicker = null;
+    }
+
+    public synchronized boolean isShowing() {
+        return mShowing;
+    }
+
+    public synchronized long getPostedCount() {
+        return mPosted;
+    }
+
+    public synchronized long getSkippedCount() {
+        return mSkipped;
+    }
+
+    private synchronized void flush() {
+        mFlushScheduled = false;
+        if (mScreenOn && !isShown())
+            render();
+    }
+
+    private synchronized void onScreenChanged(boolean screenOn) {
+        mScreenOn = screenOn;
+        if (screenOn && mShowing && mText != null && !isShown())
+            render();
+    }
+
+    private boolean isShown() {
+        return TextUtils.equals(mText, mShownText) && mIcon == mShownIcon && mNewNym == mShownNewNym
+                && TextUtils.equals(mTicker, mShownTicker);
+    }
+
+    @SuppressLint("RestrictedApi")
+    private void render() {
+        if (mBuilder == null) {
+            Intent intent = mService.getPackageManager().getLaunchIntentForPackage(mService.getPackageName());
+            PendingIntent contentIntent = PendingIntent.getActivity(mService, 0, intent, 0);
+            PendingIntent newNymIntent = PendingIntent.getBroadcast(mService, 0,
+                    new Intent(TorControlCommands.SIGNAL_NEWNYM), PendingIntent.FLAG_UPDATE_CURRENT);
+            mNewNymAction = new NotificationCompat.Action(R.drawable.ic_refresh_white_24dp,
+                    mService.getString(R.string.menu_new_identity), newNymIntent);
+
+            mBuilder = new NotificationCompat.Builder(mService, mChannelId)
+                    .setContentTitle(mService.getString(R.string.app_name))
+                    .setContentIntent(contentIntent)
+                    .setCategory(Notification.CATEGORY_SERVICE)
+                    .setOngoing(Prefs.persistNotifications());
+            if (!Prefs.persistNotifications())
+                mBuilder.setPriority(Notification.PRIORITY_LOW);
+        }
+
+        if (mNewNym != mShownNewNym || !mShowing) {
+            mBuilder.mActions.clear();
+            if (mNewNym)
+                mBuilder.addAction(mNewNymAction);
+        }
+
+        mBuilder.setContentText(mText)
+                .setSmallIcon(mIcon)
+                .setTicker(mTicker);
+        Notification notification = mBuilder.build();
+
+        // before O the service only goes to the foreground with a persistent notification
+        if (!mShowing && (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O || Prefs.persistNotifications()))
+            mService.startForeground(mNotifyId, notification);
+        else
+            mNotificationManager.notify(mNotifyId, notification);
+        mShowing = true;
+
+        mShownText = mText;
+        mShownIcon = mIcon;
+        mShownNewNym = mNewNym;
+        mShownTicker = mTicker;
+        mLastPostedAt = SystemClock.elapsedRealtime();
+        mPosted++;
+    }
+}
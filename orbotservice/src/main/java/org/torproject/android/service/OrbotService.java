@@ -12,7 +12,6 @@ import android.app.Application;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
@@ -24,26 +23,29 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.net.Uri;
 import android.net.VpnService;
 import android.os.Build;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.BaseColumns;
 import android.text.TextUtils;
 import android.util.Log;
 
+import net.freehaven.tor.control.ConfigEntry;
 import net.freehaven.tor.control.TorControlCommands;
 import net.freehaven.tor.control.TorControlConnection;
 
+import org.torproject.android.service.util.CommandQueue;
 import org.torproject.android.service.util.CustomTorResourceInstaller;
 import org.torproject.android.service.util.DummyActivity;
+import org.torproject.android.service.util.ExternalIPFetcher;
+import org.torproject.android.service.util.PortAllocator;
 import org.torproject.android.service.util.Prefs;
-import org.torproject.android.service.util.TorServiceUtils;
+import org.torproject.android.service.util.StartupPipeline;
+import org.torproject.android.service.util.Tracer;
 import org.torproject.android.service.util.Utils;
 import org.torproject.android.service.vpn.OrbotVpnManager;
 import org.torproject.android.service.vpn.VpnPrefs;
@@ -60,24 +62,30 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.StringTokenizer;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import IPtProxy.IPtProxy;
 import androidx.annotation.RequiresApi;
-import androidx.core.app.NotificationCompat;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
-public class OrbotService extends VpnService implements TorServiceConstants, OrbotConstants {
+public class OrbotService extends VpnService implements TorServiceConstants, OrbotConstants, TorReadinessCoordinator.Listener {
 
     public final static String BINARY_TOR_VERSION = TorService.VERSION_NAME;
 
@@ -89,6 +97,18 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
     private static final Uri COOKIE_CONTENT_URI = Uri.parse("content://org.torproject.android.ui.hiddenservices.providers.cookie/cookie");
     private static final Uri V3_CLIENT_AUTH_URI = Uri.parse("content://org.torproject.android.ui.v3onionservice.clientauth/v3auth");
     private final static String NOTIFICATION_CHANNEL_ID = "orbot_channel_1";
+    private static final int STARTUP_THREADS = 4;
+    private static final long STARTUP_PIPELINE_TIMEOUT_SECONDS = 60;
+    private static final String STAGE_GEOIP = "geoip";
+    private static final String STAGE_PT_INSTALL = "pt-install";
+    private static final String STAGE_PT_LAUNCH = "pt-launch";
+    private static final String TRACE_FILE = "traces/startup.json";
+    private static final int COMMAND_QUEUE_DEPTH = 32;
+    private static final int MAX_BRIDGES = 3;
+    private static final long SET_EXIT_DEBOUNCE_MS = 500;
+    private static final int LOG_BUFFER_CAPACITY = 2048;
+    // at most 4 log batches a second reach the UI
+    private static final long LOG_DELIVERY_INTERVAL_MS = 250;
     private static final String[] LEGACY_V2_ONION_SERVICE_PROJECTION = new String[]{
             OnionService._ID,
             OnionService.NAME,
@@ -120,19 +140,37 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
             V3ClientAuth.ENABLED
     };
 
-    public static int mPortSOCKS = -1;
-    public static int mPortHTTP = -1;
-    public static int mPortDns = TOR_DNS_PORT_DEFAULT;
-    public static int mPortTrans = TOR_TRANSPROXY_PORT_DEFAULT;
+    private static final BandwidthHistory sBandwidthHistory = new BandwidthHistory();
+    private static volatile String[] sExitCountries = null;
+    private static final LogBuffer sLogBuffer = new LogBuffer(LOG_BUFFER_CAPACITY);
+    private static volatile PortAllocator.Ports mPorts = new PortAllocator.Ports(-1, -1, TOR_DNS_PORT_DEFAULT, TOR_TRANSPROXY_PORT_DEFAULT);
     public static File appBinHome;
     public static File appCacheHome;
     private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final CommandQueue mCommandQueue = new CommandQueue("orbot-commands", COMMAND_QUEUE_DEPTH);
+    private final ExecutorService mStartupExecutor = Executors.newFixedThreadPool(STARTUP_THREADS);
+    private Tracer.Span mBootstrapSpan = null;
+    private volatile StartupPlan mStartupPlan = null;
+    private long mStartedAt = 0;
+    private Tracer.Span mControlWaitSpan = null;
+    private TorReadinessCoordinator mReadiness;
+    private final PortAllocator mPortAllocator = new PortAllocator();
+    private final TorConfigApplier mConfigApplier = new TorConfigApplier();
+    private TorrcModel mTorrcModel;
+    private String mTransportPorts = null;
     boolean mIsLollipop = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
     TorEventHandler mEventHandler;
     OrbotVpnManager mVpnManager;
     Handler mHandler;
     //we should randomly sort alBridges so we don't have the same bridge order each time
     Random bridgeSelectRandom = new Random(System.nanoTime());
+    private BridgeSelector mBridgeSelector;
+    private RelayMetadataService mRelayMetadata;
+    private final CircuitRegistry mCircuitRegistry = new CircuitRegistry(mExecutor);
+    private final StreamLatencyTracker mStreamLatency = new StreamLatencyTracker();
+    private final CircuitBuildStats mCircuitStats = new CircuitBuildStats();
+    private final AtomicBoolean mLogDeliveryPending = new AtomicBoolean(false);
+    private long mLogDelivered = sLogBuffer.getNextSequence();
     ActionBroadcastReceiver mActionBroadcastReceiver;
     private String mCurrentStatus = STATUS_OFF;
     private TorControlConnection conn = null;
@@ -140,10 +178,15 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
     private TorService torService;
     private boolean shouldUnbindTorService;
     private NotificationManager mNotificationManager = null;
-    private NotificationCompat.Builder mNotifyBuilder;
-    private boolean mNotificationShowing = false;
+    private NotificationRenderer mNotificationRenderer;
     private File mHSBasePath, mV3OnionBasePath, mV3AuthBasePath;
     private ArrayList<Bridge> alBridges = null;
+    private final Object mGeoIPLock = new Object();
+    private boolean mGeoIPInstalled = false;
+    private GeoIPDatabase mGeoIP = null;
+    private boolean mGeoIPLoadFailed = false;
+    // bumped whenever new GeoIP files are installed, a load of the old ones is then discarded
+    private int mGeoIPGeneration = 0;
 
     /**
      * @param bridgeList bridges that were manually entered into Orbot settings
@@ -159,7 +202,7 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
         Log.d(OrbotConstants.TAG, msg);
 
         if (Prefs.useDebugLogging()) {
-            sendCallbackLogMessage(msg);
+            sendCallbackLogMessage(LogBuffer.DEBUG, LogBuffer.SOURCE_ORBOT, msg);
         }
     }
 
@@ -169,10 +212,10 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
             e.printStackTrace(new PrintStream(baos));
 
-            sendCallbackLogMessage(msg + '\n' + new String(baos.toByteArray()));
+            sendCallbackLogMessage(LogBuffer.ERR, LogBuffer.SOURCE_ORBOT, msg + '\n' + new String(baos.toByteArray()));
 
         } else
-            sendCallbackLogMessage(msg);
+            sendCallbackLogMessage(LogBuffer.ERR, LogBuffer.SOURCE_ORBOT, msg);
 
     }
 
@@ -191,9 +234,10 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
             mNotificationManager.cancelAll();
 
         if (mEventHandler != null)
-            mEventHandler.getNodes().clear();
+            mEventHandler.getRelays().clear();
 
-        mNotificationShowing = false;
+        if (mNotificationRenderer != null)
+            mNotificationRenderer.reset();
     }
 
     @RequiresApi(api = Build.VERSION_CODES.O)
@@ -212,55 +256,18 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
         mNotificationManager.createNotificationChannel(mChannel);
     }
 
-    @SuppressLint({"NewApi", "RestrictedApi"})
     protected void showToolbarNotification(String notifyMsg, int notifyType, int icon) {
-        PackageManager pm = getPackageManager();
-        Intent intent = pm.getLaunchIntentForPackage(getPackageName());
-        PendingIntent pendIntent = PendingIntent.getActivity(OrbotService.this, 0, intent, 0);
-
-        if (mNotifyBuilder == null) {
-            mNotificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-            mNotifyBuilder = new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
-                    .setContentTitle(getString(R.string.app_name))
-                    .setSmallIcon(R.drawable.ic_stat_tor)
-                    .setContentIntent(pendIntent)
-                    .setCategory(Notification.CATEGORY_SERVICE)
-                    .setOngoing(Prefs.persistNotifications());
-        }
-
-        mNotifyBuilder.mActions.clear(); // clear out NEWNYM action
-        if (conn != null) { // only add new identity action when there is a connection
-            Intent intentRefresh = new Intent(TorControlCommands.SIGNAL_NEWNYM);
-            PendingIntent pendingIntentNewNym = PendingIntent.getBroadcast(this, 0, intentRefresh, PendingIntent.FLAG_UPDATE_CURRENT);
-            mNotifyBuilder.addAction(R.drawable.ic_refresh_white_24dp, getString(R.string.menu_new_identity), pendingIntentNewNym);
-        }
-
-        mNotifyBuilder.setContentText(notifyMsg)
-                .setSmallIcon(icon)
-                .setTicker(notifyType != NOTIFY_ID ? notifyMsg : null);
-
-        if (!Prefs.persistNotifications())
-            mNotifyBuilder.setPriority(Notification.PRIORITY_LOW);
-
-        Notification notification = mNotifyBuilder.build();
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            startForeground(NOTIFY_ID, notification);
-        } else if (Prefs.persistNotifications() && (!mNotificationShowing)) {
-            startForeground(NOTIFY_ID, notification);
-            logNotice("Set background service to FOREGROUND");
-        } else {
-            mNotificationManager.notify(NOTIFY_ID, notification);
-        }
-
-        mNotificationShowing = true;
+        // only offer a new identity when there is a connection to send it on
+        mNotificationRenderer.show(notifyMsg, icon, conn != null, notifyType != NOTIFY_ID ? notifyMsg : null);
     }
 
     public int onStartCommand(Intent intent, int flags, int startId) {
+        // every start has to be answered with startForeground
+        mNotificationRenderer.reset();
         showToolbarNotification("", NOTIFY_ID, R.drawable.ic_stat_tor);
 
         if (intent != null)
-            mExecutor.execute(new IncomingIntentRouter(intent));
+            enqueueCommand(intent);
         else
             Log.d(OrbotConstants.TAG, "Got null onStartCommand() intent");
 
@@ -286,6 +293,21 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
 
         stopTorAsync();
 
+        mCommandQueue.shutdown();
+        mStartupExecutor.shutdown();
+
+        if (mReadiness != null)
+            mReadiness.release(this);
+
+        if (mTorrcModel != null)
+            mTorrcModel.unregister(Prefs.getSharedPrefs(getApplicationContext()), getContentResolver());
+
+        if (mNotificationRenderer != null)
+            mNotificationRenderer.release();
+
+        if (mRelayMetadata != null)
+            mRelayMetadata.shutdown();
+
         super.onDestroy();
     }
 
@@ -314,9 +336,20 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
         }
         clearNotifications();
         sendCallbackStatus(STATUS_OFF);
+
+        // the next start records a fresh timeline
+        Tracer.reset();
+
+        Log.d(OrbotConstants.TAG, "log buffer holds about " + sLogBuffer.getMemoryUsage() + " bytes, "
+                + sLogBuffer.getOverwritten() + " lines overwritten");
     }
 
     private void stopTorOnError(String message) {
+        // a stop by the user is not a failed start, it keeps the bridges that worked last time
+        if (STATUS_STARTING.equals(mCurrentStatus)) {
+            StartupPlan.recordFailed(Prefs.getSharedPrefs(getApplicationContext()), SystemClock.elapsedRealtime() - mStartedAt);
+            mBridgeSelector.recordFailure(getBridgeLinesInUse());
+        }
         stopTorAsync();
         showToolbarNotification(
                 getString(R.string.unable_to_start_tor) + ": " + message,
@@ -411,13 +444,52 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
 
             conn = null;
         }
+
+        mPortAllocator.releaseAll();
+        mConfigApplier.clear();
+        mCircuitRegistry.clear();
+        if (mStreamLatency.getSucceeded().count > 0)
+            debug("stream latency to SUCCEEDED: " + mStreamLatency.getSucceeded() + ", attach: "
+                    + mStreamLatency.getAttached() + ", failed: " + mStreamLatency.getFailed());
+        mStreamLatency.clear();
+        for (CircuitBuildStats.Summary summary : mCircuitStats.getSummaries().values())
+            debug("circuits " + summary);
+        mCircuitStats.onTorStopped();
+        mRelayMetadata.setProxy(null);
+        // the listener ports have to be reserved again on the next start
+        mTorrcModel.invalidate(TorrcModel.Fragment.PORTS);
     }
 
-    private void requestTorRereadConfig() {
+    /**
+     * Rebuilds the torrc from the current settings and applies only what changed over the
+     * control port. Tor is only asked to re-read its torrc if an option can't be changed
+     * while it is running.
+     */
+    private synchronized void requestTorRereadConfig() {
+        TorControlConnection conn = this.conn;
+        if (conn == null)
+            return;
+
+        String torrc = null;
         try {
-            if (conn != null) {
-                conn.signal(TorControlCommands.SIGNAL_RELOAD);
+            torrc = buildTorrcCustom(false);
+            mTorrcModel.writeIfChanged(TorService.getTorrc(this), torrc);
+
+            if (mConfigApplier.apply(conn, torrc)) {
+                logNotice("applied new settings without restarting tor");
+                if (mConfigApplier.portsChanged())
+                    refreshPorts(conn);
+                return;
             }
+        } catch (Exception e) {
+            logException("unable to apply new settings over the control port", e);
+        }
+
+        try {
+            conn.signal(TorControlCommands.SIGNAL_RELOAD);
+            if (torrc != null)
+                mConfigApplier.setApplied(torrc);
+            refreshPorts(conn);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -432,13 +504,40 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
         }
     }
 
+    /**
+     * A log line from tor itself, DEBUG lines are only kept with debug logging enabled.
+     */
+    protected void logTorMessage(String severity, String msg) {
+        int level = LogBuffer.parseSeverity(severity);
+        if (level == LogBuffer.DEBUG || Prefs.useDebugLogging())
+            Log.d(OrbotConstants.TAG, severity + ": " + msg);
+
+        if (level != LogBuffer.DEBUG || Prefs.useDebugLogging())
+            sendCallbackLogMessage(level, LogBuffer.SOURCE_TOR, msg);
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
 
+        Tracer.Span span = Tracer.begin("OrbotService.onCreate");
         try {
             mHandler = new Handler();
 
+            mBridgeSelector = new BridgeSelector(getFilesDir(), bridgeSelectRandom);
+            mRelayMetadata = new RelayMetadataService(getFilesDir(), new ExternalIPFetcher(ExternalIPFetcher.ONIONOO_BASE_URL));
+            mCircuitRegistry.setStreamListener(mStreamLatency::onStreamCircuit);
+
+            mReadiness = new TorReadinessCoordinator(this);
+            mReadiness.register(this);
+
+            mTorrcModel = new TorrcModel(mHandler);
+            mTorrcModel.register(Prefs.getSharedPrefs(getApplicationContext()));
+            mTorrcModel.observe(getContentResolver(), V3_ONION_SERVICES_CONTENT_URI, TorrcModel.Fragment.V3_ONION_SERVICES);
+            mTorrcModel.observe(getContentResolver(), V3_CLIENT_AUTH_URI, TorrcModel.Fragment.V3_CLIENT_AUTH);
+            mTorrcModel.observe(getContentResolver(), V2_HS_CONTENT_URI, TorrcModel.Fragment.V2_HIDDEN_SERVICES);
+            mTorrcModel.observe(getContentResolver(), COOKIE_CONTENT_URI, TorrcModel.Fragment.V2_CLIENT_COOKIES);
+
             appBinHome = getFilesDir();//getDir(TorServiceConstants.DIRECTORY_TOR_BINARY, Application.MODE_PRIVATE);
             if (!appBinHome.exists())
                 appBinHome.mkdirs();
@@ -480,10 +579,8 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
             if (Build.VERSION.SDK_INT >= 26)
                 createNotificationChannel();
 
-            CustomTorResourceInstaller installer = new CustomTorResourceInstaller(this, appBinHome);
-            installer.installGeoIP();
-
-            pluggableTransportInstall();
+            mNotificationRenderer = new NotificationRenderer(this, mHandler, NOTIFICATION_CHANNEL_ID, NOTIFY_ID);
+            mNotificationRenderer.register();
 
             mVpnManager = new OrbotVpnManager(this);
 
@@ -493,16 +590,26 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
             //what error here
             Log.e(OrbotConstants.TAG, "Error installing Orbot binaries", e);
             logNotice("There was an error installing Orbot binaries");
+        } finally {
+            span.end();
         }
 
         Log.i("OrbotService", "onCreate end");
     }
 
+    /**
+     * @return what was known about tor's data directory before the current or last start
+     */
+    public StartupPlan getStartupPlan() {
+        return mStartupPlan;
+    }
+
     protected String getCurrentStatus() {
         return mCurrentStatus;
     }
 
     private boolean pluggableTransportInstall() {
+        Tracer.Span span = Tracer.begin("pluggableTransportInstall");
 
         File fileCacheDir = new File(getCacheDir(), "pt");
         if (!fileCacheDir.exists())
@@ -512,12 +619,153 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
         String fileTestState = IPtProxy.getStateLocation();
         debug("IPtProxy state: " + fileTestState);
 
+        span.end();
         return false;
     }
 
-    private File updateTorrcCustomFile() throws IOException, TimeoutException {
-        SharedPreferences prefs = Prefs.getSharedPrefs(getApplicationContext());
+    private void installGeoIP() {
+        synchronized (mGeoIPLock) {
+            if (mGeoIPInstalled)
+                return;
+            Tracer.Span span = Tracer.begin("installGeoIP");
+            try {
+                CustomTorResourceInstaller installer = new CustomTorResourceInstaller(this, appBinHome);
+                if (installer.installGeoIP()) {
+                    // new files, the lookup tables have to be loaded again
+                    mGeoIP = null;
+                    mGeoIPLoadFailed = false;
+                    mGeoIPGeneration++;
+                }
+                mGeoIPInstalled = true;
+                mTorrcModel.invalidate(TorrcModel.Fragment.NODES);
+                // the exit country picker lists what the files know
+                exec(this::getGeoIP);
+            } catch (IOException e) {
+                // tor can run without GeoIP data, GeoIPFile is only added if the files exist
+                logException("There was an error installing GeoIP files", e);
+            } finally {
+                span.end();
+            }
+        }
+    }
+
+    private void startPluggableTransports() {
+        if (useIPtObfsMeekProxy())
+            IPtProxy.startObfs4Proxy("DEBUG", false, false);
+
+        if (useIPtSnowflakeProxy())
+            startSnowflakeClient();
+
+        if (Prefs.beSnowflakeProxy())
+            runSnowflakeProxy();
+
+        // ClientTransportPlugin lines point at the transport ports, which can move between starts
+        String transportPorts = IPtProxy.obfs3Port() + ":" + IPtProxy.obfs4Port() + ":" + IPtProxy.meekPort() + ":" + IPtProxy.snowflakePort();
+        if (!transportPorts.equals(mTransportPorts)) {
+            mTransportPorts = transportPorts;
+            mTorrcModel.invalidate(TorrcModel.Fragment.BRIDGES);
+        }
+    }
+
+    /**
+     * Everything that has to happen before TorService can be bound is modelled as a
+     * {@link StartupPipeline}: independent stages such as launching the pluggable transports,
+     * staging the GeoIP files, building the torrc fragments and reading the onion service
+     * databases run concurrently, and the fragments are then joined in a fixed order.
+     *
+     * @param startup false to only build the torrc text for a running tor, without installing
+     *                the GeoIP files or (re)launching the pluggable transports
+     */
+    private String buildTorrcCustom(boolean startup) throws Exception {
+        final SharedPreferences prefs = Prefs.getSharedPrefs(getApplicationContext());
+        final EnumMap<TorrcModel.Fragment, String> fragments = new EnumMap<>(TorrcModel.Fragment.class);
+
+        logNotice(getString(R.string.updating_settings_in_tor_service));
+
+        StartupPipeline pipeline = new StartupPipeline(mStartupExecutor);
+        String[] bridgesDependOn = {};
+        String[] nodesDependOn = {};
+        if (startup) {
+            pipeline.addStage(STAGE_GEOIP, this::installGeoIP)
+                    .addStage(STAGE_PT_INSTALL, this::pluggableTransportInstall)
+                    .addStage(STAGE_PT_LAUNCH, this::startPluggableTransports, STAGE_PT_INSTALL);
+            bridgesDependOn = new String[]{STAGE_PT_LAUNCH};
+            nodesDependOn = new String[]{STAGE_GEOIP};
+        }
+
+        addFragmentStage(pipeline, fragments, TorrcModel.Fragment.GENERAL, () -> buildGeneralTorrc().toString());
+        addFragmentStage(pipeline, fragments, TorrcModel.Fragment.PORTS, () -> buildPortsTorrc(prefs).toString());
+        addFragmentStage(pipeline, fragments, TorrcModel.Fragment.PADDING, () -> buildPaddingTorrc(prefs).toString());
+        addFragmentStage(pipeline, fragments, TorrcModel.Fragment.BRIDGES, () -> buildBridgesTorrc(prefs).toString(), bridgesDependOn);
+        addFragmentStage(pipeline, fragments, TorrcModel.Fragment.NODES, () -> buildNodesTorrc(prefs).toString(), nodesDependOn);
+        addFragmentStage(pipeline, fragments, TorrcModel.Fragment.RELAY, () -> buildRelayTorrc(prefs).toString());
+
+        if (Prefs.hostOnionServicesEnabled()) {
+            final ContentResolver contentResolver = getApplicationContext().getContentResolver();
+            addFragmentStage(pipeline, fragments, TorrcModel.Fragment.V3_ONION_SERVICES, () -> {
+                StringBuffer torrc = new StringBuffer();
+                addV3OnionServicesToTorrc(torrc, contentResolver);
+                return torrc.toString();
+            });
+            addFragmentStage(pipeline, fragments, TorrcModel.Fragment.V3_CLIENT_AUTH, () -> {
+                StringBuffer torrc = new StringBuffer();
+                addV3ClientAuthToTorrc(torrc, contentResolver);
+                return torrc.toString();
+            });
+            addFragmentStage(pipeline, fragments, TorrcModel.Fragment.V2_HIDDEN_SERVICES, () -> {
+                StringBuffer torrc = new StringBuffer();
+                addV2HiddenServicesToTorrc(torrc, contentResolver);
+                return torrc.toString();
+            });
+            addFragmentStage(pipeline, fragments, TorrcModel.Fragment.V2_CLIENT_COOKIES, () -> {
+                StringBuffer torrc = new StringBuffer();
+                addV2ClientCookiesToTorrc(torrc, contentResolver);
+                return torrc.toString();
+            });
+        }
+
+        addFragmentStage(pipeline, fragments, TorrcModel.Fragment.CUSTOM,
+                () -> "\n" + prefs.getString("pref_custom_torrc", "") + '\n');
+
+        try {
+            pipeline.run(STARTUP_PIPELINE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            debug("startup stage timings: " + pipeline.formatStageTimings());
+        }
+
+        StringBuffer extraLines = new StringBuffer();
+        synchronized (fragments) {
+            for (String fragment : fragments.values())
+                extraLines.append(fragment);
+        }
+
+        logNotice("updating torrc custom configuration...");
+
+        debug("torrc.custom=" + extraLines.toString());
+
+        return extraLines.toString();
+    }
+
+    /**
+     * Adds a stage that takes the fragment from {@link #mTorrcModel} if it is still valid and
+     * only runs the builder when it isn't.
+     */
+    private void addFragmentStage(StartupPipeline pipeline, final Map<TorrcModel.Fragment, String> fragments,
+                                  final TorrcModel.Fragment fragment, final TorrcModel.Builder builder, String... dependsOn) {
+        pipeline.addStage("torrc-" + fragment.name().toLowerCase(Locale.ENGLISH), () -> {
+            String content = mTorrcModel.get(fragment);
+            if (content == null) {
+                int generation = mTorrcModel.beginBuild(fragment);
+                content = builder.build();
+                mTorrcModel.put(fragment, content, generation);
+            }
+            synchronized (fragments) {
+                fragments.put(fragment, content);
+            }
+        }, dependsOn);
+    }
 
+    private StringBuffer buildGeneralTorrc() {
         StringBuffer extraLines = new StringBuffer();
 
         extraLines.append("\n");
@@ -525,19 +773,39 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
         extraLines.append("RunAsDaemon 0").append('\n');
         extraLines.append("AvoidDiskWrites 0").append('\n');
 
+        extraLines.append("VirtualAddrNetwork 10.192.0.0/10").append('\n');
+        extraLines.append("AutomapHostsOnResolve 1").append('\n');
+
+        extraLines.append("DormantClientTimeout 10 minutes").append('\n');
+        // extraLines.append("DormantOnFirstStartup 0").append('\n');
+        extraLines.append("DormantCanceledByStartup 1").append('\n');
+
+        extraLines.append("DisableNetwork 0").append('\n');
+
+        if (Prefs.useDebugLogging()) {
+            extraLines.append("Log debug syslog").append('\n');
+            extraLines.append("SafeLogging 0").append('\n');
+        }
+
+        return extraLines;
+    }
+
+    private StringBuffer buildPortsTorrc(SharedPreferences prefs) {
+        StringBuffer extraLines = new StringBuffer();
+
         String socksPortPref = prefs.getString(OrbotConstants.PREF_SOCKS, (TorServiceConstants.SOCKS_PROXY_PORT_DEFAULT));
 
         if (socksPortPref.indexOf(':') != -1)
             socksPortPref = socksPortPref.split(":")[1];
 
-        socksPortPref = checkPortOrAuto(socksPortPref);
+        socksPortPref = checkPortOrAuto(socksPortPref, mPorts.socks);
 
         String httpPortPref = prefs.getString(OrbotConstants.PREF_HTTP, (TorServiceConstants.HTTP_PROXY_PORT_DEFAULT));
 
         if (httpPortPref.indexOf(':') != -1)
             httpPortPref = httpPortPref.split(":")[1];
 
-        httpPortPref = checkPortOrAuto(httpPortPref);
+        httpPortPref = checkPortOrAuto(httpPortPref, mPorts.http);
 
         String isolate = "";
         if (prefs.getBoolean(OrbotConstants.PREF_ISOLATE_DEST, false)) {
@@ -564,6 +832,18 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
 
         extraLines.append("HTTPTunnelPort ").append(httpPortPref).append('\n');
 
+        String transPort = prefs.getString("pref_transport", TorServiceConstants.TOR_TRANSPROXY_PORT_DEFAULT + "");
+        String dnsPort = prefs.getString("pref_dnsport", TorServiceConstants.TOR_DNS_PORT_DEFAULT + "");
+
+        extraLines.append("TransPort ").append(checkPortOrAuto(transPort, mPorts.trans)).append('\n');
+        extraLines.append("DNSPort ").append(checkPortOrAuto(dnsPort, mPorts.dns)).append('\n');
+
+        return extraLines;
+    }
+
+    private StringBuffer buildPaddingTorrc(SharedPreferences prefs) {
+        StringBuffer extraLines = new StringBuffer();
+
         if (prefs.getBoolean(OrbotConstants.PREF_CONNECTION_PADDING, false)) {
             extraLines.append("ConnectionPadding 1").append('\n');
         }
@@ -582,54 +862,32 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
             extraLines.append("ReducedCircuitPadding 1").append('\n');
         }
 
-        String transPort = prefs.getString("pref_transport", TorServiceConstants.TOR_TRANSPROXY_PORT_DEFAULT + "");
-        String dnsPort = prefs.getString("pref_dnsport", TorServiceConstants.TOR_DNS_PORT_DEFAULT + "");
-
-        extraLines.append("TransPort ").append(checkPortOrAuto(transPort)).append('\n');
-        extraLines.append("DNSPort ").append(checkPortOrAuto(dnsPort)).append('\n');
-
-        extraLines.append("VirtualAddrNetwork 10.192.0.0/10").append('\n');
-        extraLines.append("AutomapHostsOnResolve 1").append('\n');
-
-        extraLines.append("DormantClientTimeout 10 minutes").append('\n');
-        // extraLines.append("DormantOnFirstStartup 0").append('\n');
-        extraLines.append("DormantCanceledByStartup 1").append('\n');
-
-        extraLines.append("DisableNetwork 0").append('\n');
-
-        if (Prefs.useDebugLogging()) {
-            extraLines.append("Log debug syslog").append('\n');
-            extraLines.append("SafeLogging 0").append('\n');
-        }
-
-        extraLines = processSettingsImpl(extraLines);
-
-        if (extraLines == null)
-            return null;
-
-        extraLines.append('\n');
-        extraLines.append(prefs.getString("pref_custom_torrc", "")).append('\n');
-
-        logNotice("updating torrc custom configuration...");
-
-        debug("torrc.custom=" + extraLines.toString());
+        return extraLines;
+    }
 
-        File fileTorRcCustom = TorService.getTorrc(this);
-        updateTorConfigCustom(fileTorRcCustom, extraLines.toString());
-        return fileTorRcCustom;
+    /**
+     * The ports tor is currently listening on, as reported over the control port.
+     */
+    public static PortAllocator.Ports getPorts() {
+        return mPorts;
     }
 
-    private String checkPortOrAuto(String portString) {
+    /**
+     * @param listeningPort the port tor is listening on for this setting, if tor is running
+     *                      and it still satisfies the setting it is kept so applying new
+     *                      settings doesn't move the listener
+     */
+    private String checkPortOrAuto(String portString, int listeningPort) {
         if (!portString.equalsIgnoreCase("auto")) {
-            boolean isPortUsed = true;
-            int port = Integer.parseInt(portString);
+            int preferredPort = Integer.parseInt(portString);
+            if (conn != null && PortAllocator.isCandidate(preferredPort, listeningPort))
+                return listeningPort + "";
 
-            while (isPortUsed) {
-                isPortUsed = TorServiceUtils.isPortOpen("127.0.0.1", port, 500);
+            int port = mPortAllocator.reserve(preferredPort);
+
+            if (port == -1) //none of the candidate ports are available, so let Tor find one instead
+                return "auto";
 
-                if (isPortUsed) //the specified port is not available, so let Tor find one instead
-                    port++;
-            }
             return port + "";
         }
 
@@ -654,15 +912,16 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
      */
     private void replyWithStatus(Intent startRequest) {
         String packageName = startRequest.getStringExtra(EXTRA_PACKAGE_NAME);
+        PortAllocator.Ports ports = mPorts;
 
         Intent reply = new Intent(ACTION_STATUS);
         reply.putExtra(EXTRA_STATUS, mCurrentStatus);
-        reply.putExtra(EXTRA_SOCKS_PROXY, "socks://127.0.0.1:" + mPortSOCKS);
+        reply.putExtra(EXTRA_SOCKS_PROXY, "socks://127.0.0.1:" + ports.socks);
         reply.putExtra(EXTRA_SOCKS_PROXY_HOST, "127.0.0.1");
-        reply.putExtra(EXTRA_SOCKS_PROXY_PORT, mPortSOCKS);
-        reply.putExtra(EXTRA_HTTP_PROXY, "http://127.0.0.1:" + mPortHTTP);
+        reply.putExtra(EXTRA_SOCKS_PROXY_PORT, ports.socks);
+        reply.putExtra(EXTRA_HTTP_PROXY, "http://127.0.0.1:" + ports.http);
         reply.putExtra(EXTRA_HTTP_PROXY_HOST, "127.0.0.1");
-        reply.putExtra(EXTRA_HTTP_PROXY_PORT, mPortHTTP);
+        reply.putExtra(EXTRA_HTTP_PROXY_PORT, ports.http);
 
         if (packageName != null) {
             reply.setPackage(packageName);
@@ -671,8 +930,8 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
 
         LocalBroadcastManager.getInstance(this).sendBroadcast(reply);
 
-        if (mPortSOCKS != -1 && mPortHTTP != -1)
-            sendCallbackPorts(mPortSOCKS, mPortHTTP, mPortDns, mPortTrans);
+        if (ports.hasProxyPorts())
+            sendCallbackPorts(ports);
 
     }
 
@@ -694,10 +953,19 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
             }
 
             sendCallbackStatus(STATUS_STARTING);
+            mBootstrapSpan = Tracer.begin("bootstrap");
 
             // make sure there are no stray daemons running
             stopTor();
 
+            mStartedAt = SystemClock.elapsedRealtime();
+            mStartupPlan = StartupPlan.inspect(Prefs.getSharedPrefs(getApplicationContext()), appCacheHome,
+                    Prefs.bridgesEnabled() ? Prefs.getBridgesList() : null);
+            logNotice("Startup plan: " + mStartupPlan);
+            // bridges that did not get tor connected last time should not be tried again
+            if (Boolean.FALSE.equals(mStartupPlan.lastBootstrapSucceeded))
+                mTorrcModel.invalidate(TorrcModel.Fragment.BRIDGES);
+
             showToolbarNotification(getString(R.string.status_starting_up), NOTIFY_ID, R.drawable.ic_stat_tor);
             //sendCallbackLogMessage(getString(R.string.status_starting_up));
             //logNotice(getString(R.string.status_starting_up));
@@ -807,55 +1075,40 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
     }
 
     private synchronized void startTorService() throws Exception {
+        Tracer.Span span = Tracer.begin("startTorService");
+        try {
+            bindTorService();
+        } finally {
+            span.end();
+        }
+    }
+
+    private void bindTorService() throws Exception {
         updateTorConfigCustom(TorService.getDefaultsTorrc(this),
                 "DNSPort 0\n" +
                 "TransPort 0\n" +
                 "DisableNetwork 1\n");
 
-        File fileTorrcCustom = updateTorrcCustomFile();
+        String torrc = buildTorrcCustom(true);
+        File fileTorrcCustom = TorService.getTorrc(this);
+        mTorrcModel.writeIfChanged(fileTorrcCustom, torrc);
         if ((!fileTorrcCustom.exists()) || (!fileTorrcCustom.canRead()))
             return;
 
+        mConfigApplier.setApplied(torrc);
+
         sendCallbackLogMessage(getString(R.string.status_starting_up));
 
         torServiceConnection = new ServiceConnection() {
             @Override
             public void onServiceConnected(ComponentName componentName, IBinder iBinder) {
                 torService = ((TorService.LocalBinder) iBinder).getService();
-                try {
-                    conn = torService.getTorControlConnection();
-                    while (conn == null) {
-                        Log.v(TAG, "Waiting for Tor Control Connection...");
-                        Thread.sleep(500);
-                        conn = torService.getTorControlConnection();
-                    }
-                    mEventHandler = new TorEventHandler(OrbotService.this);
-                    logNotice("adding control port event handler");
-                    conn.setEventHandler(mEventHandler);
-                    ArrayList<String> events = new ArrayList<>(Arrays.asList(
-                            TorControlCommands.EVENT_OR_CONN_STATUS,
-                            TorControlCommands.EVENT_CIRCUIT_STATUS,
-                            TorControlCommands.EVENT_NOTICE_MSG,
-                            TorControlCommands.EVENT_WARN_MSG,
-                            TorControlCommands.EVENT_ERR_MSG,
-                            TorControlCommands.EVENT_BANDWIDTH_USED,
-                            TorControlCommands.EVENT_NEW_DESC,
-                            TorControlCommands.EVENT_ADDRMAP));
-                    if (Prefs.useDebugLogging()) {
-                        events.add(TorControlCommands.EVENT_DEBUG_MSG);
-                        events.add(TorControlCommands.EVENT_INFO_MSG);
-                    }
-                    conn.setEvents(events);
-                    logNotice("SUCCESS added control port event handler");
-                } catch (IOException | InterruptedException e) {
-                    e.printStackTrace();
-                    stopTorOnError(e.getLocalizedMessage());
-                    conn = null;
-                }
+                mReadiness.onServiceConnected(torService);
             }
 
             @Override
             public void onServiceDisconnected(ComponentName componentName) {
+                mReadiness.onServiceDisconnected();
                 conn = null;
                 torService = null;
                 mEventHandler = null;
@@ -878,31 +1131,98 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
             }
         };
 
-        BroadcastReceiver receiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                if (TorService.ACTION_STATUS.equals(intent.getAction())
-                        && TorService.STATUS_ON.equals(intent.getStringExtra(TorService.EXTRA_STATUS))) {
-                    initControlConnection();
-                    unregisterReceiver(this);
-                }
-            }
-        };
-        // run the BroadcastReceiver in its own thread
-        HandlerThread handlerThread = new HandlerThread(receiver.getClass().getSimpleName());
-        handlerThread.start();
-        Looper looper = handlerThread.getLooper();
-        Handler handler = new Handler(looper);
-        registerReceiver(receiver, new IntentFilter(TorService.ACTION_STATUS), null, handler);
+        mReadiness.reset();
+        mControlWaitSpan = Tracer.begin("waitForControlConnection");
 
         Intent serviceIntent = new Intent(this, TorService.class);
         if (Build.VERSION.SDK_INT < 29) {
             shouldUnbindTorService = bindService(serviceIntent, torServiceConnection, BIND_AUTO_CREATE);
         } else {
-            shouldUnbindTorService = bindService(serviceIntent, BIND_AUTO_CREATE, mExecutor, torServiceConnection);
+            shouldUnbindTorService = bindService(serviceIntent, BIND_AUTO_CREATE, mReadiness.getExecutor(), torServiceConnection);
+        }
+    }
+
+    /**
+     * Called on the lifecycle thread once TorService is bound and tor is up.
+     */
+    @Override
+    public void onTorReady(TorService torService, TorControlConnection conn) {
+        Tracer.Span span = mControlWaitSpan;
+        mControlWaitSpan = null;
+        if (span != null)
+            span.end();
+
+        this.conn = conn;
+        // circuits count towards the bridges and transports of this start
+        mCircuitStats.setBridges(getBridgeLinesInUse());
+        try {
+            mEventHandler = new TorEventHandler(OrbotService.this);
+            logNotice("adding control port event handler");
+            conn.setEventHandler(mEventHandler);
+            ArrayList<String> events = new ArrayList<>(Arrays.asList(
+                    TorControlCommands.EVENT_OR_CONN_STATUS,
+                    TorControlCommands.EVENT_CIRCUIT_STATUS,
+                    TorControlCommands.EVENT_STREAM_STATUS,
+                    TorControlCommands.EVENT_NOTICE_MSG,
+                    TorControlCommands.EVENT_WARN_MSG,
+                    TorControlCommands.EVENT_ERR_MSG,
+                    TorControlCommands.EVENT_BANDWIDTH_USED,
+                    TorControlCommands.EVENT_NEW_DESC,
+                    TorControlCommands.EVENT_ADDRMAP));
+            if (Prefs.useDebugLogging()) {
+                events.add(TorControlCommands.EVENT_DEBUG_MSG);
+                events.add(TorControlCommands.EVENT_INFO_MSG);
+            }
+            conn.setEvents(events);
+            logNotice("SUCCESS added control port event handler");
+        } catch (IOException e) {
+            e.printStackTrace();
+            stopTorOnError(e.getLocalizedMessage());
+            this.conn = null;
+            return;
+        }
+
+        initControlConnection();
+    }
+
+    /**
+     * Commands are handled one at a time in the order they arrive. A command that is still
+     * waiting is replaced by a newer one of the same kind: start and stop requests collapse
+     * into the last one, status requests into one reply per app, and exit node changes are
+     * debounced.
+     */
+    private void enqueueCommand(Intent intent) {
+        String action = intent.getAction();
+        long debounceMs = CMD_SET_EXIT.equals(action) ? SET_EXIT_DEBOUNCE_MS : 0;
+
+        if (!mCommandQueue.enqueue(getCommandKey(intent), debounceMs, new IncomingIntentRouter(intent)))
+            Log.w(OrbotConstants.TAG, "command queue full, dropped " + action + " (" + mCommandQueue.getMetrics() + ")");
+    }
+
+    private static String getCommandKey(Intent intent) {
+        String action = intent.getAction();
+        if (action == null)
+            return null;
+
+        switch (action) {
+            case ACTION_START:
+            case ACTION_START_ON_BOOT:
+            case ACTION_STOP:
+                return ACTION_START;
+            case ACTION_START_VPN:
+            case ACTION_STOP_VPN:
+                return ACTION_START_VPN;
+            case ACTION_STATUS:
+                return ACTION_STATUS + ':' + intent.getStringExtra(EXTRA_PACKAGE_NAME);
+            default:
+                return action;
         }
     }
 
+    public CommandQueue.Metrics getCommandQueueMetrics() {
+        return mCommandQueue.getMetrics();
+    }
+
     protected void exec(Runnable runn) {
         mExecutor.execute(runn);
     }
@@ -910,48 +1230,72 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
     private void initControlConnection() {
         if (conn != null) {
             logNotice("SUCCESS connected to Tor control port.");
+            Tracer.Span span = Tracer.begin("initControlConnection");
             try {
-                String confSocks = conn.getInfo("net/listeners/socks");
-                StringTokenizer st = new StringTokenizer(confSocks, " ");
-
-                confSocks = st.nextToken().split(":")[1];
-                confSocks = confSocks.substring(0, confSocks.length() - 1);
-                mPortSOCKS = Integer.parseInt(confSocks);
-
-                String confHttp = conn.getInfo("net/listeners/httptunnel");
-                st = new StringTokenizer(confHttp, " ");
-
-                confHttp = st.nextToken().split(":")[1];
-                confHttp = confHttp.substring(0, confHttp.length() - 1);
-                mPortHTTP = Integer.parseInt(confHttp);
-
-                String confDns = conn.getInfo("net/listeners/dns");
-                st = new StringTokenizer(confDns, " ");
-                if (st.hasMoreTokens()) {
-                    confDns = st.nextToken().split(":")[1];
-                    confDns = confDns.substring(0, confDns.length() - 1);
-                    mPortDns = Integer.parseInt(confDns);
-                    Prefs.getSharedPrefs(getApplicationContext()).edit().putInt(VpnPrefs.PREFS_DNS_PORT, mPortDns).apply();
-                }
-
-                String confTrans = conn.getInfo("net/listeners/trans");
-                st = new StringTokenizer(confTrans, " ");
-                if (st.hasMoreTokens()) {
-                    confTrans = st.nextToken().split(":")[1];
-                    confTrans = confTrans.substring(0, confTrans.length() - 1);
-                    mPortTrans = Integer.parseInt(confTrans);
-                }
+                refreshPorts(conn);
+                mCircuitRegistry.setConnection(conn);
 
-                sendCallbackPorts(mPortSOCKS, mPortHTTP, mPortDns, mPortTrans);
+                List<ConfigEntry> dataDirectory = conn.getConf("DataDirectory");
+                if (!dataDirectory.isEmpty())
+                    StartupPlan.rememberDataDirectory(Prefs.getSharedPrefs(getApplicationContext()), dataDirectory.get(0).value);
 
             } catch (IOException e) {
                 e.printStackTrace();
                 stopTorOnError(e.getLocalizedMessage());
                 conn = null;
+            } finally {
+                span.end();
             }
         }
     }
 
+    /**
+     * Asks tor which ports its listeners ended up on and tells the app and the VPN about them.
+     * Tor owns its listeners then, so the ports reserved for them at startup or by a change of
+     * settings are released.
+     */
+    private void refreshPorts(TorControlConnection conn) throws IOException {
+        String confSocks = conn.getInfo("net/listeners/socks");
+        StringTokenizer st = new StringTokenizer(confSocks, " ");
+
+        confSocks = st.nextToken().split(":")[1];
+        confSocks = confSocks.substring(0, confSocks.length() - 1);
+        int portSocks = Integer.parseInt(confSocks);
+
+        String confHttp = conn.getInfo("net/listeners/httptunnel");
+        st = new StringTokenizer(confHttp, " ");
+
+        confHttp = st.nextToken().split(":")[1];
+        confHttp = confHttp.substring(0, confHttp.length() - 1);
+        int portHttp = Integer.parseInt(confHttp);
+
+        int portDns = mPorts.dns;
+        String confDns = conn.getInfo("net/listeners/dns");
+        st = new StringTokenizer(confDns, " ");
+        if (st.hasMoreTokens()) {
+            confDns = st.nextToken().split(":")[1];
+            confDns = confDns.substring(0, confDns.length() - 1);
+            portDns = Integer.parseInt(confDns);
+            Prefs.getSharedPrefs(getApplicationContext()).edit().putInt(VpnPrefs.PREFS_DNS_PORT, portDns).apply();
+        }
+
+        int portTrans = mPorts.trans;
+        String confTrans = conn.getInfo("net/listeners/trans");
+        st = new StringTokenizer(confTrans, " ");
+        if (st.hasMoreTokens()) {
+            confTrans = st.nextToken().split(":")[1];
+            confTrans = confTrans.substring(0, confTrans.length() - 1);
+            portTrans = Integer.parseInt(confTrans);
+        }
+
+        mPorts = new PortAllocator.Ports(portSocks, portHttp, portDns, portTrans);
+        mPortAllocator.releaseAll();
+        sendCallbackPorts(mPorts);
+
+        // relay lookups only ever go through tor
+        mRelayMetadata.setProxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress("127.0.0.1", portHttp)));
+    }
+
     public void sendSignalActive() {
         if (conn != null && mCurrentStatus == STATUS_ON) {
             try {
@@ -984,35 +1328,60 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
         }
     }
 
-    protected void sendCallbackBandwidth(long upload, long download, long written, long read) {
+    /**
+     * Tells the app there is new traffic in {@link #getBandwidthHistory()}.
+     */
+    protected void sendCallbackBandwidth() {
         Intent intent = new Intent(LOCAL_ACTION_BANDWIDTH);
 
-        intent.putExtra("up", upload);
-        intent.putExtra("down", download);
-        intent.putExtra("written", written);
-        intent.putExtra("read", read);
         intent.putExtra(EXTRA_STATUS, mCurrentStatus);
 
         LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
     }
 
-    private void sendCallbackLogMessage(final String logMessage) {
-        mHandler.post(() -> {
-            Intent intent = new Intent(LOCAL_ACTION_LOG); // You can also include some extra data.
-            intent.putExtra(LOCAL_EXTRA_LOG, logMessage);
-            intent.putExtra(EXTRA_STATUS, mCurrentStatus);
+    private void sendCallbackLogMessage(String logMessage) {
+        sendCallbackLogMessage(LogBuffer.NOTICE, LogBuffer.SOURCE_ORBOT, logMessage);
+    }
 
-            LocalBroadcastManager.getInstance(OrbotService.this).sendBroadcast(intent);
-        });
+    /**
+     * Adds the line to the log buffer. Lines are delivered to the UI in batches, at most once
+     * per {@link #LOG_DELIVERY_INTERVAL_MS}.
+     */
+    private void sendCallbackLogMessage(int severity, String source, String logMessage) {
+        sLogBuffer.add(severity, source, logMessage);
+        if (mLogDeliveryPending.compareAndSet(false, true))
+            mHandler.postDelayed(this::deliverLog, LOG_DELIVERY_INTERVAL_MS);
+    }
+
+    private void deliverLog() {
+        mLogDeliveryPending.set(false);
+
+        ArrayList<LogBuffer.Record> records = new ArrayList<>();
+        mLogDelivered = sLogBuffer.read(mLogDelivered, sLogBuffer.getCapacity(), records);
+        if (records.isEmpty())
+            return;
 
+        StringBuilder batch = new StringBuilder();
+        for (LogBuffer.Record record : records) {
+            if (batch.length() > 0)
+                batch.append('\n');
+            batch.append(record);
+        }
+
+        Intent intent = new Intent(LOCAL_ACTION_LOG); // You can also include some extra data.
+        intent.putExtra(LOCAL_EXTRA_LOG, batch.toString());
+        intent.putExtra(LOCAL_EXTRA_LOG_SEQ, mLogDelivered);
+        intent.putExtra(EXTRA_STATUS, mCurrentStatus);
+
+        LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
     }
 
-    private void sendCallbackPorts(int socksPort, int httpPort, int dnsPort, int transPort) {
+    private void sendCallbackPorts(PortAllocator.Ports ports) {
         Intent intent = new Intent(LOCAL_ACTION_PORTS); // You can also include some extra data.
-        intent.putExtra(EXTRA_SOCKS_PROXY_PORT, socksPort);
-        intent.putExtra(EXTRA_HTTP_PROXY_PORT, httpPort);
-        intent.putExtra(EXTRA_DNS_PORT, dnsPort);
-        intent.putExtra(EXTRA_TRANS_PORT, transPort);
+        intent.putExtra(EXTRA_SOCKS_PROXY_PORT, ports.socks);
+        intent.putExtra(EXTRA_HTTP_PROXY_PORT, ports.http);
+        intent.putExtra(EXTRA_DNS_PORT, ports.dns);
+        intent.putExtra(EXTRA_TRANS_PORT, ports.trans);
 
         LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
 
@@ -1021,6 +1390,182 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
 
     }
 
+    /**
+     * Called by {@link TorEventHandler} for the first circuit that is built after starting,
+     * this closes the startup timeline and exports it.
+     *
+     * @param guardFingerprint the first hop of the circuit, with bridges the one tor used
+     */
+    protected void onFirstCircuitBuilt(String guardFingerprint) {
+        Tracer.instant("first BUILT circuit");
+        Tracer.Span span = mBootstrapSpan;
+        mBootstrapSpan = null;
+        if (span != null)
+            span.end();
+
+        sendCallbackStatus(STATUS_ON);
+
+        String bridgeLines = null;
+        List<String> bridges = getBridgeLinesInUse();
+        if (!bridges.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            for (String line : bridges)
+                sb.append("Bridge ").append(line).append('\n');
+            bridgeLines = sb.toString();
+            if (guardFingerprint == null || !mBridgeSelector.recordBootstrap(bridges, guardFingerprint))
+                debug("first circuit built through an unknown bridge " + guardFingerprint);
+        }
+        StartupPlan.recordBootstrapped(Prefs.getSharedPrefs(getApplicationContext()),
+                SystemClock.elapsedRealtime() - mStartedAt,
+                Prefs.bridgesEnabled() ? Prefs.getBridgesList() : null, bridgeLines);
+
+        exec(() -> {
+            File traceFile = new File(getFilesDir(), TRACE_FILE);
+            if (Tracer.export(traceFile))
+                debug("startup trace written to " + traceFile);
+        });
+    }
+
+    /**
+     * @return the bridge lines of the current torrc, without the leading "Bridge"
+     */
+    private List<String> getBridgeLinesInUse() {
+        ArrayList<String> lines = new ArrayList<>();
+        String bridges = mTorrcModel.get(TorrcModel.Fragment.BRIDGES);
+        if (Prefs.bridgesEnabled() && bridges != null) {
+            for (String line : bridges.split("\n")) {
+                if (line.startsWith("Bridge "))
+                    lines.add(line.substring("Bridge ".length()));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return the traffic tor has carried, for graphs and rates in the UI and notification
+     */
+    public static BandwidthHistory getBandwidthHistory() {
+        return sBandwidthHistory;
+    }
+
+    /**
+     * @return the country codes of the GeoIP files, sorted, or null until they were loaded
+     */
+    public static String[] getExitCountries() {
+        return sExitCountries;
+    }
+
+    /**
+     * @return the recent log lines of tor and Orbot, readers page through it with their own cursor
+     */
+    public static LogBuffer getLogBuffer() {
+        return sLogBuffer;
+    }
+
+    /**
+     * @return the circuits and streams tor has open right now
+     */
+    public CircuitRegistry getCircuitRegistry() {
+        return mCircuitRegistry;
+    }
+
+    /**
+     * @return how long streams take to attach and to succeed, overall, per port and per circuit
+     */
+    public StreamLatencyTracker getStreamLatency() {
+        return mStreamLatency;
+    }
+
+    /**
+     * @return circuit build times and failures by bridge transport, since the process started
+     */
+    public CircuitBuildStats getCircuitStats() {
+        return mCircuitStats;
+    }
+
+    /**
+     * Loads the GeoIP files on first use, which can take a moment, so don't call this on the
+     * main thread.
+     *
+     * @return the offline IP to country lookup, or null if the GeoIP files are not usable
+     */
+    public GeoIPDatabase getGeoIP() {
+        int generation;
+        synchronized (mGeoIPLock) {
+            if (mGeoIP != null || !mGeoIPInstalled || mGeoIPLoadFailed)
+                return mGeoIP;
+            generation = mGeoIPGeneration;
+        }
+
+        // parsing the files takes a while, installGeoIP must not wait for it
+        GeoIPDatabase geoIP;
+        try {
+            geoIP = GeoIPDatabase.load(appBinHome);
+        } catch (IOException e) {
+            synchronized (mGeoIPLock) {
+                if (generation == mGeoIPGeneration)
+                    mGeoIPLoadFailed = true;
+            }
+            logException("Unable to load the GeoIP files", e);
+            return null;
+        }
+
+        synchronized (mGeoIPLock) {
+            if (generation != mGeoIPGeneration)
+                return mGeoIP;
+            if (mGeoIP == null) {
+                mGeoIP = geoIP;
+                sExitCountries = geoIP.getCountries();
+            }
+            return mGeoIP;
+        }
+    }
+
+    /**
+     * Fills in the address of a relay from tor's consensus and its country from the GeoIP
+     * files, neither of which needs the network.
+     *
+     * @param done run on the executor afterwards, whether or not they knew the relay
+     */
+    void annotateRelay(TorEventHandler.Node node, Runnable done) {
+        exec(() -> {
+            TorControlConnection conn = this.conn;
+            if (conn == null)
+                return;
+
+            try {
+                // "r nickname identity [digest] date time IP ORPort DirPort"
+                for (String line : conn.getInfo("ns/id/" + node.id).split("\n")) {
+                    if (!line.startsWith("r "))
+                        continue;
+                    String[] fields = line.split(" ");
+                    for (int i = 3; i < fields.length; i++) {
+                        if (GeoIPDatabase.parseIPv4(fields[i]) != -1) {
+                            node.ipAddress = fields[i];
+                            break;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // not in the consensus, the Onionoo lookup may still know it
+            }
+
+            GeoIPDatabase geoIP = getGeoIP();
+            String countryCode = node.ipAddress != null && geoIP != null ? geoIP.lookup(node.ipAddress) : null;
+            // by name, as Onionoo gives it
+            if (countryCode != null && node.country == null)
+                node.country = new Locale("", countryCode).getDisplayCountry(Locale.ENGLISH);
+            done.run();
+        });
+    }
+
+    /**
+     * @return the address, country and AS of relays, cached across starts
+     */
+    public RelayMetadataService getRelayMetadata() {
+        return mRelayMetadata;
+    }
+
     protected void sendCallbackStatus(String currentStatus) {
         mCurrentStatus = currentStatus;
         Intent intent = getActionStatusIntent(currentStatus);
@@ -1044,19 +1589,10 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
         return intent;
     }
 
-    private StringBuffer processSettingsImpl(StringBuffer extraLines) throws IOException {
-        logNotice(getString(R.string.updating_settings_in_tor_service));
-        SharedPreferences prefs = Prefs.getSharedPrefs(getApplicationContext());
-
-        boolean useBridges = Prefs.bridgesEnabled();
-        boolean becomeRelay = prefs.getBoolean(OrbotConstants.PREF_OR, false);
-        boolean ReachableAddresses = prefs.getBoolean(OrbotConstants.PREF_REACHABLE_ADDRESSES, false);
-        boolean enableStrictNodes = prefs.getBoolean("pref_strict_nodes", false);
-        String entranceNodes = prefs.getString("pref_entrance_nodes", "");
-        String exitNodes = prefs.getString("pref_exit_nodes", "");
-        String excludeNodes = prefs.getString("pref_exclude_nodes", "");
+    private StringBuffer buildBridgesTorrc(SharedPreferences prefs) {
+        StringBuffer extraLines = new StringBuffer();
 
-        if (!useBridges) {
+        if (!Prefs.bridgesEnabled()) {
             extraLines.append("UseBridges 0").append('\n');
             if (Prefs.useVpn()) { //set the proxy here if we aren't using a bridge
                 if (!mIsLollipop) {
@@ -1117,18 +1653,33 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
                 builtInBridgeType = "snowflake";
             }
 
-            if (!TextUtils.isEmpty(builtInBridgeType))
+            StartupPlan plan = mStartupPlan;
+            if (plan != null && plan.keptBridgeLines != null)
+                extraLines.append(plan.keptBridgeLines); // the bridges of the last successful start
+            else if (!TextUtils.isEmpty(builtInBridgeType))
                 getBridges(builtInBridgeType, extraLines);
             else {
-                String[] bridgeListLines = parseBridgesFromSettings(bridgeList);
-                int bridgeIdx = (int) Math.floor(Math.random() * ((double) bridgeListLines.length));
-                String bridgeLine = bridgeListLines[bridgeIdx];
-                extraLines.append("Bridge ");
-                extraLines.append(bridgeLine);
-                extraLines.append("\n");
+                List<String> bridgeListLines = Arrays.asList(parseBridgesFromSettings(bridgeList));
+                for (String bridgeLine : mBridgeSelector.select(bridgeListLines, MAX_BRIDGES)) {
+                    extraLines.append("Bridge ");
+                    extraLines.append(bridgeLine);
+                    extraLines.append("\n");
+                }
             }
         }
 
+        return extraLines;
+    }
+
+    private StringBuffer buildNodesTorrc(SharedPreferences prefs) throws IOException {
+        StringBuffer extraLines = new StringBuffer();
+
+        boolean ReachableAddresses = prefs.getBoolean(OrbotConstants.PREF_REACHABLE_ADDRESSES, false);
+        boolean enableStrictNodes = prefs.getBoolean("pref_strict_nodes", false);
+        String entranceNodes = prefs.getString("pref_entrance_nodes", "");
+        String exitNodes = prefs.getString("pref_exit_nodes", "");
+        String excludeNodes = prefs.getString("pref_exclude_nodes", "");
+
         //only apply GeoIP if you need it
         File fileGeoIP = new File(appBinHome, GEOIP_ASSET_KEY);
         File fileGeoIP6 = new File(appBinHome, GEOIP6_ASSET_KEY);
@@ -1147,7 +1698,9 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
         if (!TextUtils.isEmpty(excludeNodes))
             extraLines.append("ExcludeNodes" + ' ').append(excludeNodes).append('\n');
 
-        extraLines.append("StrictNodes" + ' ').append(enableStrictNodes ? "1" : "0").append('\n');
+        // an exit country picked in the app is a hard requirement, as when it was set over the control port
+        boolean strictNodes = enableStrictNodes || !TextUtils.isEmpty(exitNodes);
+        extraLines.append("StrictNodes" + ' ').append(strictNodes ? "1" : "0").append('\n');
 
         try {
             if (ReachableAddresses) {
@@ -1157,9 +1710,19 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
 
         } catch (Exception e) {
             showToolbarNotification(getString(R.string.your_reachableaddresses_settings_caused_an_exception_), ERROR_NOTIFY_ID, R.drawable.ic_stat_notifyerr);
-            return null;
+            throw new IOException("invalid ReachableAddresses settings", e);
         }
 
+        return extraLines;
+    }
+
+    private StringBuffer buildRelayTorrc(SharedPreferences prefs) throws IOException {
+        StringBuffer extraLines = new StringBuffer();
+
+        boolean useBridges = Prefs.bridgesEnabled();
+        boolean becomeRelay = prefs.getBoolean(OrbotConstants.PREF_OR, false);
+        boolean ReachableAddresses = prefs.getBoolean(OrbotConstants.PREF_REACHABLE_ADDRESSES, false);
+
         try {
             if (becomeRelay && (!useBridges) && (!ReachableAddresses)) {
                 int ORPort = Integer.parseInt(Objects.requireNonNull(prefs.getString(OrbotConstants.PREF_OR_PORT, "9001")));
@@ -1174,15 +1737,7 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
             }
         } catch (Exception e) {
             showToolbarNotification(getString(R.string.your_relay_settings_caused_an_exception_), ERROR_NOTIFY_ID, R.drawable.ic_stat_notifyerr);
-            return null;
-        }
-
-        if (Prefs.hostOnionServicesEnabled()) {
-            ContentResolver contentResolver = getApplicationContext().getContentResolver();
-            addV3OnionServicesToTorrc(extraLines, contentResolver);
-            addV3ClientAuthToTorrc(extraLines, contentResolver);
-            addV2HiddenServicesToTorrc(extraLines, contentResolver);
-            addV2ClientCookiesToTorrc(extraLines, contentResolver);
+            throw new IOException("invalid relay settings", e);
         }
 
         return extraLines;
@@ -1386,45 +1941,24 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
     private void setExitNode(String newExits) {
         SharedPreferences prefs = Prefs.getSharedPrefs(getApplicationContext());
 
-        if (TextUtils.isEmpty(newExits)) {
+        if (TextUtils.isEmpty(newExits))
             prefs.edit().remove("pref_exit_nodes").apply();
-
-            if (conn != null) {
-                try {
-                    ArrayList<String> resetBuffer = new ArrayList<>();
-                    resetBuffer.add("ExitNodes");
-                    resetBuffer.add("StrictNodes");
-                    conn.resetConf(resetBuffer);
-                    conn.setConf("DisableNetwork", "1");
-                    conn.setConf("DisableNetwork", "0");
-
-                } catch (Exception ioe) {
-                    Log.e(OrbotConstants.TAG, "Connection exception occured resetting exits", ioe);
-                }
-            }
-        } else {
+        else
             prefs.edit().putString("pref_exit_nodes", newExits).apply();
 
-            if (conn != null) {
-                try {
-                    File fileGeoIP = new File(appBinHome, GEOIP_ASSET_KEY);
-                    File fileGeoIP6 = new File(appBinHome, GEOIP6_ASSET_KEY);
-
-                    conn.setConf("GeoIPFile", fileGeoIP.getCanonicalPath());
-                    conn.setConf("GeoIPv6File", fileGeoIP6.getCanonicalPath());
+        // the change listener only runs later on the main thread, the reread must not use the old exits
+        mTorrcModel.invalidate(TorrcModel.Fragment.NODES);
 
-                    conn.setConf("ExitNodes", newExits);
-                    conn.setConf("StrictNodes", "1");
-
-                    conn.setConf("DisableNetwork", "1");
-                    conn.setConf("DisableNetwork", "0");
+        if (conn != null) {
+            requestTorRereadConfig();
 
-                } catch (Exception ioe) {
-                    Log.e(OrbotConstants.TAG, "Connection exception occured resetting exits", ioe);
-                }
+            try {
+                // existing circuits keep their exits, so move new streams onto fresh circuits
+                conn.signal(TorControlCommands.SIGNAL_NEWNYM);
+            } catch (Exception ioe) {
+                Log.e(OrbotConstants.TAG, "Connection exception occured resetting exits", ioe);
             }
         }
-
     }
 
     private void loadBridgeDefaults() {
@@ -1459,26 +1993,17 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
 
     private void getBridges(String type, StringBuffer extraLines) {
 
-        Collections.shuffle(alBridges, bridgeSelectRandom);
-
-        //let's just pull up to 2 bridges from the defaults at time
-        int maxBridges = 2;
-        int bridgeCount = 0;
-
-        //now go through the list to find the bridges we want
+        //find the bridges of the type we want, and let the selector pick the best few
+        ArrayList<String> candidates = new ArrayList<>();
         for (Bridge b : alBridges) {
-            if (b.type.equals(type)) {
-                extraLines.append("Bridge ");
-                extraLines.append(b.type);
-                extraLines.append(' ');
-                extraLines.append(b.config);
-                extraLines.append('\n');
-
-                bridgeCount++;
+            if (b.type.equals(type))
+                candidates.add(b.type + ' ' + b.config);
+        }
 
-                if (bridgeCount > maxBridges)
-                    break;
-            }
+        for (String bridgeLine : mBridgeSelector.select(candidates, MAX_BRIDGES)) {
+            extraLines.append("Bridge ");
+            extraLines.append(bridgeLine);
+            extraLines.append('\n');
         }
     }
 
@@ -1511,28 +2036,29 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
         String config;
     }
 
-    private class IncomingIntentRouter implements Runnable {
+    private class IncomingIntentRouter implements CommandQueue.Replaceable {
         Intent mIntent;
 
         public IncomingIntentRouter(Intent intent) {
             mIntent = intent;
         }
 
+        /**
+         * A start that was merged with a later start or stop still answers its sender, with
+         * the status the later command left behind.
+         */
+        @Override
+        public void onReplaced() {
+            String action = mIntent.getAction();
+            if (ACTION_START.equals(action) || ACTION_START_ON_BOOT.equals(action))
+                replyWithStatus(mIntent);
+        }
+
         public void run() {
             String action = mIntent.getAction();
 
             if (!TextUtils.isEmpty(action)) {
                 if (action.equals(ACTION_START) || action.equals(ACTION_START_ON_BOOT)) {
-
-                    if (useIPtObfsMeekProxy())
-                        IPtProxy.startObfs4Proxy("DEBUG", false, false);
-
-                    if (useIPtSnowflakeProxy())
-                        startSnowflakeClient();
-
-                    if (Prefs.beSnowflakeProxy())
-                        runSnowflakeProxy();
-
                     startTor();
                     replyWithStatus(mIntent);
 
@@ -1548,10 +2074,13 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
                             }
                         }
 
-                        if (mPortSOCKS != -1 && mPortHTTP != -1)
-                            sendCallbackPorts(mPortSOCKS, mPortHTTP, mPortDns, mPortTrans);
+                        PortAllocator.Ports ports = mPorts;
+                        if (ports.hasProxyPorts())
+                            sendCallbackPorts(ports);
                     }
 
+                } else if (action.equals(ACTION_STOP)) {
+                    stopTorAsync();
                 } else if (action.equals(ACTION_START_VPN)) {
                     if (mVpnManager != null && (!mVpnManager.isStarted())) {
                         //start VPN here
@@ -1561,8 +2090,9 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
                         }
                     }
 
-                    if (mPortSOCKS != -1 && mPortHTTP != -1)
-                        sendCallbackPorts(mPortSOCKS, mPortHTTP, mPortDns, mPortTrans);
+                    PortAllocator.Ports ports = mPorts;
+                    if (ports.hasProxyPorts())
+                        sendCallbackPorts(ports);
 
 
                 } else if (action.equals(ACTION_STOP_VPN)) {
@@ -1571,6 +2101,9 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
                 } else if (action.equals(ACTION_STATUS)) {
                     replyWithStatus(mIntent);
                 } else if (action.equals(TorControlCommands.SIGNAL_RELOAD)) {
+                    // the app sends this right after writing its settings, the change listener
+                    // may not have run yet on the main thread
+                    mTorrcModel.invalidateAll();
                     requestTorRereadConfig();
                 } else if (action.equals(TorControlCommands.SIGNAL_NEWNYM)) {
                     newIdentity();
@@ -1588,12 +2121,9 @@ public class OrbotService extends VpnService implements TorServiceConstants, Orb
     private class ActionBroadcastReceiver extends BroadcastReceiver {
         public void onReceive(Context context, Intent intent) {
             switch (intent.getAction()) {
-                case TorControlCommands.SIGNAL_NEWNYM: {
-                    newIdentity();
-                    break;
-                }
+                case TorControlCommands.SIGNAL_NEWNYM:
                 case CMD_ACTIVE: {
-                    sendSignalActive();
+                    enqueueCommand(intent);
                     break;
                 }
             }
@@ -0,0 +1,285 @@
+package org.torproject.android.service;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.torproject.android.service.util.ExternalIPFetcher;
+import org.torproject.android.service.util.Utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Address, country and AS of relays, looked up on Onionoo through tor. Lookups for the same
+ * relay that arrive while one is in flight wait for its result, lookups that arrive close
+ * together are sent as one request, and at most {@link #MAX_CONCURRENT_REQUESTS} requests run
+ * at a time. Results, including relays Onionoo does not know, are kept in a file with least
+ * recently used eviction and an expiry time, so restarting tor does not look up every guard
+ * again.
+ *
+ * Nothing is fetched until {@link #setProxy} has been called, lookups wait for it.
+ */
+public class RelayMetadataService {
+
+    public interface Listener {
+        /**
+         * @param metadata null if the relay could not be looked up
+         */
+        void onRelayMetadata(String fingerprint, Metadata metadata);
+    }
+
+    private static final String CACHE_FILE = "relay_metadata.json";
+    private static final int MAX_ENTRIES = 512;
+    private static final long TTL_MS = 3 * 24 * 60 * 60 * 1000L;
+    // bridges and brand new relays are not on Onionoo, ask again sooner
+    private static final long UNKNOWN_TTL_MS = 6 * 60 * 60 * 1000L;
+    private static final int MAX_BATCH = 10;
+    private static final int MAX_CONCURRENT_REQUESTS = 2;
+    private static final long BATCH_DELAY_MS = 250;
+
+    private final File mCacheFile;
+    private final ExternalIPFetcher mFetcher;
+    private final ScheduledExecutorService mExecutor = Executors.newScheduledThreadPool(MAX_CONCURRENT_REQUESTS);
+
+    private final LinkedHashMap<String, Metadata> mCache = new LinkedHashMap<String, Metadata>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Metadata> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final HashMap<String, List<Listener>> mInFlight = new HashMap<>();
+    private final LinkedHashSet<String> mPending = new LinkedHashSet<>();
+    private boolean mLoaded = false;
+    private boolean mDispatchScheduled = false;
+    private boolean mBatching = true;
+    private Proxy mProxy = null;
+
+    private long mCacheHits = 0;
+    private long mDeduplicated = 0;
+    private long mRequests = 0;
+
+    public RelayMetadataService(File dir, ExternalIPFetcher fetcher) {
+        mCacheFile = new File(dir, CACHE_FILE);
+        mFetcher = fetcher;
+    }
+
+    /**
+     * @param proxy how to reach Onionoo, normally tor's HTTP proxy; null holds back lookups
+     */
+    public synchronized void setProxy(Proxy proxy) {
+        mProxy = proxy;
+        scheduleDispatch();
+    }
+
+    /**
+     * Calls the listener right away when the relay is cached, otherwise from a worker thread.
+     */
+    public void lookup(String fingerprint, Listener listener) {
+        String key = fingerprint.toUpperCase(Locale.US);
+        Metadata cached;
+
+        synchronized (this) {
+            loadCache();
+            cached = mCache.get(key);
+            if (cached == null || cached.isExpired(System.currentTimeMillis())) {
+                List<Listener> listeners = mInFlight.get(key);
+                if (listeners != null) {
+                    listeners.add(listener);
+                    mDeduplicated++;
+                    return;
+                }
+
+                listeners = new ArrayList<>();
+                listeners.add(listener);
+                mInFlight.put(key, listeners);
+                mPending.add(key);
+                scheduleDispatch();
+                return;
+            }
+            mCacheHits++;
+        }
+
+        listener.onRelayMetadata(key, cached.isKnown() ? cached : null);
+    }
+
+    public synchronized long getCacheHits() {
+        return mCacheHits;
+    }
+
+    public synchronized long getDeduplicated() {
+        return mDeduplicated;
+    }
+
+    public synchronized long getRequests() {
+        return mRequests;
+    }
+
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    private void scheduleDispatch() {
+        if (mDispatchScheduled || mPending.isEmpty() || mProxy == null)
+            return;
+        mDispatchScheduled = true;
+        mExecutor.schedule(this::dispatch, BATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void dispatch() {
+        mDispatchScheduled = false;
+        Proxy proxy = mProxy;
+        if (proxy == null)
+            return;
+
+        int batchSize = mBatching ? MAX_BATCH : 1;
+        Iterator<String> pending = mPending.iterator();
+        while (pending.hasNext()) {
+            ArrayList<String> batch = new ArrayList<>();
+            while (pending.hasNext() && batch.size() < batchSize) {
+                batch.add(pending.next());
+                pending.remove();
+            }
+            // the pool has MAX_CONCURRENT_REQUESTS threads, further batches queue up
+            mExecutor.execute(() -> fetch(batch, proxy));
+        }
+    }
+
+    private void fetch(List<String> batch, Proxy proxy) {
+        Map<String, Metadata> results;
+        try {
+            synchronized (this) {
+                mRequests++;
+            }
+            results = mFetcher.fetch(batch, proxy);
+        } catch (ExternalIPFetcher.BadRequestException e) {
+            if (batch.size() > 1) {
+                synchronized (this) {
+                    Log.d(OrbotConstants.TAG, "Onionoo refused a batched lookup, looking up relays one at a time");
+                    mBatching = false;
+                    mPending.addAll(batch);
+                    scheduleDispatch();
+                }
+                return;
+            }
+            results = null;
+        } catch (IOException | JSONException e) {
+            results = null;
+        }
+
+        long now = System.currentTimeMillis();
+        for (String fingerprint : batch) {
+            List<Listener> listeners;
+            Metadata metadata = null;
+            synchronized (this) {
+                listeners = mInFlight.remove(fingerprint);
+                if (results != null) {
+                    metadata = results.get(fingerprint);
+                    if (metadata == null)
+                        metadata = new Metadata(fingerprint, null, null, null, now);
+                    mCache.put(fingerprint, metadata);
+                }
+            }
+
+            if (listeners != null) {
+                for (Listener listener : listeners)
+                    listener.onRelayMetadata(fingerprint, metadata != null && metadata.isKnown() ? metadata : null);
+            }
+        }
+
+        if (results != null)
+            saveCache();
+    }
+
+    private void loadCache() {
+        if (mLoaded)
+            return;
+        mLoaded = true;
+
+        if (!mCacheFile.exists())
+            return;
+
+        try {
+            String json;
+            InputStream is = new FileInputStream(mCacheFile);
+            try {
+                json = Utils.readString(is);
+            } finally {
+                is.close();
+            }
+
+            // stored least recently used first
+            JSONArray entries = new JSONArray(json);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject entry = entries.getJSONObject(i);
+                Metadata metadata = new Metadata(entry.getString("fingerprint"), entry.optString("ip", null),
+                        entry.optString("country", null), entry.optString("as", null), entry.optLong("fetched"));
+                if (!metadata.isExpired(now))
+                    mCache.put(metadata.fingerprint, metadata);
+            }
+        } catch (IOException | JSONException e) {
+            Log.d(OrbotConstants.TAG, "discarding unreadable relay metadata cache", e);
+            mCache.clear();
+        }
+    }
+
+    private synchronized void saveCache() {
+        try {
+            JSONArray entries = new JSONArray();
+            for (Metadata metadata : mCache.values()) {
+                entries.put(new JSONObject()
+                        .put("fingerprint", metadata.fingerprint)
+                        .putOpt("ip", metadata.ipAddress)
+                        .putOpt("country", metadata.country)
+                        .putOpt("as", metadata.organization)
+                        .put("fetched", metadata.fetchedAt));
+            }
+            Utils.writeFileAtomically(mCacheFile, entries.toString());
+        } catch (JSONException e) {
+            Log.d(OrbotConstants.TAG, "unable to save relay metadata cache", e);
+        }
+    }
+
+    public static class Metadata {
+        public final String fingerprint;
+        /**
+         * null if Onionoo does not know the relay
+         */
+        public final String ipAddress;
+        public final String country;
+        public final String organization;
+        public final long fetchedAt;
+
+        public Metadata(String fingerprint, String ipAddress, String country, String organization, long fetchedAt) {
+            this.fingerprint = fingerprint;
+            this.ipAddress = ipAddress;
+            this.country = country;
+            this.organization = organization;
+            this.fetchedAt = fetchedAt;
+        }
+
+        boolean isKnown() {
+            return ipAddress != null;
+        }
+
+        boolean isExpired(long now) {
+            return now - fetchedAt > (isKnown() ? TTL_MS : UNKNOWN_TTL_MS) || fetchedAt > now;
+        }
+    }
+}
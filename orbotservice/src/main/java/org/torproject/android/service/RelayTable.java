@@ -0,0 +1,141 @@
+package org.torproject.android.service;
+
+import java.util.Arrays;
+
+/**
+ * The relays that have shown up in circuit events, interned by fingerprint. Each relay is
+ * allocated once and afterwards referred to by a small int id. Lookups hash the fingerprint
+ * straight out of the event text, so nothing is allocated for a relay that is already known.
+ */
+public class RelayTable {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // open addressing, each slot holds id + 1, 0 marks an empty slot
+    private int[] mSlots = new int[INITIAL_CAPACITY];
+    private TorEventHandler.Node[] mNodes = new TorEventHandler.Node[INITIAL_CAPACITY / 2];
+    private int mSize = 0;
+
+    /**
+     * @param source    the text holding the fingerprint and nickname
+     * @param idStart   start of the fingerprint, without the leading '$'
+     * @param idEnd     end of the fingerprint
+     * @param nameStart start of the nickname, equal to {@code nameEnd} if there is none
+     * @param nameEnd   end of the nickname
+     * @return the id of the relay
+     */
+    public synchronized int intern(String source, int idStart, int idEnd, int nameStart, int nameEnd) {
+        int idLength = idEnd - idStart;
+        int hash = 0;
+        for (int i = idStart; i < idEnd; i++)
+            hash = 31 * hash + source.charAt(i);
+
+        int mask = mSlots.length - 1;
+        int slot = mix(hash) & mask;
+        while (mSlots[slot] != 0) {
+            int id = mSlots[slot] - 1;
+            TorEventHandler.Node node = mNodes[id];
+            if (node.id.length() == idLength && source.regionMatches(idStart, node.id, 0, idLength)) {
+                // the nickname is not part of every event
+                if (node.name == node.id && nameEnd > nameStart)
+                    node.name = source.substring(nameStart, nameEnd);
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        TorEventHandler.Node node = new TorEventHandler.Node();
+        node.id = source.substring(idStart, idEnd);
+        node.name = nameEnd > nameStart ? source.substring(nameStart, nameEnd) : node.id;
+
+        int id = mSize++;
+        if (id == mNodes.length)
+            mNodes = Arrays.copyOf(mNodes, mNodes.length * 2);
+        mNodes[id] = node;
+        mSlots[slot] = id + 1;
+
+        // keep the table at most half full
+        if (mSize * 2 > mSlots.length)
+            rehash(mSlots.length * 2);
+        return id;
+    }
+
+    /**
+     * Interns every hop of a CIRC path ("$fingerprint~nickname,$fingerprint=nickname,...") by
+     * scanning it by index.
+     *
+     * @param hops receives the id of each hop, must hold at least {@link #maxHops} entries
+     * @return the number of hops
+     */
+    public int internPath(String path, int[] hops) {
+        int hopCount = 0;
+        int length = path.length();
+        int start = 0;
+
+        while (start < length) {
+            int end = path.indexOf(',', start);
+            if (end == -1)
+                end = length;
+
+            int idStart = start < end && path.charAt(start) == '$' ? start + 1 : start;
+            int idEnd = idStart;
+            while (idEnd < end && path.charAt(idEnd) != '~' && path.charAt(idEnd) != '=')
+                idEnd++;
+            int nameStart = idEnd < end ? idEnd + 1 : end;
+
+            if (idEnd > idStart)
+                hops[hopCount++] = intern(path, idStart, idEnd, nameStart, end);
+            start = end + 1;
+        }
+        return hopCount;
+    }
+
+    /**
+     * @return the most hops {@link #internPath} can find in the path
+     */
+    public static int maxHops(String path) {
+        int hops = 1;
+        for (int i = path.indexOf(','); i != -1; i = path.indexOf(',', i + 1))
+            hops++;
+        return hops;
+    }
+
+    /**
+     * @return the relay, or null if the table was cleared since the id was handed out
+     */
+    public synchronized TorEventHandler.Node get(int id) {
+        return id < mSize ? mNodes[id] : null;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized void clear() {
+        mSlots = new int[INITIAL_CAPACITY];
+        mNodes = new TorEventHandler.Node[INITIAL_CAPACITY / 2];
+        mSize = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < mSize; id++) {
+            int slot = mix(mNodes[id].id.hashCode()) & mask;
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = id + 1;
+        }
+        mSlots = slots;
+    }
+
+    /**
+     * Spreads the bits of a String-style hash so neighbouring hashes don't cluster.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+}
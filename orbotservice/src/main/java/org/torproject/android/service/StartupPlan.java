@@ -0,0 +1,257 @@
+package org.torproject.android.service;
+
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * What Orbot knows about the next start before tor is launched: how fresh the directory
+ * information in tor's data directory is, whether tor has guards to go back to, and how the
+ * last bootstrap went. A start where all of these look good can resume in a few seconds,
+ * otherwise tor has to fetch a consensus and descriptors first, which can take a minute.
+ */
+public class StartupPlan {
+
+    public enum ConsensusState {
+        /**
+         * no cached consensus
+         */
+        MISSING,
+        /**
+         * the cached consensus is still valid, tor does not need a new one to build circuits
+         */
+        LIVE,
+        /**
+         * expired less than a day ago, tor will still use it while it fetches a new one
+         */
+        REASONABLY_LIVE,
+        /**
+         * too old to be used, tor has to download a consensus before it can do anything
+         */
+        STALE
+    }
+
+    private static final String PREF_DATA_DIR = "pref_startup_tor_data_dir";
+    private static final String PREF_LAST_OUTCOME = "pref_startup_last_outcome";
+    private static final String PREF_LAST_FINISHED = "pref_startup_last_finished";
+    private static final String PREF_LAST_DURATION = "pref_startup_last_duration";
+    private static final String PREF_LAST_BRIDGE_CONFIG = "pref_startup_last_bridge_config";
+    private static final String PREF_LAST_BRIDGE_LINES = "pref_startup_last_bridge_lines";
+
+    private static final String OUTCOME_BOOTSTRAPPED = "bootstrapped";
+    private static final String OUTCOME_FAILED = "failed";
+
+    private static final String[] CONSENSUS_FILES = {"cached-microdesc-consensus", "cached-consensus"};
+    private static final String[] DESCRIPTOR_FILES = {"cached-microdescs", "cached-microdescs.new"};
+    private static final String STATE_FILE = "state";
+    private static final long REASONABLY_LIVE_MS = 24 * 60 * 60 * 1000L;
+    private static final int CONSENSUS_HEADER_LINES = 64;
+
+    public final File dataDirectory;
+    public final ConsensusState consensusState;
+    /**
+     * end of the cached consensus' validity, or 0 if unknown
+     */
+    public final long consensusValidUntil;
+    public final boolean hasDescriptors;
+    public final int guardCount;
+    /**
+     * null if tor has never finished or failed a start
+     */
+    public final Boolean lastBootstrapSucceeded;
+    public final long lastBootstrapDurationMs;
+    /**
+     * the Bridge lines of the last start that bootstrapped, if bridges are still configured
+     * the same way, otherwise null
+     */
+    public final String keptBridgeLines;
+    public final boolean fastResume;
+    /**
+     * why a fast resume is not possible, empty if it is
+     */
+    public final List<String> coldStartReasons;
+
+    private StartupPlan(File dataDirectory, ConsensusState consensusState, long consensusValidUntil,
+                        boolean hasDescriptors, int guardCount, Boolean lastBootstrapSucceeded,
+                        long lastBootstrapDurationMs, String keptBridgeLines, List<String> coldStartReasons) {
+        this.dataDirectory = dataDirectory;
+        this.consensusState = consensusState;
+        this.consensusValidUntil = consensusValidUntil;
+        this.hasDescriptors = hasDescriptors;
+        this.guardCount = guardCount;
+        this.lastBootstrapSucceeded = lastBootstrapSucceeded;
+        this.lastBootstrapDurationMs = lastBootstrapDurationMs;
+        this.keptBridgeLines = keptBridgeLines;
+        this.coldStartReasons = Collections.unmodifiableList(coldStartReasons);
+        this.fastResume = coldStartReasons.isEmpty();
+    }
+
+    /**
+     * @param defaultDataDirectory used until tor has reported its data directory once
+     * @param bridgeConfig         the current bridge setting, or null if bridges are disabled
+     */
+    public static StartupPlan inspect(SharedPreferences prefs, File defaultDataDirectory, String bridgeConfig) {
+        String dataDirPath = prefs.getString(PREF_DATA_DIR, null);
+        File dataDir = dataDirPath != null ? new File(dataDirPath) : defaultDataDirectory;
+        long now = System.currentTimeMillis();
+
+        ArrayList<String> reasons = new ArrayList<>();
+
+        long validUntil = 0;
+        for (String name : CONSENSUS_FILES) {
+            validUntil = readConsensusValidUntil(new File(dataDir, name));
+            if (validUntil > 0)
+                break;
+        }
+
+        ConsensusState consensusState;
+        if (validUntil == 0)
+            consensusState = ConsensusState.MISSING;
+        else if (now < validUntil)
+            consensusState = ConsensusState.LIVE;
+        else if (now < validUntil + REASONABLY_LIVE_MS)
+            consensusState = ConsensusState.REASONABLY_LIVE;
+        else
+            consensusState = ConsensusState.STALE;
+
+        if (consensusState == ConsensusState.MISSING || consensusState == ConsensusState.STALE)
+            reasons.add("consensus " + consensusState.name().toLowerCase(Locale.ENGLISH));
+
+        boolean hasDescriptors = false;
+        for (String name : DESCRIPTOR_FILES) {
+            if (new File(dataDir, name).length() > 0)
+                hasDescriptors = true;
+        }
+        if (!hasDescriptors)
+            reasons.add("no cached descriptors");
+
+        int guardCount = countGuards(new File(dataDir, STATE_FILE));
+        if (guardCount == 0)
+            reasons.add("no guards in state file");
+
+        String outcome = prefs.getString(PREF_LAST_OUTCOME, null);
+        Boolean lastSucceeded = outcome == null ? null : OUTCOME_BOOTSTRAPPED.equals(outcome);
+        if (!Boolean.TRUE.equals(lastSucceeded))
+            reasons.add(outcome == null ? "no previous bootstrap" : "last bootstrap failed");
+
+        String keptBridgeLines = null;
+        if (bridgeConfig != null) {
+            if (Boolean.TRUE.equals(lastSucceeded) && bridgeConfig.equals(prefs.getString(PREF_LAST_BRIDGE_CONFIG, null)))
+                keptBridgeLines = prefs.getString(PREF_LAST_BRIDGE_LINES, null);
+            if (TextUtils.isEmpty(keptBridgeLines)) {
+                keptBridgeLines = null;
+                reasons.add("no bridge known to work");
+            }
+        }
+
+        return new StartupPlan(dataDir, consensusState, validUntil, hasDescriptors, guardCount,
+                lastSucceeded, prefs.getLong(PREF_LAST_DURATION, -1), keptBridgeLines, reasons);
+    }
+
+    public static void rememberDataDirectory(SharedPreferences prefs, String path) {
+        if (!TextUtils.isEmpty(path) && !path.equals(prefs.getString(PREF_DATA_DIR, null)))
+            prefs.edit().putString(PREF_DATA_DIR, path).apply();
+    }
+
+    /**
+     * @param bridgeConfig the bridge setting tor was started with, or null without bridges
+     * @param bridgeLines  the Bridge lines tor bootstrapped with
+     */
+    public static void recordBootstrapped(SharedPreferences prefs, long durationMs, String bridgeConfig, String bridgeLines) {
+        prefs.edit()
+                .putString(PREF_LAST_OUTCOME, OUTCOME_BOOTSTRAPPED)
+                .putLong(PREF_LAST_FINISHED, System.currentTimeMillis())
+                .putLong(PREF_LAST_DURATION, durationMs)
+                .putString(PREF_LAST_BRIDGE_CONFIG, bridgeConfig)
+                .putString(PREF_LAST_BRIDGE_LINES, bridgeLines)
+                .apply();
+    }
+
+    public static void recordFailed(SharedPreferences prefs, long durationMs) {
+        prefs.edit()
+                .putString(PREF_LAST_OUTCOME, OUTCOME_FAILED)
+                .putLong(PREF_LAST_FINISHED, System.currentTimeMillis())
+                .putLong(PREF_LAST_DURATION, durationMs)
+                .remove(PREF_LAST_BRIDGE_LINES)
+                .apply();
+    }
+
+    /**
+     * @return the valid-until time of a consensus document from its header, or 0
+     */
+    private static long readConsensusValidUntil(File file) {
+        if (!file.isFile())
+            return 0;
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line;
+                for (int i = 0; i < CONSENSUS_HEADER_LINES && (line = reader.readLine()) != null; i++) {
+                    if (line.startsWith("valid-until "))
+                        return format.parse(line.substring("valid-until ".length()).trim()).getTime();
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | ParseException e) {
+            // treated as if there was no consensus
+        }
+        return 0;
+    }
+
+    private static int countGuards(File stateFile) {
+        if (!stateFile.isFile())
+            return 0;
+
+        int guards = 0;
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(stateFile));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("Guard "))
+                        guards++;
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+        return guards;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(fastResume ? "fast resume" : "cold start");
+        sb.append(": consensus=").append(consensusState.name().toLowerCase(Locale.ENGLISH));
+        sb.append(", descriptors=").append(hasDescriptors);
+        sb.append(", guards=").append(guardCount);
+        sb.append(", last bootstrap=");
+        if (lastBootstrapSucceeded == null)
+            sb.append("none");
+        else
+            sb.append(lastBootstrapSucceeded ? "ok" : "failed").append(" in ").append(lastBootstrapDurationMs).append("ms");
+        if (keptBridgeLines != null)
+            sb.append(", keeping last working bridges");
+        if (!fastResume)
+            sb.append(" (").append(TextUtils.join(", ", coldStartReasons)).append(')');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,195 @@
+package org.torproject.android.service;
+
+import android.os.SystemClock;
+
+import org.torproject.android.service.util.LatencyHistogram;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times streams from NEW or NEWRESOLVE until tor attaches them (SENTCONNECT, SENTRESOLVE) and
+ * until they succeed or fail, fed by STREAM events. The time to SUCCEEDED, which is about the
+ * time to the first byte an app sees, is kept per target port and per circuit.
+ *
+ * jtorctl does not pass on the circuit of a stream, {@link CircuitRegistry} looks it up after
+ * the stream succeeded and reports it to {@link #onStreamCircuit}. A stream is added to the
+ * histogram of its circuit once both are known, in whichever order they arrive.
+ */
+public class StreamLatencyTracker {
+
+    private final ConcurrentHashMap<String, Timing> mTimings = new ConcurrentHashMap<>();
+    private final LatencyHistogram mAttached = new LatencyHistogram();
+    private final LatencyHistogram mSucceeded = new LatencyHistogram();
+    private final LatencyHistogram mFailed = new LatencyHistogram();
+    private final ConcurrentHashMap<Integer, LatencyHistogram> mByPort = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> mByCircuit = new ConcurrentHashMap<>();
+
+    public void onStreamStatus(String streamId, String status, String target) {
+        onStreamStatus(streamId, status, target, SystemClock.elapsedRealtime());
+    }
+
+    void onStreamStatus(String streamId, String status, String target, long now) {
+        if (status.equals("NEW") || status.equals("NEWRESOLVE")) {
+            mTimings.put(streamId, new Timing(now, parsePort(target)));
+            return;
+        }
+
+        Timing timing = mTimings.get(streamId);
+        if (timing == null)
+            return; // started before we were listening
+
+        switch (status) {
+            case "SENTCONNECT":
+            case "SENTRESOLVE":
+                if (timing.attachedMs == -1) {
+                    timing.attachedMs = now - timing.startedAt;
+                    mAttached.record(timing.attachedMs);
+                }
+                break;
+            case "SUCCEEDED":
+                if (timing.succeededMs == -1) {
+                    timing.succeededMs = now - timing.startedAt;
+                    mSucceeded.record(timing.succeededMs);
+                    getOrCreate(mByPort, timing.port).record(timing.succeededMs);
+                    recordOnCircuit(timing);
+                }
+                break;
+            case "FAILED":
+            case "CLOSED":
+                mTimings.remove(streamId);
+                if (timing.succeededMs == -1)
+                    mFailed.record(now - timing.startedAt);
+                break;
+        }
+    }
+
+    /**
+     * @param circuitId the circuit tor attached the stream to
+     */
+    public void onStreamCircuit(String streamId, String circuitId) {
+        Timing timing = mTimings.get(streamId);
+        if (timing == null)
+            return;
+        timing.circuitId = circuitId;
+        recordOnCircuit(timing);
+    }
+
+    /**
+     * Circuits ids are not reused while tor runs, so a closed circuit's histogram is of no use.
+     */
+    public void onCircuitClosed(String circuitId) {
+        mByCircuit.remove(circuitId);
+    }
+
+    /**
+     * @return time from NEW to SUCCEEDED over all streams
+     */
+    public LatencyHistogram.Percentiles getSucceeded() {
+        return mSucceeded.getPercentiles();
+    }
+
+    /**
+     * @return time from NEW until tor attached the stream to a circuit
+     */
+    public LatencyHistogram.Percentiles getAttached() {
+        return mAttached.getPercentiles();
+    }
+
+    /**
+     * @return time from NEW until streams that never succeeded failed or closed
+     */
+    public LatencyHistogram.Percentiles getFailed() {
+        return mFailed.getPercentiles();
+    }
+
+    /**
+     * @return time to SUCCEEDED by target port, port 0 holds name resolutions
+     */
+    public Map<Integer, LatencyHistogram.Percentiles> getByPort() {
+        HashMap<Integer, LatencyHistogram.Percentiles> result = new HashMap<>();
+        for (Map.Entry<Integer, LatencyHistogram> entry : mByPort.entrySet())
+            result.put(entry.getKey(), entry.getValue().getPercentiles());
+        return result;
+    }
+
+    /**
+     * @return time to SUCCEEDED by circuit, for the circuits that are still open
+     */
+    public Map<String, LatencyHistogram.Percentiles> getByCircuit() {
+        HashMap<String, LatencyHistogram.Percentiles> result = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : mByCircuit.entrySet())
+            result.put(entry.getKey(), entry.getValue().getPercentiles());
+        return result;
+    }
+
+    public void clear() {
+        mTimings.clear();
+        mAttached.clear();
+        mSucceeded.clear();
+        mFailed.clear();
+        mByPort.clear();
+        mByCircuit.clear();
+    }
+
+    /**
+     * Records the stream on its circuit once, when its time to SUCCEEDED and its circuit are
+     * both known. The two arrive on different threads.
+     */
+    private void recordOnCircuit(Timing timing) {
+        String circuitId;
+        long succeededMs;
+        synchronized (timing) {
+            circuitId = timing.circuitId;
+            succeededMs = timing.succeededMs;
+            if (circuitId == null || succeededMs == -1 || timing.recordedOnCircuit)
+                return;
+            timing.recordedOnCircuit = true;
+        }
+        getOrCreate(mByCircuit, circuitId).record(succeededMs);
+    }
+
+    private static <K> LatencyHistogram getOrCreate(ConcurrentHashMap<K, LatencyHistogram> map, K key) {
+        LatencyHistogram histogram = map.get(key);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = map.putIfAbsent(key, created);
+            if (histogram == null)
+                histogram = created;
+        }
+        return histogram;
+    }
+
+    /**
+     * @return the port of a "host:port" target, 0 if there is none
+     */
+    private static int parsePort(String target) {
+        if (target == null)
+            return 0;
+        int split = target.lastIndexOf(':');
+        if (split == -1)
+            return 0;
+        try {
+            return Integer.parseInt(target.substring(split + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static class Timing {
+        final long startedAt;
+        final int port;
+        // only written by the thread reading control port events
+        long attachedMs = -1;
+        volatile long succeededMs = -1;
+        // set on the registry's executor
+        volatile String circuitId;
+        boolean recordedOnCircuit = false;
+
+        Timing(long startedAt, int port) {
+            this.startedAt = startedAt;
+            this.port = port;
+        }
+    }
+}
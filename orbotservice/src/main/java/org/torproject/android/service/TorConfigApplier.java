@@ -0,0 +1,164 @@
+package org.torproject.android.service;
+
+import android.text.TextUtils;
+
+import net.freehaven.tor.control.TorControlConnection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the torrc options tor is running with and applies a new torrc by sending
+ * only the options that changed over the control port, so settings changes don't require
+ * tor to be restarted and every circuit to be rebuilt.
+ */
+public class TorConfigApplier {
+
+    // options tor refuses to change while it is running
+    private static final Set<String> STATIC_OPTIONS = new HashSet<>(Arrays.asList(
+            "runasdaemon", "datadirectory", "cachedirectory", "keydirectory", "user", "sandbox",
+            "controlport", "controlsocket", "cookieauthentication", "cookieauthfile",
+            "syslogidentitytag", "hardwareaccel", "disabledebuggerattachment"));
+
+    // options that move tor's listeners, the ports have to be looked up again after a change
+    private static final Set<String> PORT_OPTIONS = new HashSet<>(Arrays.asList(
+            "socksport", "httptunnelport", "transport", "dnsport"));
+
+    // HiddenService* lines are order sensitive and have to be set together in one SETCONF
+    private static final String HIDDEN_SERVICE_PREFIX = "hiddenservice";
+    private static final String HIDDEN_SERVICE_GROUP = "HiddenServiceDir";
+
+    private LinkedHashMap<String, Option> mApplied = null;
+    private boolean mPortsChanged = false;
+
+    /**
+     * Remember the torrc tor was started with.
+     */
+    public synchronized void setApplied(String torrc) {
+        mApplied = parse(torrc);
+    }
+
+    public synchronized void clear() {
+        mApplied = null;
+        mPortsChanged = false;
+    }
+
+    /**
+     * @return true if the last successful {@link #apply} added, changed or removed a listener
+     */
+    public synchronized boolean portsChanged() {
+        return mPortsChanged;
+    }
+
+    /**
+     * Sends RESETCONF for the options that were removed and a single SETCONF for the options
+     * that were added or changed. Lines without a value can't be sent with SETCONF, their
+     * options are reset to tor's default instead.
+     *
+     * @return true if the new configuration is now active, false if it contains changes that
+     * tor can only pick up by re-reading its torrc
+     */
+    public synchronized boolean apply(TorControlConnection conn, String torrc) throws IOException {
+        LinkedHashMap<String, Option> newOptions = parse(torrc);
+
+        if (mApplied == null)
+            return false;
+
+        ArrayList<String> resetKeys = new ArrayList<>();
+        ArrayList<String> setLines = new ArrayList<>();
+        boolean portsChanged = false;
+
+        for (Map.Entry<String, Option> applied : mApplied.entrySet()) {
+            if (!newOptions.containsKey(applied.getKey())) {
+                if (STATIC_OPTIONS.contains(applied.getKey()))
+                    return false;
+                resetKeys.addAll(applied.getValue().keys());
+                portsChanged |= PORT_OPTIONS.contains(applied.getKey());
+            }
+        }
+
+        for (Map.Entry<String, Option> option : newOptions.entrySet()) {
+            Option applied = mApplied.get(option.getKey());
+            if (applied == null || !applied.lines.equals(option.getValue().lines)) {
+                if (STATIC_OPTIONS.contains(option.getKey()))
+                    return false;
+                for (String line : option.getValue().lines) {
+                    if (line.indexOf(' ') == -1) {
+                        if (!resetKeys.contains(line))
+                            resetKeys.add(line);
+                    } else {
+                        setLines.add(line);
+                    }
+                }
+                portsChanged |= PORT_OPTIONS.contains(option.getKey());
+            }
+        }
+
+        if (!resetKeys.isEmpty())
+            conn.resetConf(resetKeys);
+
+        if (!setLines.isEmpty())
+            conn.setConf(setLines);
+
+        mApplied = newOptions;
+        mPortsChanged = portsChanged;
+        return true;
+    }
+
+    /**
+     * Splits a torrc into options keyed by lower case name, each holding its lines as
+     * {@code "Key value"} in the form {@link TorControlConnection#setConf(java.util.Collection)}
+     * takes them.
+     */
+    static LinkedHashMap<String, Option> parse(String torrc) {
+        LinkedHashMap<String, Option> options = new LinkedHashMap<>();
+
+        for (String line : torrc.split("\n")) {
+            line = line.trim();
+            if (line.length() == 0 || line.charAt(0) == '#')
+                continue;
+
+            int split = 0;
+            while (split < line.length() && !Character.isWhitespace(line.charAt(split)))
+                split++;
+
+            String key = line.substring(0, split);
+            String value = line.substring(split).trim();
+
+            String groupKey = key.toLowerCase(Locale.ENGLISH);
+            if (groupKey.startsWith(HIDDEN_SERVICE_PREFIX))
+                groupKey = HIDDEN_SERVICE_GROUP.toLowerCase(Locale.ENGLISH);
+
+            Option option = options.get(groupKey);
+            if (option == null) {
+                option = new Option();
+                options.put(groupKey, option);
+            }
+            option.lines.add(TextUtils.isEmpty(value) ? key : key + ' ' + value);
+        }
+
+        return options;
+    }
+
+    static class Option {
+        final List<String> lines = new ArrayList<>();
+
+        List<String> keys() {
+            ArrayList<String> keys = new ArrayList<>();
+            for (String line : lines) {
+                int split = line.indexOf(' ');
+                String key = split == -1 ? line : line.substring(0, split);
+                if (!keys.contains(key))
+                    keys.add(key);
+            }
+            return keys;
+        }
+    }
+}
@@ -1,17 +1,15 @@
 package org.torproject.android.service;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import net.freehaven.tor.control.EventHandler;
 
-import org.torproject.android.service.util.ExternalIPFetcher;
 import org.torproject.android.service.util.Prefs;
 
 import java.text.NumberFormat;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.StringTokenizer;
 
 /**
  * Created by n8fr8 on 9/25/16.
@@ -19,31 +17,32 @@ import java.util.StringTokenizer;
 public class TorEventHandler implements EventHandler, TorServiceConstants {
 
     private final static int BW_THRESDHOLD = 10000;
+    // tor reports bandwidth every second, the notification and the app hear about it less often
+    private final static long BW_UPDATE_INTERVAL_MS = 2000;
     private OrbotService mService;
-    private long lastRead = -1;
-    private long lastWritten = -1;
-    private long mTotalTrafficWritten = 0;
-    private long mTotalTrafficRead = 0;
+    private long lastUpdate = 0;
+    private boolean wasIdle = true;
     private NumberFormat mNumberFormat;
-    private HashMap<String, Node> hmBuiltNodes = new HashMap<>();
+    private final RelayTable mRelays = new RelayTable();
+    // hop ids and relays of the circuit event being handled, only touched on the event thread
+    private int[] mHops = new int[8];
+    private Node[] mHopNodes = new Node[8];
 
     public TorEventHandler(OrbotService service) {
         mService = service;
         mNumberFormat = NumberFormat.getInstance(Locale.getDefault()); //localized numbers!
+        OrbotService.getBandwidthHistory().startSession();
 
     }
 
-    public HashMap<String, Node> getNodes() {
-        return hmBuiltNodes;
+    public RelayTable getRelays() {
+        return mRelays;
     }
 
     @Override
     public void message(String severity, String msg) {
 
-        if (severity.equalsIgnoreCase("debug"))
-            mService.debug(severity + ": " + msg);
-        else
-            mService.logNotice(severity + ": " + msg);
+        mService.logTorMessage(severity, msg);
     }
 
     @Override
@@ -67,11 +66,16 @@ public class TorEventHandler implements EventHandler, TorServiceConstants {
     @Override
     public void streamStatus(String status, String streamID, String target) {
 
-        String sb = "StreamStatus (" +
-                (streamID) +
-                "): " +
-                status;
-        mService.debug(sb);
+        mService.getStreamLatency().onStreamStatus(streamID, status, target);
+        mService.getCircuitRegistry().onStreamStatus(streamID, status, target);
+
+        if (Prefs.useDebugLogging()) {
+            String sb = "StreamStatus (" +
+                    (streamID) +
+                    "): " +
+                    status;
+            mService.debug(sb);
+        }
     }
 
     @Override
@@ -87,32 +91,34 @@ public class TorEventHandler implements EventHandler, TorServiceConstants {
     @Override
     public void bandwidthUsed(long read, long written) {
 
-        if (lastWritten > BW_THRESDHOLD || lastRead > BW_THRESDHOLD) {
-
-            int iconId = R.drawable.ic_stat_tor;
+        long now = SystemClock.elapsedRealtime();
+        BandwidthHistory history = OrbotService.getBandwidthHistory();
+        history.add(now, read, written);
 
-            if (read > 0 || written > 0)
-                iconId = R.drawable.ic_stat_tor_xfer;
+        if (now - lastUpdate < BW_UPDATE_INTERVAL_MS)
+            return;
 
-            String sb = formatCount(read) +
-                    " \u2193" +
-                    " / " +
-                    formatCount(written) +
-                    " \u2191";
-            mService.showToolbarNotification(sb, OrbotService.NOTIFY_ID, iconId);
+        long readRate = history.getReadRate(BandwidthHistory.Resolution.SECOND, now, BandwidthHistory.CURRENT_RATE_SECONDS);
+        long writeRate = history.getWriteRate(BandwidthHistory.Resolution.SECOND, now, BandwidthHistory.CURRENT_RATE_SECONDS);
+        boolean idle = (readRate + writeRate) * BandwidthHistory.CURRENT_RATE_SECONDS <= BW_THRESDHOLD;
 
-            mTotalTrafficWritten += written;
-            mTotalTrafficRead += read;
+        // one more update once the traffic stopped, so the rates drop to zero
+        if (idle && wasIdle)
+            return;
+        lastUpdate = now;
+        wasIdle = idle;
 
-            mService.sendCallbackBandwidth(lastWritten, lastRead, mTotalTrafficWritten, mTotalTrafficRead);
-
-            lastWritten = 0;
-            lastRead = 0;
-        }
+        int iconId = idle ? R.drawable.ic_stat_tor : R.drawable.ic_stat_tor_xfer;
 
-        lastWritten += written;
-        lastRead += read;
+        String sb = formatCount(readRate) +
+                " \u2193" +
+                " / " +
+                formatCount(writeRate) +
+                " \u2191";
+        mService.showToolbarNotification(sb, OrbotService.NOTIFY_ID, iconId);
 
+        // the app reads the numbers from the history
+        mService.sendCallbackBandwidth();
     }
 
     private String formatCount(long count) {
@@ -133,92 +139,97 @@ public class TorEventHandler implements EventHandler, TorServiceConstants {
 
     public void circuitStatus(String status, String circID, String path) {
 
+        int hopCount = path == null ? 0 : parsePath(path);
+        for (int i = 0; i < hopCount; i++)
+            mHopNodes[i] = mRelays.get(mHops[i]);
+
         /* once the first circuit is complete, then announce that Orbot is on*/
         if (mService.getCurrentStatus() == STATUS_STARTING && TextUtils.equals(status, "BUILT"))
-            mService.sendCallbackStatus(STATUS_ON);
-
-        if (Prefs.useDebugLogging()) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Circuit (");
-            sb.append((circID));
-            sb.append(") ");
-            sb.append(status);
-            sb.append(": ");
-
-            StringTokenizer st = new StringTokenizer(path, ",");
-            Node node;
-
-            boolean isFirstNode = true;
-            int nodeCount = st.countTokens();
-
-            while (st.hasMoreTokens()) {
-                String nodePath = st.nextToken();
-                String nodeId = null, nodeName = null;
-
-                String[] nodeParts;
-
-                if (nodePath.contains("="))
-                    nodeParts = nodePath.split("=");
-                else
-                    nodeParts = nodePath.split("~");
-
-                if (nodeParts.length == 1) {
-                    nodeId = nodeParts[0].substring(1);
-                    nodeName = nodeId;
-                } else if (nodeParts.length == 2) {
-                    nodeId = nodeParts[0].substring(1);
-                    nodeName = nodeParts[1];
-                }
-
-                if (nodeId == null)
-                    continue;
-
-                node = hmBuiltNodes.get(nodeId);
-
-                if (node == null) {
-                    node = new Node();
-                    node.id = nodeId;
-                    node.name = nodeName;
-                }
-
-                node.status = status;
-
-                sb.append(node.name);
-
-                if (!TextUtils.isEmpty(node.ipAddress))
-                    sb.append("(").append(node.ipAddress).append(")");
-
-                if (st.hasMoreTokens())
-                    sb.append(" > ");
-
-                if (status.equals("EXTENDED")) {
-
-                    if (isFirstNode) {
-                        hmBuiltNodes.put(node.id, node);
+            mService.onFirstCircuitBuilt(hopCount > 0 && mHopNodes[0] != null ? mHopNodes[0].id : null);
+
+        mService.getCircuitRegistry().onCircuitStatus(circID, status, mHopNodes, hopCount);
+        mService.getCircuitStats().onCircuitStatus(circID, status, hopCount);
+        if (status.equals("CLOSED") || status.equals("FAILED"))
+            mService.getStreamLatency().onCircuitClosed(circID);
+
+        if (!Prefs.useDebugLogging() || hopCount == 0)
+            return;
+
+        if (status.equals("EXTENDED")) {
+            Node guard = mRelays.get(mHops[0]);
+            if (guard != null && guard.ipAddress == null && (!guard.isFetchingInfo)) {
+                guard.isFetchingInfo = true;
+                mService.annotateRelay(guard, () -> {
+                    // the consensus and the GeoIP files know no AS, and may not know the relay
+                    mService.getRelayMetadata().lookup(guard.id, (fingerprint, metadata) -> {
+                        if (metadata != null)
+                            onRelayMetadata(guard, metadata);
+                        else
+                            debugRelay(guard);
+                    });
+                });
+            }
+        } else if (status.equals("BUILT") && hopCount > 3) {
+            mService.debug(formatCircuit(status, circID, hopCount));
+        }
+    }
 
-                        if (node.ipAddress == null && (!node.isFetchingInfo) && Prefs.useDebugLogging()) {
-                            node.isFetchingInfo = true;
-                            mService.exec(new ExternalIPFetcher(mService, node, OrbotService.mPortHTTP));
-                        }
+    /**
+     * Fills in only what the consensus and the GeoIP files left empty, they are more recent
+     * than a cached Onionoo answer.
+     */
+    private void onRelayMetadata(Node node, RelayMetadataService.Metadata metadata) {
+        if (node.ipAddress == null)
+            node.ipAddress = metadata.ipAddress;
+        if (node.country == null)
+            node.country = metadata.country;
+        if (node.organization == null)
+            node.organization = metadata.organization;
+        debugRelay(node);
+    }
 
-                        isFirstNode = false;
-                    }
-                } else if (status.equals("BUILT")) {
-                    //   mService.logNotice(sb.toString());
+    private void debugRelay(Node node) {
+        StringBuilder sbInfo = new StringBuilder();
+        sbInfo.append(node.name).append("(");
+        sbInfo.append(node.ipAddress).append(")");
 
-                    if (Prefs.useDebugLogging() && nodeCount > 3)
-                        mService.debug(sb.toString());
-                } else if (status.equals("CLOSED")) {
-                    //  mService.logNotice(sb.toString());
-                    hmBuiltNodes.remove(node.id);
-                }
+        if (node.country != null)
+            sbInfo.append(' ').append(node.country);
 
-            }
+        if (node.organization != null)
+            sbInfo.append(" (").append(node.organization).append(')');
 
+        mService.debug(sbInfo.toString());
+    }
 
+    /**
+     * Leaves the interned id of each hop of a CIRC path in {@link #mHops}.
+     *
+     * @return the number of hops
+     */
+    private int parsePath(String path) {
+        int maxHops = RelayTable.maxHops(path);
+        if (maxHops > mHops.length) {
+            mHops = new int[Math.max(maxHops, mHops.length * 2)];
+            mHopNodes = new Node[mHops.length];
         }
+        return mRelays.internPath(path, mHops);
+    }
 
-
+    private String formatCircuit(String status, String circID, int hopCount) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Circuit (").append(circID).append(") ").append(status).append(": ");
+        for (int i = 0; i < hopCount; i++) {
+            Node node = mRelays.get(mHops[i]);
+            if (node == null)
+                continue;
+            sb.append(node.name);
+            if (!TextUtils.isEmpty(node.ipAddress))
+                sb.append("(").append(node.ipAddress).append(")");
+            if (i < hopCount - 1)
+                sb.append(" > ");
+        }
+        return sb.toString();
     }
 
     private String parseNodeName(String node) {
@@ -230,13 +241,16 @@ public class TorEventHandler implements EventHandler, TorServiceConstants {
             return node;
     }
 
+    /**
+     * A relay interned by {@link RelayTable}. Its details are filled in from other threads,
+     * readers outside the event thread get copies from {@link CircuitRegistry}.
+     */
     public static class Node {
-        public String status;
         public String id;
-        public String name;
-        public String ipAddress;
-        public String country;
-        public String organization;
+        public volatile String name;
+        public volatile String ipAddress;
+        public volatile String country;
+        public volatile String organization;
 
         public boolean isFetchingInfo = false;
     }
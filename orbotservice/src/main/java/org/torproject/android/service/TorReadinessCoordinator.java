@@ -0,0 +1,123 @@
+package org.torproject.android.service;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import net.freehaven.tor.control.TorControlConnection;
+
+import org.torproject.jni.TorService;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Tor is ready to be controlled once TorService is bound and has reported
+ * {@link TorService#STATUS_ON}, which it only does after its control connection is open.
+ * Both signals are delivered to one lifecycle thread that lives as long as OrbotService, and
+ * the listener is called as soon as the second one arrives, so starting tor neither polls for
+ * the control connection nor creates a new thread each time.
+ */
+public class TorReadinessCoordinator {
+
+    public interface Listener {
+        /**
+         * Called on the lifecycle thread, once per start.
+         */
+        void onTorReady(TorService torService, TorControlConnection conn);
+    }
+
+    // only used if STATUS_ON arrives before the binder hands out the connection
+    private static final long RETRY_DELAY_MS = 50;
+    private static final int MAX_RETRIES = 100;
+
+    private final HandlerThread mThread = new HandlerThread("tor-lifecycle");
+    private final Handler mHandler;
+    private final Listener mListener;
+
+    // only touched on the lifecycle thread
+    private TorService mTorService = null;
+    private boolean mStatusOn = false;
+    private boolean mDelivered = false;
+    private int mRetries = 0;
+
+    private final BroadcastReceiver mStatusReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (TorService.ACTION_STATUS.equals(intent.getAction())
+                    && TorService.STATUS_ON.equals(intent.getStringExtra(TorService.EXTRA_STATUS))) {
+                mStatusOn = true;
+                deliverIfReady();
+            }
+        }
+    };
+
+    public TorReadinessCoordinator(Listener listener) {
+        mListener = listener;
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    public void register(Context context) {
+        context.registerReceiver(mStatusReceiver, new IntentFilter(TorService.ACTION_STATUS), null, mHandler);
+    }
+
+    public void release(Context context) {
+        try {
+            context.unregisterReceiver(mStatusReceiver);
+        } catch (IllegalArgumentException e) {
+            // not registered
+        }
+        mThread.quitSafely();
+    }
+
+    /**
+     * @return an executor that runs on the lifecycle thread, for binding to TorService
+     */
+    public Executor getExecutor() {
+        return mHandler::post;
+    }
+
+    /**
+     * Forget the state of the previous start, must be called before TorService is bound.
+     */
+    public void reset() {
+        mHandler.post(() -> {
+            mTorService = null;
+            mStatusOn = false;
+            mDelivered = false;
+            mRetries = 0;
+        });
+    }
+
+    public void onServiceConnected(TorService torService) {
+        mHandler.post(() -> {
+            mTorService = torService;
+            deliverIfReady();
+        });
+    }
+
+    public void onServiceDisconnected() {
+        mHandler.post(() -> mTorService = null);
+    }
+
+    private void deliverIfReady() {
+        if (mDelivered || mTorService == null || !mStatusOn)
+            return;
+
+        TorControlConnection conn = mTorService.getTorControlConnection();
+        if (conn == null) {
+            if (mRetries++ < MAX_RETRIES)
+                mHandler.postDelayed(this::deliverIfReady, RETRY_DELAY_MS);
+            else
+                Log.w(OrbotConstants.TAG, "tor reported ON without a control connection");
+            return;
+        }
+
+        mDelivered = true;
+        mListener.onTorReady(mTorService, conn);
+    }
+}
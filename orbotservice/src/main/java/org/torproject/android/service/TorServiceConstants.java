@@ -72,6 +72,8 @@ public interface TorServiceConstants {
     String LOCAL_ACTION_LOG = "log";
     String LOCAL_ACTION_BANDWIDTH = "bandwidth";
     String LOCAL_EXTRA_LOG = "log";
+    // the log buffer sequence following the lines in LOCAL_EXTRA_LOG
+    String LOCAL_EXTRA_LOG_SEQ = "log_seq";
     String LOCAL_ACTION_PORTS = "ports";
 
     /**
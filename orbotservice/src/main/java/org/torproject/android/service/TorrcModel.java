@@ -0,0 +1,155 @@
+package org.torproject.android.service;
+
+import android.content.ContentResolver;
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+
+import org.torproject.android.service.util.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The torrc Orbot generates, split into fragments that are cached until one of the
+ * preferences or content providers they are built from changes. Rebuilding the torrc for a
+ * restart or a settings change then only touches the fragments that are actually stale, and
+ * the file on disk is only rewritten when its content changes.
+ */
+public class TorrcModel implements SharedPreferences.OnSharedPreferenceChangeListener {
+
+    /**
+     * Fragments in the order they are written to the torrc.
+     */
+    public enum Fragment {
+        GENERAL("pref_enable_logging"),
+        PORTS(OrbotConstants.PREF_SOCKS, OrbotConstants.PREF_HTTP, OrbotConstants.PREF_ISOLATE_DEST,
+                OrbotConstants.PREF_PREFER_IPV6, OrbotConstants.PREF_DISABLE_IPV4,
+                "pref_open_proxy_on_all_interfaces", "pref_transport", "pref_dnsport"),
+        PADDING(OrbotConstants.PREF_CONNECTION_PADDING, OrbotConstants.PREF_REDUCED_CONNECTION_PADDING,
+                OrbotConstants.PREF_CIRCUIT_PADDING, OrbotConstants.PREF_REDUCED_CIRCUIT_PADDING),
+        BRIDGES("pref_bridges_enabled", "pref_bridges_list", "pref_vpn", "pref_proxy_type",
+                "pref_proxy_host", "pref_proxy_port", "pref_proxy_username", "pref_proxy_password"),
+        NODES("pref_entrance_nodes", "pref_exit_nodes", "pref_exclude_nodes", "pref_strict_nodes",
+                OrbotConstants.PREF_REACHABLE_ADDRESSES, OrbotConstants.PREF_REACHABLE_ADDRESSES_PORTS),
+        RELAY(OrbotConstants.PREF_OR, OrbotConstants.PREF_OR_PORT, OrbotConstants.PREF_OR_NICKNAME,
+                "pref_bridges_enabled", OrbotConstants.PREF_REACHABLE_ADDRESSES),
+        V3_ONION_SERVICES("pref_host_onionservices"),
+        V3_CLIENT_AUTH("pref_host_onionservices"),
+        V2_HIDDEN_SERVICES("pref_host_onionservices"),
+        V2_CLIENT_COOKIES("pref_host_onionservices"),
+        CUSTOM("pref_custom_torrc");
+
+        private final Set<String> mPrefKeys;
+
+        Fragment(String... prefKeys) {
+            mPrefKeys = new HashSet<>(Arrays.asList(prefKeys));
+        }
+    }
+
+    public interface Builder {
+        String build() throws Exception;
+    }
+
+    private final EnumMap<Fragment, String> mFragments = new EnumMap<>(Fragment.class);
+    private final int[] mGenerations = new int[Fragment.values().length];
+    private final Handler mHandler;
+    private final ArrayList<ContentObserver> mObservers = new ArrayList<>();
+    private String mWrittenHash = null;
+
+    public TorrcModel(Handler handler) {
+        mHandler = handler;
+    }
+
+    public void register(SharedPreferences prefs) {
+        prefs.registerOnSharedPreferenceChangeListener(this);
+    }
+
+    /**
+     * Invalidates the fragment whenever the content behind the uri changes.
+     */
+    public void observe(ContentResolver contentResolver, Uri uri, final Fragment fragment) {
+        ContentObserver observer = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                invalidate(fragment);
+            }
+        };
+        contentResolver.registerContentObserver(uri, true, observer);
+        mObservers.add(observer);
+    }
+
+    public void unregister(SharedPreferences prefs, ContentResolver contentResolver) {
+        prefs.unregisterOnSharedPreferenceChangeListener(this);
+        for (ContentObserver observer : mObservers)
+            contentResolver.unregisterContentObserver(observer);
+        mObservers.clear();
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+        for (Fragment fragment : Fragment.values()) {
+            if (fragment.mPrefKeys.contains(key))
+                invalidate(fragment);
+        }
+    }
+
+    /**
+     * @return the cached content of the fragment, or null if it has to be rebuilt
+     */
+    public synchronized String get(Fragment fragment) {
+        return mFragments.get(fragment);
+    }
+
+    public synchronized void invalidate(Fragment... fragments) {
+        for (Fragment fragment : fragments) {
+            mFragments.remove(fragment);
+            mGenerations[fragment.ordinal()]++;
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        invalidate(Fragment.values());
+    }
+
+    /**
+     * @return a token for {@link #put(Fragment, String, int)}, so a fragment that was
+     * invalidated while it was being built is not cached with stale content
+     */
+    public synchronized int beginBuild(Fragment fragment) {
+        return mGenerations[fragment.ordinal()];
+    }
+
+    public synchronized void put(Fragment fragment, String content, int generation) {
+        if (mGenerations[fragment.ordinal()] == generation)
+            mFragments.put(fragment, content);
+    }
+
+    /**
+     * Writes the torrc through a temporary file and a rename, so tor never sees a partly
+     * written file, and skips the write when the content is unchanged.
+     *
+     * @return true if the file was written
+     */
+    public synchronized boolean writeIfChanged(File file, String torrc) throws IOException {
+        String hash = Utils.sha256Hex(torrc.getBytes("UTF-8"));
+
+        if (mWrittenHash == null && file.exists())
+            mWrittenHash = Utils.sha256Hex(file);
+
+        if (hash.equals(mWrittenHash) && file.exists())
+            return false;
+
+        if (!Utils.writeFileAtomically(file, torrc))
+            throw new IOException("unable to write " + file);
+
+        mWrittenHash = hash;
+        return true;
+    }
+}
@@ -0,0 +1,208 @@
+package org.torproject.android.service.util;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.torproject.android.service.OrbotConstants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Runs commands one at a time on a single thread. Commands may carry a coalescing key: while
+ * a command with the same key is still waiting, a newer one replaces it in place instead of
+ * being queued behind it, so a burst of status requests or start/stop toggles collapses into
+ * the last one. Debounced commands additionally wait until no newer command with their key
+ * has arrived for the given delay. The queue is bounded, commands beyond its depth are
+ * dropped.
+ */
+public class CommandQueue {
+
+    /**
+     * A command that still owes its sender something, e.g. a status reply, when a newer
+     * command replaces it before it ran.
+     */
+    public interface Replaceable extends Runnable {
+        /**
+         * Called on the queue thread right after the command that replaced this one ran.
+         */
+        void onReplaced();
+    }
+
+    private final int mMaxDepth;
+    private final LinkedList<Entry> mQueue = new LinkedList<>();
+    private final HashMap<String, Entry> mPendingByKey = new HashMap<>();
+    private final Thread mThread;
+    private volatile boolean mRunning = true;
+
+    private long mEnqueued = 0;
+    private long mCoalesced = 0;
+    private long mDropped = 0;
+    private long mExecuted = 0;
+    private int mMaxDepthSeen = 0;
+    private long mTotalWaitMs = 0;
+    private long mMaxWaitMs = 0;
+
+    public CommandQueue(String name, int maxDepth) {
+        mMaxDepth = maxDepth;
+        mThread = new Thread(this::consume, name);
+        mThread.start();
+    }
+
+    /**
+     * @param key may be null for commands that are never coalesced
+     * @return false if the queue was full and the command was dropped
+     */
+    public boolean enqueue(String key, Runnable command) {
+        return enqueue(key, 0, command);
+    }
+
+    /**
+     * @param debounceMs how long the command waits for a newer one with the same key
+     */
+    public synchronized boolean enqueue(String key, long debounceMs, Runnable command) {
+        long now = SystemClock.elapsedRealtime();
+
+        Entry pending = key == null ? null : mPendingByKey.get(key);
+        if (pending != null) {
+            if (pending.command instanceof Replaceable)
+                pending.replaced.add((Replaceable) pending.command);
+            pending.command = command;
+            pending.runAt = now + debounceMs;
+            mCoalesced++;
+            notifyAll();
+            return true;
+        }
+
+        if (mQueue.size() >= mMaxDepth) {
+            mDropped++;
+            return false;
+        }
+
+        Entry entry = new Entry(key, command, now, now + debounceMs);
+        mQueue.add(entry);
+        if (key != null)
+            mPendingByKey.put(key, entry);
+
+        mEnqueued++;
+        mMaxDepthSeen = Math.max(mMaxDepthSeen, mQueue.size());
+        notifyAll();
+        return true;
+    }
+
+    public void shutdown() {
+        mRunning = false;
+        mThread.interrupt();
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(mQueue.size(), mEnqueued, mCoalesced, mDropped, mExecuted, mMaxDepthSeen,
+                mExecuted == 0 ? 0 : mTotalWaitMs / mExecuted, mMaxWaitMs);
+    }
+
+    private void consume() {
+        while (mRunning) {
+            Entry entry;
+            try {
+                entry = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                entry.command.run();
+            } catch (RuntimeException e) {
+                Log.e(OrbotConstants.TAG, "queued command failed", e);
+            }
+
+            for (Replaceable replaced : entry.replaced) {
+                try {
+                    replaced.onReplaced();
+                } catch (RuntimeException e) {
+                    Log.e(OrbotConstants.TAG, "replaced command failed to clean up", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the oldest command that is due, commands that are still being debounced don't
+     * hold up the ones behind them
+     */
+    private synchronized Entry take() throws InterruptedException {
+        while (true) {
+            long now = SystemClock.elapsedRealtime();
+            long nextRunAt = Long.MAX_VALUE;
+
+            Iterator<Entry> it = mQueue.iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.runAt <= now) {
+                    it.remove();
+                    if (entry.key != null)
+                        mPendingByKey.remove(entry.key);
+
+                    long waited = now - entry.enqueuedAt;
+                    mExecuted++;
+                    mTotalWaitMs += waited;
+                    mMaxWaitMs = Math.max(mMaxWaitMs, waited);
+                    return entry;
+                }
+                nextRunAt = Math.min(nextRunAt, entry.runAt);
+            }
+
+            if (nextRunAt == Long.MAX_VALUE)
+                wait();
+            else
+                wait(nextRunAt - now);
+        }
+    }
+
+    private static class Entry {
+        final String key;
+        final long enqueuedAt;
+        // commands this one replaced, only touched under the queue's lock until it is taken
+        final ArrayList<Replaceable> replaced = new ArrayList<>();
+        Runnable command;
+        long runAt;
+
+        Entry(String key, Runnable command, long enqueuedAt, long runAt) {
+            this.key = key;
+            this.command = command;
+            this.enqueuedAt = enqueuedAt;
+            this.runAt = runAt;
+        }
+    }
+
+    public static class Metrics {
+        public final int depth;
+        public final long enqueued;
+        public final long coalesced;
+        public final long dropped;
+        public final long executed;
+        public final int maxDepth;
+        public final long averageWaitMs;
+        public final long maxWaitMs;
+
+        Metrics(int depth, long enqueued, long coalesced, long dropped, long executed, int maxDepth,
+                long averageWaitMs, long maxWaitMs) {
+            this.depth = depth;
+            this.enqueued = enqueued;
+            this.coalesced = coalesced;
+            this.dropped = dropped;
+            this.executed = executed;
+            this.maxDepth = maxDepth;
+            this.averageWaitMs = averageWaitMs;
+            this.maxWaitMs = maxWaitMs;
+        }
+
+        @Override
+        public String toString() {
+            return "depth=" + depth + " enqueued=" + enqueued + " coalesced=" + coalesced + " dropped=" + dropped
+                    + " executed=" + executed + " maxDepth=" + maxDepth + " avgWait=" + averageWaitMs
+                    + "ms maxWait=" + maxWaitMs + "ms";
+        }
+    }
+}
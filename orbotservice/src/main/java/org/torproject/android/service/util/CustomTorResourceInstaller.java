@@ -2,22 +2,37 @@ package org.torproject.android.service.util;
 
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
 import android.util.Log;
 
+import androidx.core.content.pm.PackageInfoCompat;
+
 import org.torproject.android.service.TorServiceConstants;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Properties;
 
 public class CustomTorResourceInstaller {
 
     private static final String TAG = "CustomTorResourceInstaller";
 
+    private static final String GEOIP_STAMP_FILE = "geoip.stamp";
+    private static final String STAMP_APK_VERSION = "apk";
+    private static final String STAMP_SHA256 = ".sha256";
+    private static final String STAMP_LENGTH = ".length";
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
     private File installFolder;
     private Context context;
 
@@ -32,44 +47,6 @@ public class CustomTorResourceInstaller {
         return appInfo.nativeLibraryDir;
     }
 
-    /*
-     * Write the inputstream contents to the file
-     */
-    private static boolean streamToFile(InputStream stm, File outFile, boolean append, boolean zip) throws IOException {
-        byte[] buffer = new byte[1024];
-
-        int bytecount;
-
-        OutputStream stmOut = new FileOutputStream(outFile.getAbsolutePath(), append);
-        ZipInputStream zis = null;
-
-        if (zip) {
-            zis = new ZipInputStream(stm);
-            ZipEntry ze = zis.getNextEntry();
-            stm = zis;
-
-        }
-
-        while ((bytecount = stm.read(buffer)) > 0) {
-
-            stmOut.write(buffer, 0, bytecount);
-
-        }
-
-        stmOut.close();
-        stm.close();
-
-        if (zis != null)
-            zis.close();
-
-
-        return true;
-
-    }
-
-
-
-
     /*
      * Extract the Tor binary from the APK file using ZIP
      */
@@ -94,34 +71,175 @@ public class CustomTorResourceInstaller {
         return fList;
     }
 
-    /*
-     * Extract the Tor resources from the APK file using ZIP
+    /**
+     * Copies the GeoIP assets into the install folder. A stamp file records the APK the files
+     * came from and the checksum of each asset, so nothing is read or written when the files
+     * are already current. After an APK update the assets are hashed, and only the files whose
+     * content actually changed are copied again.
+     *
+     * @return true if any file was written
      */
-    public void installGeoIP() throws IOException {
+    public boolean installGeoIP() throws IOException {
         if (!installFolder.exists())
             installFolder.mkdirs();
-        assetToFile(TorServiceConstants.GEOIP_ASSET_KEY, TorServiceConstants.GEOIP_ASSET_KEY, false, false);
-        assetToFile(TorServiceConstants.GEOIP6_ASSET_KEY, TorServiceConstants.GEOIP6_ASSET_KEY, false, false);
+
+        File stampFile = new File(installFolder, GEOIP_STAMP_FILE);
+        Properties stamp = readStamp(stampFile);
+        String apkVersion = getApkVersion();
+
+        boolean written = installAsset(TorServiceConstants.GEOIP_ASSET_KEY, stamp, apkVersion);
+        written |= installAsset(TorServiceConstants.GEOIP6_ASSET_KEY, stamp, apkVersion);
+
+        if (written || !apkVersion.equals(stamp.getProperty(STAMP_APK_VERSION))) {
+            stamp.setProperty(STAMP_APK_VERSION, apkVersion);
+            writeStamp(stampFile, stamp);
+        }
+        return written;
     }
 
-    /*
-     * Reads file from assetPath/assetKey writes it to the install folder
-     */
-    private File assetToFile(String assetPath, String assetKey, boolean isZipped, boolean isExecutable) throws IOException {
-        InputStream is = context.getAssets().open(assetPath);
+    private boolean installAsset(String assetKey, Properties stamp, String apkVersion) throws IOException {
         File outFile = new File(installFolder, assetKey);
-        streamToFile(is, outFile, false, isZipped);
-        if (isExecutable) {
-            setExecutable(outFile);
+        String installedHash = stamp.getProperty(assetKey + STAMP_SHA256);
+        long installedLength = parseLong(stamp.getProperty(assetKey + STAMP_LENGTH));
+        boolean intact = installedHash != null && outFile.length() == installedLength;
+
+        if (intact && apkVersion.equals(stamp.getProperty(STAMP_APK_VERSION)))
+            return false;
+
+        String assetHash = Utils.sha256Hex(context.getAssets().open(assetKey));
+        if (intact && assetHash.equals(installedHash))
+            return false;
+
+        long length = copyAsset(assetKey, outFile);
+        stamp.setProperty(assetKey + STAMP_SHA256, assetHash);
+        stamp.setProperty(assetKey + STAMP_LENGTH, Long.toString(length));
+        Log.d(TAG, "installed " + outFile + " (" + length + " bytes)");
+        return true;
+    }
+
+    /**
+     * Copies an asset through a temporary file that is renamed into place, so tor never
+     * reads a partly written file. Uncompressed assets are transferred straight from the APK
+     * with {@link FileChannel#transferTo}, compressed ones are inflated through a large
+     * direct buffer.
+     */
+    private long copyAsset(String assetKey, File outFile) throws IOException {
+        File tmpFile = new File(installFolder, assetKey + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmpFile, false);
+        long length;
+        try {
+            FileChannel out = fos.getChannel();
+            AssetFileDescriptor afd = openAssetFd(assetKey);
+            if (afd != null)
+                length = transferUncompressed(afd, out);
+            else
+                length = transferStream(context.getAssets().open(assetKey), out);
+            out.force(true);
+        } catch (IOException e) {
+            tmpFile.delete();
+            throw e;
+        } finally {
+            fos.close();
+        }
+
+        if (!tmpFile.renameTo(outFile)) {
+            tmpFile.delete();
+            throw new IOException("unable to move " + tmpFile + " to " + outFile);
         }
-        return outFile;
+        return length;
     }
 
-    private void setExecutable(File fileBin) {
-        fileBin.setReadable(true);
-        fileBin.setExecutable(true);
-        fileBin.setWritable(false);
-        fileBin.setWritable(true, true);
+    private AssetFileDescriptor openAssetFd(String assetKey) {
+        try {
+            return context.getAssets().openFd(assetKey);
+        } catch (IOException e) {
+            // the asset is compressed inside the APK
+            return null;
+        }
+    }
+
+    private static long transferUncompressed(AssetFileDescriptor afd, FileChannel out) throws IOException {
+        FileInputStream fis = new FileInputStream(afd.getFileDescriptor());
+        try {
+            FileChannel in = fis.getChannel();
+            long offset = afd.getStartOffset();
+            long length = afd.getLength();
+            long copied = 0;
+            while (copied < length) {
+                long count = in.transferTo(offset + copied, length - copied, out);
+                if (count <= 0)
+                    throw new IOException("unexpected end of asset");
+                copied += count;
+            }
+            return copied;
+        } finally {
+            fis.close();
+            afd.close();
+        }
     }
-}
 
+    private static long transferStream(InputStream is, FileChannel out) throws IOException {
+        ReadableByteChannel in = Channels.newChannel(is);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+            long copied = 0;
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    copied += out.write(buffer);
+                buffer.clear();
+            }
+            return copied;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The version code alone doesn't change for development builds, so the time the APK was
+     * installed is part of the key as well.
+     */
+    private String getApkVersion() {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return PackageInfoCompat.getLongVersionCode(info) + "-" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return "";
+        }
+    }
+
+    private static Properties readStamp(File stampFile) {
+        Properties stamp = new Properties();
+        if (!stampFile.exists())
+            return stamp;
+        try {
+            FileInputStream fis = new FileInputStream(stampFile);
+            try {
+                stamp.load(fis);
+            } finally {
+                fis.close();
+            }
+        } catch (IOException e) {
+            // an unreadable stamp only means the assets are hashed again
+            stamp.clear();
+        }
+        return stamp;
+    }
+
+    private static void writeStamp(File stampFile, Properties stamp) throws IOException {
+        StringWriter writer = new StringWriter();
+        stamp.store(writer, null);
+        if (!Utils.writeFileAtomically(stampFile, writer.toString()))
+            throw new IOException("unable to write " + stampFile);
+    }
+
+    private static long parseLong(String value) {
+        if (value == null)
+            return -1;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -1,85 +1,105 @@
 package org.torproject.android.service.util;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
-import org.torproject.android.service.OrbotService;
-import org.torproject.android.service.TorEventHandler;
+import org.torproject.android.service.RelayMetadataService;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.InetSocketAddress;
+import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URL;
-import java.net.URLConnection;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
-public class ExternalIPFetcher implements Runnable {
+/**
+ * Looks up relays on Onionoo, several fingerprints per request. The base URL and the proxy
+ * are passed in, so the fetcher can also talk to a local stand-in server.
+ */
+public class ExternalIPFetcher {
 
-    private final static String ONIONOO_BASE_URL = "https://onionoo.torproject.org/details?fields=country_name,as_name,or_addresses&lookup=";
-    private OrbotService mService;
-    private TorEventHandler.Node mNode;
-    private int mLocalHttpProxyPort = 8118;
+    public final static String ONIONOO_BASE_URL = "https://onionoo.torproject.org/details";
+    private final static String FIELDS = "fingerprint,country_name,as_name,or_addresses";
+    private final static int TIMEOUT_MS = 30000;
 
-    public ExternalIPFetcher(OrbotService service, TorEventHandler.Node node, int localProxyPort) {
-        mService = service;
-        mNode = node;
-        mLocalHttpProxyPort = localProxyPort;
-    }
+    private final String mBaseUrl;
 
-    public void run() {
-        try {
+    public ExternalIPFetcher(String baseUrl) {
+        mBaseUrl = baseUrl;
+    }
 
-            URLConnection conn;
+    /**
+     * @return the relays the server knows about, by upper case fingerprint
+     * @throws BadRequestException if the server refused the lookup, e.g. because it does not
+     *                             accept several fingerprints at once
+     */
+    public Map<String, RelayMetadataService.Metadata> fetch(Collection<String> fingerprints, Proxy proxy)
+            throws IOException, JSONException {
+        StringBuilder lookup = new StringBuilder();
+        for (String fingerprint : fingerprints) {
+            if (lookup.length() > 0)
+                lookup.append(',');
+            lookup.append(fingerprint);
+        }
 
-            Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress("127.0.0.1", mLocalHttpProxyPort));
-            conn = new URL(ONIONOO_BASE_URL + mNode.id).openConnection(proxy);
+        URL url = new URL(mBaseUrl + "?fields=" + FIELDS + "&lookup=" + lookup);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection(proxy);
+        conn.setRequestProperty("Connection", "Close");
+        conn.setConnectTimeout(TIMEOUT_MS);
+        conn.setReadTimeout(TIMEOUT_MS);
 
-            conn.setRequestProperty("Connection", "Close");
-            conn.setConnectTimeout(60000);
-            conn.setReadTimeout(60000);
+        try {
+            int code = conn.getResponseCode();
+            if (code == HttpURLConnection.HTTP_BAD_REQUEST)
+                throw new BadRequestException();
+            if (code != HttpURLConnection.HTTP_OK)
+                throw new IOException("Onionoo returned HTTP " + code);
 
+            String json;
             InputStream is = conn.getInputStream();
+            try {
+                json = Utils.readString(is);
+            } finally {
+                is.close();
+            }
 
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-
-            // getting JSON string from URL
-
-            StringBuffer json = new StringBuffer();
-            String line;
-
-            while ((line = reader.readLine()) != null)
-                json.append(line);
-
-            JSONObject jsonNodeInfo = new org.json.JSONObject(json.toString());
-
-            JSONArray jsonRelays = jsonNodeInfo.getJSONArray("relays");
-
-            if (jsonRelays.length() > 0) {
-                mNode.ipAddress = jsonRelays.getJSONObject(0).getJSONArray("or_addresses").getString(0).split(":")[0];
-                mNode.country = jsonRelays.getJSONObject(0).getString("country_name");
-                mNode.organization = jsonRelays.getJSONObject(0).getString("as_name");
-
-                StringBuffer sbInfo = new StringBuffer();
-                sbInfo.append(mNode.name).append("(");
-                sbInfo.append(mNode.ipAddress).append(")");
-
-                if (mNode.country != null)
-                    sbInfo.append(' ').append(mNode.country);
-
-                if (mNode.organization != null)
-                    sbInfo.append(" (").append(mNode.organization).append(')');
+            HashMap<String, RelayMetadataService.Metadata> results = new HashMap<>();
+            JSONArray relays = new JSONObject(json).getJSONArray("relays");
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < relays.length(); i++) {
+                JSONObject relay = relays.getJSONObject(i);
+                String fingerprint = relay.getString("fingerprint").toUpperCase(Locale.US);
 
-                mService.debug(sbInfo.toString());
+                JSONArray addresses = relay.optJSONArray("or_addresses");
+                String ipAddress = addresses != null && addresses.length() > 0 ? stripPort(addresses.getString(0)) : null;
 
+                results.put(fingerprint, new RelayMetadataService.Metadata(fingerprint, ipAddress,
+                        relay.optString("country_name", null), relay.optString("as_name", null), now));
             }
+            return results;
+        } finally {
+            conn.disconnect();
+        }
+    }
 
-            reader.close();
-            is.close();
-
-
-        } catch (Exception e) {
+    /**
+     * "1.2.3.4:9001" to "1.2.3.4", "[2001:db8::1]:9001" to "2001:db8::1"
+     */
+    private static String stripPort(String address) {
+        int split = address.lastIndexOf(':');
+        if (split > 0)
+            address = address.substring(0, split);
+        if (address.startsWith("[") && address.endsWith("]"))
+            address = address.substring(1, address.length() - 1);
+        return address;
+    }
 
-            //    mService.debug ("Error getting node details from onionoo: " + e.getMessage());
+    public static class BadRequestException extends IOException {
+        BadRequestException() {
+            super("Onionoo refused the lookup");
         }
     }
 }
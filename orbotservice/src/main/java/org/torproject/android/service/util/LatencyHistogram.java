@@ -0,0 +1,97 @@
+package org.torproject.android.service.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in logarithmic buckets, eight per power of two, so percentiles are within
+ * 12.5% of the real value from a millisecond up to {@link #MAX_MS}. Recording is a single
+ * atomic increment and never allocates; longer durations land in the last bucket.
+ */
+public class LatencyHistogram {
+
+    public static final long MAX_MS = (1L << 20) - 1;
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = bucketOf(MAX_MS) + 1;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+
+    public void record(long ms) {
+        mCounts.incrementAndGet(bucketOf(Math.max(0, Math.min(ms, MAX_MS))));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += mCounts.get(i);
+        return count;
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return the upper bound of the bucket holding the quantile, or -1 without samples
+     */
+    public long getPercentile(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = mCounts.get(i);
+            total += counts[i];
+        }
+        if (total == 0)
+            return -1;
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return upperBound(i);
+        }
+        return MAX_MS;
+    }
+
+    public Percentiles getPercentiles() {
+        return new Percentiles(getCount(), getPercentile(0.5), getPercentile(0.9), getPercentile(0.99));
+    }
+
+    public void clear() {
+        for (int i = 0; i < BUCKETS; i++)
+            mCounts.set(i, 0);
+    }
+
+    private static int bucketOf(long ms) {
+        if (ms < SUB_BUCKETS)
+            return (int) ms;
+        int exponent = 63 - Long.numberOfLeadingZeros(ms);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int) ((ms >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    public static class Percentiles {
+        public final long count;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+
+        Percentiles(long count, long p50, long p90, long p99) {
+            this.count = count;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + count + " p50=" + p50 + "ms p90=" + p90 + "ms p99=" + p99 + "ms";
+        }
+    }
+}
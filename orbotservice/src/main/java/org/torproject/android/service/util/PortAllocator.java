@@ -0,0 +1,118 @@
+package org.torproject.android.service.util;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+
+/**
+ * Picks free local ports for tor's listeners by binding to them instead of trying to connect,
+ * and keeps each chosen port bound until tor has opened its listener there.
+ *
+ * A reservation is a non-listening socket bound with SO_REUSEADDR. On Linux another socket
+ * can not start listening on that port unless it also sets SO_REUSEADDR, which tor does for
+ * all of its listeners, so tor can take the port over while other apps can not grab it in
+ * between the check and tor starting up.
+ */
+public class PortAllocator {
+
+    private static final String LOCALHOST = "127.0.0.1";
+    private static final int MAX_CANDIDATES = 100;
+
+    private final HashMap<Integer, SocketChannel> mReservations = new HashMap<>();
+
+    /**
+     * @param preferredPort the first candidate, the following ports are tried in order
+     * @return the reserved port, or {@code -1} if none of the candidates could be bound
+     */
+    public synchronized int reserve(int preferredPort) {
+        InetAddress localhost;
+        try {
+            localhost = InetAddress.getByName(LOCALHOST);
+        } catch (IOException e) {
+            return -1;
+        }
+
+        int lastPort = Math.min(preferredPort + MAX_CANDIDATES, 65535);
+        for (int port = preferredPort; port <= lastPort; port++) {
+            if (mReservations.containsKey(port))
+                continue;
+
+            SocketChannel channel = tryBind(localhost, port);
+            if (channel != null) {
+                mReservations.put(port, channel);
+                return port;
+            }
+        }
+        return -1;
+    }
+
+    public synchronized void release(int port) {
+        close(mReservations.remove(port));
+    }
+
+    public synchronized void releaseAll() {
+        for (SocketChannel channel : mReservations.values())
+            close(channel);
+        mReservations.clear();
+    }
+
+    public synchronized boolean isReserved(int port) {
+        return mReservations.containsKey(port);
+    }
+
+    /**
+     * @return true if {@link #reserve(int)} could have picked {@code port} when asked for
+     * {@code preferredPort}
+     */
+    public static boolean isCandidate(int preferredPort, int port) {
+        return port >= preferredPort && port <= preferredPort + MAX_CANDIDATES;
+    }
+
+    private static SocketChannel tryBind(InetAddress address, int port) {
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(new InetSocketAddress(address, port));
+            return channel;
+        } catch (IOException e) {
+            close(channel);
+            return null;
+        }
+    }
+
+    private static void close(SocketChannel channel) {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+
+    /**
+     * The local ports tor is listening on. Instances are immutable so the four values are
+     * always read together.
+     */
+    public static class Ports {
+        public final int socks;
+        public final int http;
+        public final int dns;
+        public final int trans;
+
+        public Ports(int socks, int http, int dns, int trans) {
+            this.socks = socks;
+            this.http = http;
+            this.dns = dns;
+            this.trans = trans;
+        }
+
+        public boolean hasProxyPorts() {
+            return socks != -1 && http != -1;
+        }
+    }
+}
@@ -15,6 +15,7 @@ public class Prefs {
     private final static String PREF_ENABLE_LOGGING = "pref_enable_logging";
     private final static String PREF_EXPANDED_NOTIFICATIONS = "pref_expanded_notifications";
     private final static String PREF_PERSIST_NOTIFICATIONS = "pref_persistent_notifications";
+    private final static String PREF_NOTIFICATION_INTERVAL = "pref_notification_interval";
     private final static String PREF_START_ON_BOOT = "pref_start_boot";
     private final static String PREF_ALLOW_BACKGROUND_STARTS = "pref_allow_background_starts";
     private final static String PREF_OPEN_PROXY_ON_ALL_INTERFACES = "pref_open_proxy_on_all_interfaces";
@@ -22,6 +23,7 @@ public class Prefs {
     private final static String PREF_EXIT_NODES = "pref_exit_nodes";
     private final static String PREF_BE_A_SNOWFLAKE = "pref_be_a_snowflake";
     private final static String PREF_HOST_ONION_SERVICES = "pref_host_onionservices";
+    private final static String PREF_VPN_MTU_PREFIX = "pref_vpn_mtu_";
 
 
     private static SharedPreferences prefs;
@@ -96,6 +98,17 @@ public class Prefs {
         return prefs.getBoolean(PREF_PERSIST_NOTIFICATIONS, true);
     }
 
+    /**
+     * @return the minimum time in milliseconds between two updates of the notification
+     */
+    public static long getNotificationUpdateInterval() {
+        try {
+            return Math.max(0, Long.parseLong(prefs.getString(PREF_NOTIFICATION_INTERVAL, "2000")));
+        } catch (NumberFormatException e) {
+            return 2000;
+        }
+    }
+
     public static boolean allowBackgroundStarts() {
         return prefs.getBoolean(PREF_ALLOW_BACKGROUND_STARTS, true);
     }
@@ -112,6 +125,28 @@ public class Prefs {
         putBoolean(PREF_USE_VPN, value);
     }
 
+    /**
+     * @param networkKey the network as MtuManager names it, e.g. "cellular:rmnet_data0"
+     * @return the VPN MTU to use on that network, or 0 to pick it from the network
+     */
+    public static int getVpnMtuOverride(String networkKey) {
+        try {
+            return Math.max(0, Integer.parseInt(prefs.getString(PREF_VPN_MTU_PREFIX + networkKey, "0")));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param mtu 0 to remove the override
+     */
+    public static void setVpnMtuOverride(String networkKey, int mtu) {
+        if (mtu > 0)
+            putString(PREF_VPN_MTU_PREFIX + networkKey, Integer.toString(mtu));
+        else
+            prefs.edit().remove(PREF_VPN_MTU_PREFIX + networkKey).apply();
+    }
+
     public static boolean startOnBoot() {
         return prefs.getBoolean(PREF_START_ON_BOOT, true);
     }
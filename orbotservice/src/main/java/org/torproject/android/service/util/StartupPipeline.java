@@ -0,0 +1,137 @@
+package org.torproject.android.service.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a set of named startup stages as a dependency graph. A stage is handed to the
+ * executor as soon as every stage it depends on has finished, so independent work
+ * (pluggable transports, torrc fragments, content provider reads...) runs concurrently.
+ * If any stage fails, the stages that depend on it are skipped and {@link #run} rethrows
+ * the first failure.
+ */
+public class StartupPipeline {
+
+    public interface Stage {
+        void run() throws Exception;
+    }
+
+    private final ExecutorService mExecutor;
+    private final LinkedHashMap<String, Node> mNodes = new LinkedHashMap<>();
+    private CountDownLatch mRemaining;
+    private volatile Exception mFailure;
+
+    public StartupPipeline(ExecutorService executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * @param name      unique name of the stage, also used as the key for its timing
+     * @param stage     the work to run
+     * @param dependsOn names of stages that must complete before this one starts, these
+     *                  must already have been added
+     */
+    public StartupPipeline addStage(String name, Stage stage, String... dependsOn) {
+        if (mNodes.containsKey(name))
+            throw new IllegalArgumentException("duplicate stage: " + name);
+
+        Node node = new Node(name, stage);
+        for (String dependency : dependsOn) {
+            Node parent = mNodes.get(dependency);
+            if (parent == null)
+                throw new IllegalArgumentException("stage " + name + " depends on unknown stage " + dependency);
+            parent.dependents.add(node);
+            node.pendingDependencies.incrementAndGet();
+        }
+        mNodes.put(name, node);
+        return this;
+    }
+
+    /**
+     * Starts every stage without dependencies and blocks until the whole graph has
+     * finished, failed or the timeout has expired.
+     */
+    public void run(long timeout, TimeUnit unit) throws Exception {
+        mRemaining = new CountDownLatch(mNodes.size());
+        for (Node node : mNodes.values()) {
+            if (node.pendingDependencies.get() == 0)
+                submit(node);
+        }
+
+        if (!mRemaining.await(timeout, unit))
+            throw new TimeoutException("startup stages did not finish within " + unit.toMillis(timeout) + "ms");
+
+        if (mFailure != null)
+            throw mFailure;
+    }
+
+    /**
+     * @return the wall clock duration of each stage that ran, in milliseconds, in the order
+     * the stages were added. Stages that were skipped report -1.
+     */
+    public Map<String, Long> getStageTimings() {
+        LinkedHashMap<String, Long> timings = new LinkedHashMap<>();
+        for (Node node : mNodes.values())
+            timings.put(node.name, node.durationMs);
+        return timings;
+    }
+
+    public String formatStageTimings() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> timing : getStageTimings().entrySet()) {
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(timing.getKey()).append('=').append(timing.getValue()).append("ms");
+        }
+        return sb.toString();
+    }
+
+    private void submit(final Node node) {
+        mExecutor.execute(() -> {
+            if (mFailure == null) {
+                long start = System.nanoTime();
+                Tracer.Span span = Tracer.begin(node.name);
+                try {
+                    node.stage.run();
+                } catch (Exception e) {
+                    synchronized (StartupPipeline.this) {
+                        if (mFailure == null)
+                            mFailure = e;
+                    }
+                } finally {
+                    span.end();
+                }
+                node.durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }
+            finish(node);
+        });
+    }
+
+    private void finish(Node node) {
+        for (Node dependent : node.dependents) {
+            if (dependent.pendingDependencies.decrementAndGet() == 0)
+                submit(dependent);
+        }
+        mRemaining.countDown();
+    }
+
+    private static class Node {
+        final String name;
+        final Stage stage;
+        final List<Node> dependents = new ArrayList<>();
+        final AtomicInteger pendingDependencies = new AtomicInteger();
+        volatile long durationMs = -1;
+
+        Node(String name, Stage stage) {
+            this.name = name;
+            this.stage = stage;
+        }
+    }
+}
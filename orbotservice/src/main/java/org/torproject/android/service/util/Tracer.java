@@ -0,0 +1,162 @@
+package org.torproject.android.service.util;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A small in-memory trace recorder for the service lifecycle. Spans, instant events and
+ * counters are kept in a bounded buffer and can be exported in the Chrome trace event format,
+ * which chrome://tracing and https://ui.perfetto.dev can open.
+ */
+public class Tracer {
+
+    private static final int MAX_EVENTS = 10000;
+
+    private static final ArrayList<Event> sEvents = new ArrayList<>();
+    private static final HashMap<Long, String> sThreadNames = new HashMap<>();
+    private static long sEpochNanos = System.nanoTime();
+    private static int sDropped = 0;
+
+    public static Span begin(String name) {
+        return new Span(name);
+    }
+
+    public static void instant(String name) {
+        record(new Event('i', name, now(), 0, 0));
+    }
+
+    public static void counter(String name, long value) {
+        record(new Event('C', name, now(), 0, value));
+    }
+
+    /**
+     * Drops everything recorded so far and starts a new timeline.
+     */
+    public static synchronized void reset() {
+        sEvents.clear();
+        sThreadNames.clear();
+        sDropped = 0;
+        sEpochNanos = System.nanoTime();
+    }
+
+    /**
+     * Writes the timeline as Chrome trace event JSON.
+     *
+     * @return true if the file was written
+     */
+    public static boolean export(File file) {
+        String json;
+        synchronized (Tracer.class) {
+            json = toJson();
+        }
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists())
+            dir.mkdirs();
+        return Utils.writeFileAtomically(file, json);
+    }
+
+    private static String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"traceEvents\":[");
+
+        boolean first = true;
+        for (Map.Entry<Long, String> thread : sThreadNames.entrySet()) {
+            if (!first)
+                sb.append(',');
+            first = false;
+            sb.append("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":1,\"tid\":").append(thread.getKey())
+                    .append(",\"args\":{\"name\":").append(JSONObject.quote(thread.getValue())).append("}}");
+        }
+
+        for (Event event : sEvents) {
+            if (!first)
+                sb.append(',');
+            first = false;
+            sb.append("{\"ph\":\"").append(event.phase).append("\",\"name\":").append(JSONObject.quote(event.name))
+                    .append(",\"pid\":1,\"tid\":").append(event.tid)
+                    .append(",\"ts\":").append(event.timestampMicros);
+            if (event.phase == 'X')
+                sb.append(",\"dur\":").append(event.durationMicros);
+            else if (event.phase == 'i')
+                sb.append(",\"s\":\"t\"");
+            else if (event.phase == 'C')
+                sb.append(",\"args\":{\"value\":").append(event.value).append('}');
+            sb.append('}');
+        }
+
+        sb.append("],\"otherData\":{\"droppedEvents\":").append(sDropped).append("}}");
+        return sb.toString();
+    }
+
+    private static long now() {
+        return System.nanoTime();
+    }
+
+    private static synchronized void record(Event event) {
+        event.timestampMicros = (event.timestampMicros - sEpochNanos) / 1000;
+        if (event.timestampMicros < 0) // began before the last reset
+            return;
+
+        if (sEvents.size() >= MAX_EVENTS) {
+            sDropped++;
+            return;
+        }
+
+        if (!sThreadNames.containsKey(event.tid))
+            sThreadNames.put(event.tid, Thread.currentThread().getName());
+
+        sEvents.add(event);
+    }
+
+    /**
+     * A span that is recorded as a single complete event when it ends. It may be ended on a
+     * different thread than the one that began it, it is attributed to the beginning thread.
+     */
+    public static class Span {
+        private final String mName;
+        private final long mStartNanos = now();
+        private final long mTid = Thread.currentThread().getId();
+        private final String mThreadName = Thread.currentThread().getName();
+        private boolean mEnded = false;
+
+        private Span(String name) {
+            mName = name;
+        }
+
+        public void end() {
+            synchronized (this) {
+                if (mEnded)
+                    return;
+                mEnded = true;
+            }
+            Event event = new Event('X', mName, mStartNanos, (now() - mStartNanos) / 1000, 0);
+            event.tid = mTid;
+            synchronized (Tracer.class) {
+                if (!sThreadNames.containsKey(mTid))
+                    sThreadNames.put(mTid, mThreadName);
+                record(event);
+            }
+        }
+    }
+
+    private static class Event {
+        final char phase;
+        final String name;
+        final long durationMicros;
+        final long value;
+        long timestampMicros;
+        long tid = Thread.currentThread().getId();
+
+        Event(char phase, String name, long timestampNanos, long durationMicros, long value) {
+            this.phase = phase;
+            this.name = name;
+            this.timestampMicros = timestampNanos;
+            this.durationMicros = durationMicros;
+            this.value = value;
+        }
+    }
+}
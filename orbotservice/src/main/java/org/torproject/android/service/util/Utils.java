@@ -15,6 +15,8 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -96,6 +98,74 @@ public class Utils {
     }
 
 
+    /*
+     * Write the file through a temporary file in the same directory and a rename, so readers
+     * either see the old or the new contents, never a partly written file
+     */
+    public static boolean writeFileAtomically(File file, String contents) {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        try {
+            FileOutputStream fos = new FileOutputStream(tmp, false);
+            try {
+                fos.write(contents.getBytes("UTF-8"));
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+            return false;
+        }
+
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return false;
+        }
+        return true;
+    }
+
+    public static String sha256Hex(byte[] data) {
+        return toHex(newSha256().digest(data));
+    }
+
+    public static String sha256Hex(File file) throws IOException {
+        return sha256Hex(new FileInputStream(file));
+    }
+
+    /**
+     * Hashes everything left in the stream and closes it.
+     */
+    public static String sha256Hex(InputStream is) throws IOException {
+        MessageDigest digest = newSha256();
+        byte[] buffer = new byte[64 * 1024];
+        try {
+            int read;
+            while ((read = is.read(buffer)) != -1)
+                digest.update(buffer, 0, read);
+        } finally {
+            is.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Android release ships SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(String.format("%02x", b & 0xff));
+        return sb.toString();
+    }
+
     /*
      *
      * Zips a file at a location and places the resulting zip file at the toLocation
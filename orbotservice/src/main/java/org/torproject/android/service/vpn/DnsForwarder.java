@@ -0,0 +1,577 @@
+package org.torproject.android.service.vpn;
+
+import android.util.Log;
+
+import org.torproject.android.service.util.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers the DNS queries tun2socks intercepts by relaying them to tor's DNSPort, in place of
+ * the pdnsd daemon. Answers are cached until their TTL runs out, with least recently used
+ * eviction, names that do not exist are cached for a short while, and a query for a name that
+ * is already being asked upstream waits for that answer instead of being sent again.
+ *
+ * Everything but the counters is only touched by the forwarder's own thread. The upstream is
+ * passed to {@link #start}, so the forwarder can be pointed at any DNS server.
+ */
+public class DnsForwarder {
+
+    private static final String TAG = DnsForwarder.class.getSimpleName();
+
+    private static final int MAX_PACKET = 65535;
+    private static final int HEADER_LENGTH = 12;
+    private static final int MAX_ENTRIES = 1024;
+    // the same bounds pdnsd was configured with
+    private static final long MIN_TTL_S = 60;
+    private static final long MAX_TTL_S = 7 * 24 * 60 * 60;
+    private static final long NEGATIVE_TTL_S = 60;
+    private static final long TIMEOUT_MS = 10_000;
+    private static final long SELECT_TIMEOUT_MS = 1000;
+
+    private static final int FLAG_QR = 0x8000;
+    private static final int FLAG_TC = 0x0200;
+    private static final int RCODE_MASK = 0x000f;
+    private static final int RCODE_NOERROR = 0;
+    private static final int RCODE_SERVFAIL = 2;
+    private static final int RCODE_NXDOMAIN = 3;
+    private static final int TYPE_SOA = 6;
+    private static final int TYPE_OPT = 41;
+
+    private final LinkedHashMap<String, Answer> mCache = new LinkedHashMap<String, Answer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Answer> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final HashMap<String, Query> mInFlightByName = new HashMap<>();
+    private final HashMap<Integer, Query> mInFlightById = new HashMap<>();
+    private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(MAX_PACKET);
+    private int mNextId = (int) (Math.random() * 0x10000);
+    private final long mTimeoutNs;
+    private final long mSelectTimeoutMs;
+    private volatile boolean mClearCache = false;
+
+    private Selector mSelector;
+    private DatagramChannel mLocal;
+    private DatagramChannel mUpstream;
+    private Thread mThread;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mNegativeHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mCoalesced = new AtomicLong();
+    private final AtomicLong mTimeouts = new AtomicLong();
+    private final LatencyHistogram mUpstreamLatency = new LatencyHistogram();
+
+    public DnsForwarder() {
+        this(TIMEOUT_MS);
+    }
+
+    /**
+     * @param timeoutMs how long to wait for upstream before answering SERVFAIL
+     */
+    DnsForwarder(long timeoutMs) {
+        mTimeoutNs = timeoutMs * 1_000_000L;
+        mSelectTimeoutMs = Math.min(SELECT_TIMEOUT_MS, timeoutMs);
+    }
+
+    /**
+     * Binds the listening socket and starts answering. The cache is kept from earlier runs.
+     *
+     * @param listen   where tun2socks sends its DNS queries
+     * @param upstream tor's DNSPort
+     */
+    public synchronized void start(InetSocketAddress listen, InetSocketAddress upstream) throws IOException {
+        stop();
+
+        Selector selector = Selector.open();
+        DatagramChannel local = DatagramChannel.open();
+        DatagramChannel remote = DatagramChannel.open();
+        try {
+            local.socket().setReuseAddress(true);
+            local.socket().bind(listen);
+            local.configureBlocking(false);
+            local.register(selector, SelectionKey.OP_READ);
+
+            remote.connect(upstream);
+            remote.configureBlocking(false);
+            remote.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            local.close();
+            remote.close();
+            selector.close();
+            throw e;
+        }
+
+        mSelector = selector;
+        mLocal = local;
+        mUpstream = remote;
+        mThread = new Thread(() -> run(selector, local, remote), "DnsForwarder");
+        mThread.start();
+        Log.d(TAG, "forwarding DNS from " + listen + " to " + upstream);
+    }
+
+    /**
+     * Closes the sockets, queries still waiting for an answer are dropped.
+     */
+    public synchronized void stop() {
+        if (mSelector == null)
+            return;
+
+        try {
+            mSelector.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+        closeQuietly(mLocal);
+        closeQuietly(mUpstream);
+        try {
+            mThread.join(SELECT_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mSelector = null;
+        mLocal = null;
+        mUpstream = null;
+        mThread = null;
+    }
+
+    /**
+     * Forgets every cached answer, e.g. when the VPN is turned off.
+     */
+    public void clearCache() {
+        mClearCache = true;
+        synchronized (this) {
+            if (mSelector == null) {
+                mCache.clear();
+                mClearCache = false;
+            } else {
+                mSelector.wakeup();
+            }
+        }
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * @return the hits that were cached NXDOMAIN or empty answers, also counted in {@link #getHits}
+     */
+    public long getNegativeHits() {
+        return mNegativeHits.get();
+    }
+
+    /**
+     * @return the queries that were sent upstream
+     */
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * @return the queries that waited for the same query already sent upstream
+     */
+    public long getCoalesced() {
+        return mCoalesced.get();
+    }
+
+    public long getTimeouts() {
+        return mTimeouts.get();
+    }
+
+    public LatencyHistogram.Percentiles getUpstreamLatency() {
+        return mUpstreamLatency.getPercentiles();
+    }
+
+    private void run(Selector selector, DatagramChannel local, DatagramChannel upstream) {
+        try {
+            while (selector.isOpen()) {
+                selector.select(mSelectTimeoutMs);
+                if (mClearCache) {
+                    mClearCache = false;
+                    mCache.clear();
+                }
+
+                try {
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid() || !key.isReadable())
+                            continue;
+                        if (key.channel() == local)
+                            readQueries(local, upstream);
+                        else
+                            readAnswers(local, upstream);
+                    }
+                    expireQueries(local, System.nanoTime());
+                } catch (IOException e) {
+                    if (!local.isOpen() || !upstream.isOpen())
+                        break;
+                    Log.d(TAG, "error relaying DNS", e);
+                }
+            }
+        } catch (ClosedSelectorException | IOException e) {
+            // stopped
+        } finally {
+            mInFlightByName.clear();
+            mInFlightById.clear();
+        }
+    }
+
+    private void readQueries(DatagramChannel local, DatagramChannel upstream) throws IOException {
+        while (true) {
+            mBuffer.clear();
+            SocketAddress client = local.receive(mBuffer);
+            if (client == null)
+                return;
+            mBuffer.flip();
+            byte[] packet = new byte[mBuffer.remaining()];
+            mBuffer.get(packet);
+            onQuery(local, upstream, client, packet, System.nanoTime());
+        }
+    }
+
+    private void readAnswers(DatagramChannel local, DatagramChannel upstream) throws IOException {
+        while (true) {
+            mBuffer.clear();
+            try {
+                if (upstream.receive(mBuffer) == null)
+                    return;
+            } catch (PortUnreachableException e) {
+                // tor's DNSPort is not there (yet), the queries time out
+                continue;
+            }
+            mBuffer.flip();
+            byte[] packet = new byte[mBuffer.remaining()];
+            mBuffer.get(packet);
+            onAnswer(local, packet, System.nanoTime());
+        }
+    }
+
+    private void onQuery(DatagramChannel local, DatagramChannel upstream, SocketAddress client, byte[] packet, long now) throws IOException {
+        if (packet.length < HEADER_LENGTH || (getShort(packet, 2) & FLAG_QR) != 0 || getShort(packet, 4) != 1)
+            return; // only plain queries with a single question are relayed
+
+        int questionEnd = skipQuestion(packet, HEADER_LENGTH);
+        if (questionEnd == -1)
+            return;
+        String name = questionKey(packet, questionEnd);
+        int clientId = getShort(packet, 0);
+
+        Answer answer = mCache.get(name);
+        if (answer != null) {
+            if (answer.expiresAt - now > 0) {
+                mHits.incrementAndGet();
+                if (answer.negative)
+                    mNegativeHits.incrementAndGet();
+                send(local, client, answer.toResponse(clientId, packet, questionEnd, now));
+                return;
+            }
+            mCache.remove(name);
+        }
+
+        Query query = mInFlightByName.get(name);
+        if (query != null) {
+            mCoalesced.incrementAndGet();
+            query.addWaiter(client, clientId, packet, questionEnd);
+            return;
+        }
+
+        int id = nextId();
+        if (id == -1)
+            return; // every id is in flight, the client will ask again
+        query = new Query(name, id, now);
+        query.addWaiter(client, clientId, packet, questionEnd);
+        mInFlightByName.put(name, query);
+        mInFlightById.put(id, query);
+        mMisses.incrementAndGet();
+
+        byte[] forward = packet.clone();
+        putShort(forward, 0, id);
+        try {
+            upstream.write(ByteBuffer.wrap(forward));
+        } catch (PortUnreachableException e) {
+            // reported for an earlier datagram, this query times out if tor is really not there
+        }
+    }
+
+    private void onAnswer(DatagramChannel local, byte[] packet, long now) throws IOException {
+        if (packet.length < HEADER_LENGTH || (getShort(packet, 2) & FLAG_QR) == 0)
+            return;
+
+        Query query = mInFlightById.get(getShort(packet, 0));
+        if (query == null)
+            return; // timed out already
+        int questionEnd = getShort(packet, 4) == 1 ? skipQuestion(packet, HEADER_LENGTH) : -1;
+        if (questionEnd == -1 || !query.name.equals(questionKey(packet, questionEnd)))
+            return; // not the answer to our question
+
+        mInFlightById.remove(query.id);
+        mInFlightByName.remove(query.name);
+        mUpstreamLatency.record((now - query.sentAt) / 1_000_000);
+
+        Answer answer = new Answer(packet, questionEnd, now);
+        if (answer.isCacheable())
+            mCache.put(query.name, answer);
+
+        for (Waiter waiter : query.waiters)
+            send(local, waiter.client, answer.toResponse(waiter.id, waiter.question, waiter.questionEnd, now));
+    }
+
+    private void expireQueries(DatagramChannel local, long now) throws IOException {
+        if (mInFlightById.isEmpty())
+            return;
+
+        Iterator<Query> queries = mInFlightById.values().iterator();
+        while (queries.hasNext()) {
+            Query query = queries.next();
+            if (now - query.sentAt < mTimeoutNs)
+                continue;
+            queries.remove();
+            mInFlightByName.remove(query.name);
+            mTimeouts.incrementAndGet();
+            for (Waiter waiter : query.waiters)
+                send(local, waiter.client, serverFailure(waiter));
+        }
+    }
+
+    private static void send(DatagramChannel local, SocketAddress client, byte[] response) throws IOException {
+        // a full send buffer drops the answer, like any lost datagram
+        local.send(ByteBuffer.wrap(response), client);
+    }
+
+    /**
+     * @return an id not in flight upstream, -1 if there is none
+     */
+    private int nextId() {
+        for (int i = 0; i < 0x10000; i++) {
+            int id = mNextId;
+            mNextId = (mNextId + 1) & 0xffff;
+            if (!mInFlightById.containsKey(id))
+                return id;
+        }
+        return -1;
+    }
+
+    private static byte[] serverFailure(Waiter waiter) {
+        byte[] response = new byte[waiter.questionEnd];
+        System.arraycopy(waiter.question, 0, response, 0, waiter.questionEnd);
+        putShort(response, 0, waiter.id);
+        putShort(response, 2, (getShort(response, 2) & ~RCODE_MASK) | FLAG_QR | RCODE_SERVFAIL);
+        putShort(response, 6, 0);
+        putShort(response, 8, 0);
+        putShort(response, 10, 0);
+        return response;
+    }
+
+    /**
+     * @return the lower cased name, type and class of the question ending at questionEnd
+     */
+    private static String questionKey(byte[] packet, int questionEnd) {
+        StringBuilder key = new StringBuilder(questionEnd);
+        for (int offset = HEADER_LENGTH; offset < questionEnd - 5; offset++) {
+            char c = (char) (packet[offset] & 0xff);
+            key.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+        return key.append(' ').append(getShort(packet, questionEnd - 4)).append(' ')
+                .append(getShort(packet, questionEnd - 2)).toString();
+    }
+
+    /**
+     * @return the end of the question, -1 if it is malformed or compressed
+     */
+    private static int skipQuestion(byte[] packet, int offset) {
+        while (offset < packet.length) {
+            int length = packet[offset] & 0xff;
+            if (length == 0)
+                return offset + 5 <= packet.length ? offset + 5 : -1;
+            if ((length & 0xc0) != 0)
+                return -1;
+            offset += length + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the end of the name at offset, -1 if it runs past the packet
+     */
+    private static int skipName(byte[] packet, int offset) {
+        while (offset < packet.length) {
+            int length = packet[offset] & 0xff;
+            if (length == 0)
+                return offset + 1;
+            if ((length & 0xc0) == 0xc0)
+                return offset + 2 <= packet.length ? offset + 2 : -1;
+            offset += length + 1;
+        }
+        return -1;
+    }
+
+    private static int getShort(byte[] packet, int offset) {
+        return ((packet[offset] & 0xff) << 8) | (packet[offset + 1] & 0xff);
+    }
+
+    private static void putShort(byte[] packet, int offset, int value) {
+        packet[offset] = (byte) (value >> 8);
+        packet[offset + 1] = (byte) value;
+    }
+
+    private static long getInt(byte[] packet, int offset) {
+        return ((long) getShort(packet, offset) << 16) | getShort(packet, offset + 2);
+    }
+
+    private static void putInt(byte[] packet, int offset, long value) {
+        putShort(packet, offset, (int) (value >> 16));
+        putShort(packet, offset + 2, (int) value);
+    }
+
+    private static void closeQuietly(DatagramChannel channel) {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+    }
+
+    private static class Query {
+        final String name;
+        final int id;
+        final long sentAt;
+        final ArrayList<Waiter> waiters = new ArrayList<>(1);
+
+        Query(String name, int id, long sentAt) {
+            this.name = name;
+            this.id = id;
+            this.sentAt = sentAt;
+        }
+
+        void addWaiter(SocketAddress client, int clientId, byte[] question, int questionEnd) {
+            waiters.add(new Waiter(client, clientId, question, questionEnd));
+        }
+    }
+
+    private static class Waiter {
+        final SocketAddress client;
+        final int id;
+        // the client's query, the answer repeats its question as it was asked
+        final byte[] question;
+        final int questionEnd;
+
+        Waiter(SocketAddress client, int id, byte[] question, int questionEnd) {
+            this.client = client;
+            this.id = id;
+            this.question = question;
+            this.questionEnd = questionEnd;
+        }
+    }
+
+    /**
+     * An answer from upstream, with the offsets of its TTLs so they can be counted down when it
+     * is served from the cache.
+     */
+    private static class Answer {
+        final byte[] packet;
+        final int questionEnd;
+        final long receivedAt;
+        final boolean negative;
+        final long expiresAt;
+        private final int[] mTtlOffsets;
+        private final boolean mCacheable;
+
+        Answer(byte[] packet, int questionEnd, long receivedAt) {
+            this.packet = packet;
+            this.questionEnd = questionEnd;
+            this.receivedAt = receivedAt;
+
+            int flags = getShort(packet, 2);
+            int rcode = flags & RCODE_MASK;
+            int answers = getShort(packet, 6);
+            int records = answers + getShort(packet, 8) + getShort(packet, 10);
+
+            int[] ttlOffsets = new int[records];
+            int ttlCount = 0;
+            long minTtl = Long.MAX_VALUE;
+            long soaMinimum = -1;
+            boolean parsed = true;
+            int offset = questionEnd;
+            for (int i = 0; i < records; i++) {
+                offset = skipName(packet, offset);
+                if (offset == -1 || offset + 10 > packet.length) {
+                    parsed = false;
+                    break;
+                }
+                int type = getShort(packet, offset);
+                int dataLength = getShort(packet, offset + 8);
+                if (offset + 10 + dataLength > packet.length) {
+                    parsed = false;
+                    break;
+                }
+                if (type != TYPE_OPT) {
+                    long ttl = getInt(packet, offset + 4);
+                    ttlOffsets[ttlCount++] = offset + 4;
+                    if (i < answers)
+                        minTtl = Math.min(minTtl, ttl);
+                    else if (type == TYPE_SOA && dataLength >= 4)
+                        soaMinimum = Math.min(ttl, getInt(packet, offset + 10 + dataLength - 4));
+                }
+                offset += 10 + dataLength;
+            }
+            mTtlOffsets = Arrays.copyOf(ttlOffsets, ttlCount);
+
+            negative = rcode == RCODE_NXDOMAIN || (rcode == RCODE_NOERROR && answers == 0);
+            long ttl;
+            if (negative)
+                ttl = soaMinimum == -1 ? NEGATIVE_TTL_S : Math.min(soaMinimum, NEGATIVE_TTL_S);
+            else
+                ttl = Math.max(MIN_TTL_S, Math.min(minTtl, MAX_TTL_S));
+            expiresAt = receivedAt + ttl * 1_000_000_000L;
+
+            // SERVFAIL and friends are tor failing to resolve for now, not an answer
+            mCacheable = parsed && (flags & FLAG_TC) == 0 && (rcode == RCODE_NOERROR || rcode == RCODE_NXDOMAIN);
+            if (!parsed)
+                Log.d(TAG, "unable to parse DNS answer, relaying it uncached");
+        }
+
+        boolean isCacheable() {
+            return mCacheable;
+        }
+
+        /**
+         * @return the answer for the given query, with the TTLs reduced by the time it was cached
+         */
+        byte[] toResponse(int id, byte[] query, int queryQuestionEnd, long now) {
+            byte[] response = packet.clone();
+            putShort(response, 0, id);
+            // clients that randomise the case of names check it is repeated as they asked
+            if (queryQuestionEnd == questionEnd)
+                System.arraycopy(query, HEADER_LENGTH, response, HEADER_LENGTH, questionEnd - HEADER_LENGTH);
+
+            long elapsed = (now - receivedAt) / 1_000_000_000L;
+            if (elapsed > 0) {
+                for (int ttlOffset : mTtlOffsets)
+                    putInt(response, ttlOffset, Math.max(0, getInt(response, ttlOffset) - elapsed));
+            }
+            return response;
+        }
+    }
+}
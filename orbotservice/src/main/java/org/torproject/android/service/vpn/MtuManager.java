@@ -0,0 +1,212 @@
+package org.torproject.android.service.vpn;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Build;
+import android.util.Log;
+
+import org.torproject.android.service.util.Prefs;
+import org.torproject.android.service.util.Tracer;
+
+import java.net.NetworkInterface;
+import java.net.SocketException;
+
+/**
+ * Picks the MTU of the VPN interface, and of tun2socks, for the network underneath it. The MTU
+ * of that network is the smaller of its interface's MTU and the one the network advertises
+ * (Android 10 and later, e.g. carrier settings for cellular and PPPoE links). A per-network
+ * override from {@link Prefs#getVpnMtuOverride}, set in the settings while on that network, wins
+ * over both. The listener is told when a change of network changes the MTU.
+ *
+ * Networks are told apart by transport and interface name, e.g. "wifi:wlan0". Before Android 6
+ * there is no active Network to look at, the default MTU is used unless overridden for "other".
+ */
+public class MtuManager {
+
+    public interface Listener {
+        void onMtuChanged(int mtu);
+    }
+
+    public static final int DEFAULT_MTU = 1500;
+    // the least IPv6 allows, smaller links fragment below us anyway
+    private static final int MIN_MTU = 1280;
+    private static final int MAX_MTU = 1500;
+    private static final String TAG = MtuManager.class.getSimpleName();
+
+    private final Context mContext;
+    private final Listener mListener;
+    private ConnectivityManager.NetworkCallback mCallback;
+
+    private String mNetworkKey = "other";
+    private int mLinkMtu = 0;
+    private int mAdvertisedMtu = 0;
+    private int mOverrideMtu = 0;
+    private int mMtu = DEFAULT_MTU;
+
+    public MtuManager(Context context, Listener listener) {
+        mContext = context.getApplicationContext();
+        mListener = listener;
+    }
+
+    // for tests, which only choose()
+    MtuManager(Listener listener) {
+        mContext = null;
+        mListener = listener;
+    }
+
+    /**
+     * @return the name of the network the device is on now, as {@link Prefs#getVpnMtuOverride}
+     * knows it
+     */
+    public static String getNetworkKey(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M || cm == null)
+            return "other";
+        Network network = cm.getActiveNetwork();
+        if (network == null)
+            return "other";
+        LinkProperties linkProperties = cm.getLinkProperties(network);
+        return getNetworkKey(cm.getNetworkCapabilities(network), linkProperties == null ? null : linkProperties.getInterfaceName());
+    }
+
+    /**
+     * Looks at the current network, and from Android 7 on follows the changes of the default
+     * network. Orbot's own default network is never the VPN, which excludes Orbot.
+     */
+    public synchronized void start() {
+        if (mCallback != null)
+            return;
+
+        ConnectivityManager cm = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && cm != null) {
+            Network network = cm.getActiveNetwork();
+            if (network != null)
+                update(network, cm.getLinkProperties(network), false);
+        } else {
+            choose("other", 0, 0, false);
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && cm != null)
+            registerCallback(cm);
+    }
+
+    public synchronized void stop() {
+        if (mCallback == null)
+            return;
+
+        ConnectivityManager cm = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        try {
+            if (cm != null)
+                cm.unregisterNetworkCallback(mCallback);
+        } catch (IllegalArgumentException e) {
+            // not registered any more
+        }
+        mCallback = null;
+    }
+
+    public synchronized int getMtu() {
+        return mMtu;
+    }
+
+    /**
+     * @return the network and how its MTU was chosen, for logs and bug reports
+     */
+    public synchronized String getDiagnostics() {
+        return mNetworkKey + " link=" + mLinkMtu + " advertised=" + mAdvertisedMtu + " override=" + mOverrideMtu
+                + " mtu=" + mMtu;
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private void registerCallback(final ConnectivityManager cm) {
+        mCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onLinkPropertiesChanged(Network network, LinkProperties linkProperties) {
+                update(network, linkProperties, true);
+            }
+        };
+        cm.registerDefaultNetworkCallback(mCallback);
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private void update(Network network, LinkProperties linkProperties, boolean notify) {
+        ConnectivityManager cm = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkCapabilities capabilities = cm == null ? null : cm.getNetworkCapabilities(network);
+        if (capabilities != null && capabilities.hasTransport(NetworkCapabilities.TRANSPORT_VPN))
+            return;
+
+        String interfaceName = linkProperties == null ? null : linkProperties.getInterfaceName();
+        int advertisedMtu = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && linkProperties != null)
+            advertisedMtu = linkProperties.getMtu();
+
+        choose(getNetworkKey(capabilities, interfaceName), getInterfaceMtu(interfaceName), advertisedMtu, notify);
+    }
+
+    private void choose(String networkKey, int linkMtu, int advertisedMtu, boolean notify) {
+        choose(networkKey, linkMtu, advertisedMtu, Prefs.getVpnMtuOverride(networkKey), notify);
+    }
+
+    void choose(String networkKey, int linkMtu, int advertisedMtu, int overrideMtu, boolean notify) {
+        int mtu;
+        synchronized (this) {
+            int previous = mMtu;
+            mNetworkKey = networkKey;
+            mLinkMtu = linkMtu;
+            mAdvertisedMtu = advertisedMtu;
+            mOverrideMtu = overrideMtu;
+
+            if (overrideMtu > 0) {
+                mtu = overrideMtu;
+            } else {
+                mtu = DEFAULT_MTU;
+                if (linkMtu > 0)
+                    mtu = Math.min(mtu, linkMtu);
+                if (advertisedMtu > 0)
+                    mtu = Math.min(mtu, advertisedMtu);
+            }
+            mMtu = mtu = Math.max(MIN_MTU, Math.min(mtu, MAX_MTU));
+
+            Log.d(TAG, "network " + getDiagnostics());
+            Tracer.counter("vpn_mtu", mtu);
+            if (mtu == previous)
+                return;
+        }
+
+        if (notify)
+            mListener.onMtuChanged(mtu);
+    }
+
+    private static String getNetworkKey(NetworkCapabilities capabilities, String interfaceName) {
+        return getTransport(capabilities) + ':' + interfaceName;
+    }
+
+    private static String getTransport(NetworkCapabilities capabilities) {
+        if (capabilities == null)
+            return "other";
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI))
+            return "wifi";
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR))
+            return "cellular";
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET))
+            return "ethernet";
+        return "other";
+    }
+
+    /**
+     * @return the MTU of the interface, 0 if it is not known
+     */
+    private static int getInterfaceMtu(String interfaceName) {
+        if (interfaceName == null)
+            return 0;
+        try {
+            NetworkInterface networkInterface = NetworkInterface.getByName(interfaceName);
+            return networkInterface == null ? 0 : Math.max(0, networkInterface.getMTU());
+        } catch (SocketException e) {
+            return 0;
+        }
+    }
+}
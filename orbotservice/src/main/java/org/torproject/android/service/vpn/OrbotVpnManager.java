@@ -18,7 +18,6 @@ package org.torproject.android.service.vpn;
 
 import android.annotation.TargetApi;
 import android.app.Service;
-import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager.NameNotFoundException;
@@ -36,79 +35,44 @@ import com.runjva.sourceforge.jsocks.server.ServerAuthenticatorNone;
 
 import org.torproject.android.service.OrbotConstants;
 import org.torproject.android.service.OrbotService;
-import org.torproject.android.service.R;
 import org.torproject.android.service.TorServiceConstants;
-import org.torproject.android.service.util.CustomNativeLoader;
 import org.torproject.android.service.util.Prefs;
+import org.torproject.android.service.util.Tracer;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.concurrent.TimeoutException;
 
 import static org.torproject.android.service.TorServiceConstants.ACTION_START;
 import static org.torproject.android.service.TorServiceConstants.ACTION_START_VPN;
 import static org.torproject.android.service.TorServiceConstants.ACTION_STOP_VPN;
 
-public class OrbotVpnManager implements Handler.Callback {
+public class OrbotVpnManager implements Handler.Callback, MtuManager.Listener {
     private static final String TAG = "OrbotVpnService";
-    private final static int VPN_MTU = 1500;
     private final static boolean mIsLollipop = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
-    private final static String PDNSD_BIN = "pdnsd";
+    private final static int DNS_PORT = 8091;
+    private final static String LOCALHOST = "127.0.0.1";
+    private final static String VIRTUAL_GATEWAY = "192.168.200.1";
     public static int sSocksProxyServerPort = -1;
     public static String sSocksProxyLocalhost = null;
     boolean isStarted = false;
-    File filePdnsPid;
     private Thread mThreadVPN;
     private final static String mSessionName = "OrbotVPN";
     private ParcelFileDescriptor mInterface;
     private int mTorSocks = -1;
     private int mTorDns = -1;
-    private int pdnsdPort = 8091;
     private ProxyServer mSocksProxyServer;
-    private final File filePdnsd;
-    private boolean isRestart = false;
+    private final DnsForwarder mDnsForwarder = new DnsForwarder();
+    private final MtuManager mMtuManager;
     private final VpnService mService;
 
     public OrbotVpnManager(VpnService service) {
         mService = service;
-        filePdnsd = CustomNativeLoader.loadNativeBinary(service.getApplicationContext(), PDNSD_BIN, new File(service.getFilesDir(), PDNSD_BIN));
+        mMtuManager = new MtuManager(service, this);
         Tun2Socks.init();
     }
 
-    public static File makePdnsdConf(Context context, File fileDir, String torDnsHost, int torDnsPort, String pdnsdHost, int pdnsdPort) throws IOException {
-        String conf = String.format(context.getString(R.string.pdnsd_conf), torDnsHost, torDnsPort, fileDir.getCanonicalPath(), pdnsdHost, pdnsdPort);
-
-        Log.d(TAG, "pdsnd conf:" + conf);
-
-        File fPid = new File(fileDir, pdnsdPort + "pdnsd.conf");
-
-        if (fPid.exists()) {
-            fPid.delete();
-        }
-
-        FileOutputStream fos = new FileOutputStream(fPid, false);
-        PrintStream ps = new PrintStream(fos);
-        ps.print(conf);
-        ps.close();
-
-        File cache = new File(fileDir, "pdnsd.cache");
-
-        if (!cache.exists()) {
-            try {
-                cache.createNewFile();
-            } catch (Exception e) {
-            }
-        }
-        return fPid;
-    }
-
     public int handleIntent(VpnService.Builder builder, Intent intent) {
         if (intent != null) {
             String action = intent.getAction();
@@ -137,6 +101,8 @@ public class OrbotVpnManager implements Handler.Callback {
                     Log.d(TAG, "stopping VPN");
 
                     stopVPN();
+                    mMtuManager.stop();
+                    mDnsForwarder.clearCache();
                 } else if (action.equals(TorServiceConstants.LOCAL_ACTION_PORTS)) {
                     Log.d(TAG, "setting VPN ports");
 
@@ -144,7 +110,7 @@ public class OrbotVpnManager implements Handler.Callback {
                     int torDns = intent.getIntExtra(OrbotService.EXTRA_DNS_PORT, -1);
 
                     //if running, we need to restart
-                    if ((torSocks != mTorSocks || torDns != mTorDns)) {
+                    if (torSocks != mTorSocks) {
 
                         mTorSocks = torSocks;
                         mTorDns = torDns;
@@ -155,6 +121,12 @@ public class OrbotVpnManager implements Handler.Callback {
                         }
 
                         setupTun2Socks(builder);
+                    } else if (torDns != mTorDns) {
+                        mTorDns = torDns;
+
+                        // tun2socks asks the forwarder, only the forwarder needs to know the new DNSPort
+                        if (mInterface != null)
+                            startDns();
                     }
                 }
             }
@@ -239,30 +211,35 @@ public class OrbotVpnManager implements Handler.Callback {
         return true;
     }
 
-    private synchronized void setupTun2Socks(final VpnService.Builder builder) {
-        if (mInterface != null) //stop tun2socks now to give it time to clean up
-        {
-            isRestart = true;
-            Tun2Socks.Stop();
+    /**
+     * The network under the VPN changed its MTU, swap to an interface that uses it.
+     */
+    @Override
+    public synchronized void onMtuChanged(int mtu) {
+        if (mInterface != null && mTorSocks != -1) {
+            Log.d(TAG, "restarting VPN for MTU " + mtu);
+            setupTun2Socks(mService.new Builder());
+        }
+    }
 
-            stopDns();
+    private synchronized void setupTun2Socks(final VpnService.Builder builder) {
+        mMtuManager.start();
+        final int mtu = mMtuManager.getMtu();
 
-        }
+        // the running tun2socks keeps serving until the new interface is up, Start() then swaps them
+        final int session = Tun2Socks.newSession();
 
-        mThreadVPN = new Thread() {
+        mThreadVPN = new Thread("tun2socks") {
 
             public void run() {
+                // runTun2Socks() blocks for as long as the VPN is up, so the span ends before it
+                Tracer.Span span = Tracer.begin("setupTun2Socks");
                 try {
 
-                    if (isRestart) {
-                        Log.d(TAG, "is a restart... let's wait for a few seconds");
-                        Thread.sleep(3000);
-                    }
-
                     final String vpnName = "OrbotVPN";
-                    final String localhost = "127.0.0.1";
+                    final String localhost = LOCALHOST;
 
-                    final String virtualGateway = "192.168.200.1";
+                    final String virtualGateway = VIRTUAL_GATEWAY;
                     final String virtualIP = "192.168.200.2";
                     final String virtualNetMask = "255.255.255.0";
                     final String dummyDNS = "1.1.1.1"; //this is intercepted by the tun2socks library, but we must put in a valid DNS to start
@@ -270,7 +247,7 @@ public class OrbotVpnManager implements Handler.Callback {
 
                     final String localSocks = localhost + ':' + mTorSocks;
 
-                    builder.setMtu(VPN_MTU);
+                    builder.setMtu(mtu);
                     builder.addAddress(virtualGateway, 32);
 
                     builder.setSession(vpnName);
@@ -298,28 +275,25 @@ public class OrbotVpnManager implements Handler.Callback {
                             .setConfigureIntent(null) // previously this was set to a null member variable
                             .establish();
 
-                    if (mInterface != null) {
-                        Log.d(TAG, "Stopping existing VPN interface");
-                        mInterface.close();
-                        mInterface = null;
+                    synchronized (OrbotVpnManager.this) {
+                        if (mInterface != null) {
+                            Log.d(TAG, "Stopping existing VPN interface");
+                            mInterface.close();
+                        }
+                        mInterface = newInterface;
                     }
 
-                    mInterface = newInterface;
-
-                    isRestart = false;
+                    //answer DNS from tor's DNSPort, the forwarder rebinds the same port on every start
+                    startDns();
+                    final boolean localDnsTransparentProxy = true;
 
-                    //start PDNSD daemon pointing to actual DNS
-                    if (filePdnsd != null) {
-
-                        pdnsdPort++;
-                        startDNS(filePdnsd.getCanonicalPath(), localhost, mTorDns, virtualGateway, pdnsdPort);
-                        final boolean localDnsTransparentProxy = true;
-
-                        Tun2Socks.Start(mService, mInterface, VPN_MTU, virtualIP, virtualNetMask, localSocks, virtualGateway + ":" + pdnsdPort, localDnsTransparentProxy);
-                    }
+                    span.end();
+                    Tun2Socks.Start(session, mService, newInterface, mtu, virtualIP, virtualNetMask, localSocks, virtualGateway + ":" + DNS_PORT, localDnsTransparentProxy);
 
                 } catch (Exception e) {
                     Log.d(TAG, "tun2Socks has stopped", e);
+                } finally {
+                    span.end();
                 }
             }
 
@@ -355,51 +329,23 @@ public class OrbotVpnManager implements Handler.Callback {
 
     }
 
-    private void startDNS(String pdnsPath, String torDnsHost, int torDnsPort, String pdnsdHost, int pdnsdPort) throws IOException, TimeoutException {
-
-        File fileConf = makePdnsdConf(mService, mService.getFilesDir(), torDnsHost, torDnsPort, pdnsdHost, pdnsdPort);
-
-        String[] cmdString = {pdnsPath, "-c", fileConf.toString(), "-g", "-v2"};
-        ProcessBuilder pb = new ProcessBuilder(cmdString);
-        pb.redirectErrorStream(true);
-        Process proc = pb.start();
+    private void startDns() {
         try {
-            proc.waitFor();
-        } catch (Exception e) {
+            mDnsForwarder.start(new InetSocketAddress(VIRTUAL_GATEWAY, DNS_PORT), new InetSocketAddress(LOCALHOST, mTorDns));
+        } catch (IOException e) {
+            Log.e(TAG, "unable to start DNS forwarder", e);
         }
-
-        Log.i(TAG, "PDNSD: " + proc.exitValue());
-
-        if (proc.exitValue() != 0) {
-            BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream()));
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                Log.d(TAG, "pdnsd: " + line);
-            }
-        }
-
-
     }
 
     private void stopDns() {
-        if (filePdnsPid != null && filePdnsPid.exists()) {
-            ArrayList<String> lines = new ArrayList<>();
-            try {
-                BufferedReader reader = new BufferedReader(new FileReader(filePdnsPid));
-
-                String line = null;
-                while ((line = reader.readLine())!= null)
-                    lines.add(line);
+        mDnsForwarder.stop();
+        Log.d(TAG, "DNS cache hits=" + mDnsForwarder.getHits() + " (negative " + mDnsForwarder.getNegativeHits()
+                + ") misses=" + mDnsForwarder.getMisses() + " coalesced=" + mDnsForwarder.getCoalesced()
+                + " timeouts=" + mDnsForwarder.getTimeouts() + " upstream " + mDnsForwarder.getUpstreamLatency());
+    }
 
-                String dnsPid = lines.get(0);
-                VpnUtils.killProcess(dnsPid, "");
-                filePdnsPid.delete();
-                filePdnsPid = null;
-            } catch (Exception e) {
-                Log.e("OrbotVPN", "error killing dns process", e);
-            }
-        }
+    public DnsForwarder getDnsForwarder() {
+        return mDnsForwarder;
     }
 
     public boolean isStarted() {
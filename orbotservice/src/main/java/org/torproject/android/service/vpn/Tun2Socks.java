@@ -21,19 +21,16 @@ package org.torproject.android.service.vpn;
 
 import android.annotation.TargetApi;
 import android.content.Context;
-import android.net.ConnectivityManager;
 import android.os.Build;
 import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.util.Log;
 
-import org.torproject.android.service.util.TCPSourceApp;
-
 import java.net.DatagramSocket;
-import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.Arrays;
 import java.util.HashMap;
-
-import static android.content.Context.CONNECTIVITY_SERVICE;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Tun2Socks {
 
@@ -47,7 +44,18 @@ public class Tun2Socks {
     private static String mSocksServerAddress;
     private static String mUdpgwServerAddress;
     private static boolean mUdpgwTransparentDNS;
-    private static HashMap<Integer, String> mAppUidBlacklist = new HashMap<>();
+    // edited under its own lock, every change is compiled into sBlacklistUids
+    private static final HashMap<Integer, String> mAppUidBlacklist = new HashMap<>();
+    // sorted and never modified once published, so flows are checked without locking
+    private static volatile int[] sBlacklistUids = new int[0];
+    private static final AtomicLong sAllowedFlows = new AtomicLong();
+    private static final AtomicLong sDeniedFlows = new AtomicLong();
+
+    private static final long STOP_WARNING_MS = 1000;
+    private static final Object sLock = new Object();
+    private static int sSession = 0;
+    private static boolean sRunning = false;
+    private static UidResolver sUidResolver;
 
     static {
         System.loadLibrary("tun2socks");
@@ -59,7 +67,23 @@ public class Tun2Socks {
     // than one instance due to the use of global state (the lwip
     // module, etc.) in the native code.
 
+    /**
+     * Begins a new session, a {@link #Start} of an earlier session that is not running yet will
+     * not run at all.
+     */
+    public static int newSession() {
+        synchronized (sLock) {
+            return ++sSession;
+        }
+    }
+
+    /**
+     * Runs tun2socks on the interface until it is stopped. A tun2socks that still runs on a
+     * previous interface is stopped first, and this waits until its loop has returned instead of
+     * guessing how long that takes, so the new interface is only unserved for that long.
+     */
     public static void Start(
+            int session,
             Context context,
             ParcelFileDescriptor vpnInterfaceFileDescriptor,
             int vpnInterfaceMTU,
@@ -77,21 +101,73 @@ public class Tun2Socks {
         mUdpgwServerAddress = udpgwServerAddress;
         mUdpgwTransparentDNS = udpgwTransparentDNS;
 
-        if (mVpnInterfaceFileDescriptor != null)
+        if (vpnInterfaceFileDescriptor == null)
+            return;
+
+        synchronized (sLock) {
+            if (!awaitStopped(session))
+                return;
+            sRunning = true;
+        }
+
+        try {
+            // the parameters, another session may have replaced the fields while this one waited
             runTun2Socks(
-                    mVpnInterfaceFileDescriptor.detachFd(),
-                    mVpnInterfaceMTU,
-                    mVpnIpAddress,
-                    mVpnNetMask,
-                    mSocksServerAddress,
-                    mUdpgwServerAddress,
-                    mUdpgwTransparentDNS ? 1 : 0);
+                    vpnInterfaceFileDescriptor.detachFd(),
+                    vpnInterfaceMTU,
+                    vpnIpAddress,
+                    vpnNetMask,
+                    socksServerAddress,
+                    udpgwServerAddress,
+                    udpgwTransparentDNS ? 1 : 0);
+        } finally {
+            synchronized (sLock) {
+                sRunning = false;
+                sLock.notifyAll();
+            }
+            if (LOGD && sUidResolver != null)
+                Log.d(TAG, "app lookups: " + sUidResolver.getStats() + ", flows allowed=" + sAllowedFlows.get()
+                        + " denied=" + sDeniedFlows.get());
+        }
     }
 
+    /**
+     * Stops tun2socks, and keeps sessions that have not started running from starting.
+     */
     public static void Stop() {
+        synchronized (sLock) {
+            sSession++;
+            if (sRunning)
+                terminateTun2Socks();
+        }
+    }
 
-        terminateTun2Socks();
-
+    /**
+     * Stops the running tun2socks and waits for runTun2Socks() to return, the native code only
+     * allows one at a time. Called holding sLock.
+     *
+     * @return false if the session was superseded while waiting
+     */
+    private static boolean awaitStopped(int session) {
+        boolean terminated = false;
+        long since = SystemClock.elapsedRealtime();
+        while (session == sSession && sRunning) {
+            if (!terminated) {
+                terminateTun2Socks();
+                terminated = true;
+            }
+            try {
+                sLock.wait(STOP_WARNING_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (sRunning)
+                Log.w(TAG, "tun2socks still stopping after " + (SystemClock.elapsedRealtime() - since) + "ms");
+        }
+        if (terminated)
+            Log.d(TAG, "previous tun2socks stopped in " + (SystemClock.elapsedRealtime() - since) + "ms");
+        return session == sSession;
     }
 
     public static void logTun2Socks(
@@ -118,50 +194,96 @@ public class Tun2Socks {
     private native static void terminateTun2Socks();
 
     public static boolean checkIsAllowed(Context context, int protocol, String sourceAddr, int sourcePort, String destAddr, int destPort) {
+        boolean allowed;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            return isAllowedQ(context, protocol, sourceAddr, sourcePort, destAddr, destPort);
+            allowed = isAllowedQ(context, protocol, sourceAddr, sourcePort, destAddr, destPort);
         } else
-            return isAllowed(context, protocol, sourceAddr, sourcePort, destAddr, destPort);
+            allowed = isAllowed(context, protocol, sourceAddr, sourcePort, destAddr, destPort);
+
+        (allowed ? sAllowedFlows : sDeniedFlows).incrementAndGet();
+        return allowed;
     }
 
     public static boolean isAllowed(Context context, int protocol, String sourceAddr, int sourcePort, String destAddr, int destPort) {
+        UidResolver resolver = getUidResolver(context);
+        int uid = resolver.getUid(protocol, sourceAddr, sourcePort, destAddr, destPort);
 
-        TCPSourceApp.AppDescriptor aInfo = TCPSourceApp.getApplicationInfo(context, sourceAddr, sourcePort, destAddr, destPort);
-
-        if (aInfo != null) {
-            int uid = aInfo.getUid();
-            return mAppUidBlacklist.containsKey(uid);
-        } else
+        // sockets that are not an app's, or not found, are let through as before
+        if (uid != UidResolver.UID_UNKNOWN && resolver.getPackageName(uid) != null)
+            return isBlacklisted(uid);
+        else
             return true;
     }
 
     @TargetApi(Build.VERSION_CODES.Q)
     public static boolean isAllowedQ(Context context, int protocol, String sourceAddr, int sourcePort, String destAddr, int destPort) {
-        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(CONNECTIVITY_SERVICE);
-        if (cm == null)
-            return false;
+        int uid = getUidResolver(context).getUid(protocol, sourceAddr, sourcePort, destAddr, destPort);
+        return isBlacklisted(uid);
+    }
 
-        InetSocketAddress local = new InetSocketAddress(sourceAddr, sourcePort);
-        InetSocketAddress remote = new InetSocketAddress(destAddr, destPort);
+    private static synchronized UidResolver getUidResolver(Context context) {
+        if (sUidResolver == null)
+            sUidResolver = new UidResolver(context);
+        return sUidResolver;
+    }
 
-        int uid = cm.getConnectionOwnerUid(protocol, local, remote);
-        return mAppUidBlacklist.containsKey(uid);
+    private static boolean isBlacklisted(int uid) {
+        return Arrays.binarySearch(sBlacklistUids, uid) >= 0;
     }
 
     public static void setBlacklist(HashMap<Integer, String> appUidBlacklist) {
-        mAppUidBlacklist = appUidBlacklist;
+        synchronized (mAppUidBlacklist) {
+            mAppUidBlacklist.clear();
+            mAppUidBlacklist.putAll(appUidBlacklist);
+            compileBlacklist();
+        }
     }
 
     public static void clearBlacklist() {
-        mAppUidBlacklist.clear();
+        synchronized (mAppUidBlacklist) {
+            mAppUidBlacklist.clear();
+            compileBlacklist();
+        }
     }
 
     public static void addToBlacklist(int uid, String pkgId) {
-        mAppUidBlacklist.put(uid, pkgId);
+        synchronized (mAppUidBlacklist) {
+            mAppUidBlacklist.put(uid, pkgId);
+            compileBlacklist();
+        }
     }
 
     public static void removeFromBlacklist(int uid) {
-        mAppUidBlacklist.remove(uid);
+        synchronized (mAppUidBlacklist) {
+            mAppUidBlacklist.remove(uid);
+            compileBlacklist();
+        }
+    }
+
+    /**
+     * @return the flows checkIsAllowed() let through since the process started
+     */
+    public static long getAllowedFlows() {
+        return sAllowedFlows.get();
+    }
+
+    public static long getDeniedFlows() {
+        return sDeniedFlows.get();
+    }
+
+    /**
+     * Publishes the uids of mAppUidBlacklist as a sorted array. Flows are still checked here,
+     * behind the upcall from libtun2socks, which Android.mk builds from the external/badvpn
+     * submodule: the owner of a flow is only known through {@link UidResolver}, and that fork
+     * has no entry point to receive the array yet.
+     */
+    private static void compileBlacklist() {
+        int[] uids = new int[mAppUidBlacklist.size()];
+        int i = 0;
+        for (Integer uid : mAppUidBlacklist.keySet())
+            uids[i++] = uid;
+        Arrays.sort(uids);
+        sBlacklistUids = uids;
     }
 
     public interface IProtectSocket {
@@ -0,0 +1,272 @@
+package org.torproject.android.service.vpn;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Finds the app behind a flow tun2socks sees. Before Android Q the sockets of all apps are
+ * listed in /proc/net/tcp and tcp6, which are parsed in one pass over their bytes into an index
+ * by local port. Every entry is as old as the read that listed it; the index is read again
+ * when the port is missing from it, when it is older than {@link #PORT_TTL_MS}, or for a flow
+ * that is not in the cache, since a closed port may have been bound again by another app. It
+ * is read at most every {@link #MIN_REREAD_MS}, so a burst of new flows shares one read. On Q
+ * and later the owner comes from ConnectivityManager. Either way, flows that were resolved
+ * recently are answered from a cache without reading or binder calls, and so are package names.
+ */
+public class UidResolver {
+
+    public static final int UID_UNKNOWN = -1;
+
+    interface PortIndex {
+        void put(int port, int uid);
+    }
+
+    private static final String TAG = UidResolver.class.getSimpleName();
+    private static final String TCP_4_FILE_PATH = "/proc/net/tcp";
+    private static final String TCP_6_FILE_PATH = "/proc/net/tcp6";
+    // the token of a /proc/net/tcp line holding the uid, after "sl:", addresses, st and timers
+    private static final int UID_TOKEN = 7;
+    private static final long MIN_REREAD_MS = 50;
+    private static final long PORT_TTL_MS = 1000;
+    private static final long FLOW_TTL_MS = 10_000;
+    private static final int MAX_FLOWS = 256;
+    private static final long PACKAGE_TTL_MS = 10 * 60 * 1000L;
+
+    private final Context mContext;
+
+    private final SparseIntArray mUidByPort = new SparseIntArray();
+    private final PortIndex mPortIndex = mUidByPort::put;
+    // when the entries of mUidByPort were listed, a read replaces all of them
+    private long mReadAt = 0;
+    private byte[] mBuffer = new byte[16 * 1024];
+
+    private final LinkedHashMap<String, Flow> mFlows = new LinkedHashMap<String, Flow>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Flow> eldest) {
+            return size() > MAX_FLOWS;
+        }
+    };
+    private final SparseArray<PackageName> mPackages = new SparseArray<>();
+
+    private long mFlowHits = 0;
+    private long mLookups = 0;
+    private long mReads = 0;
+
+    public UidResolver(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Before Q only the port is used; it is matched against the local port of the sockets.
+     *
+     * @return the uid of the app that owns the flow, or {@link #UID_UNKNOWN}
+     */
+    public synchronized int getUid(int protocol, String sourceAddr, int sourcePort, String destAddr, int destPort) {
+        long now = SystemClock.elapsedRealtime();
+        String key = protocol + " " + sourceAddr + ' ' + sourcePort + ' ' + destAddr + ' ' + destPort;
+
+        Flow flow = mFlows.get(key);
+        if (flow != null && now - flow.resolvedAt < FLOW_TTL_MS) {
+            mFlowHits++;
+            return flow.uid;
+        }
+
+        mLookups++;
+        int uid;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            uid = getConnectionOwnerUid(protocol, sourceAddr, sourcePort, destAddr, destPort);
+        else
+            uid = getUidByPort(destPort, now, flow == null);
+
+        // an unknown flow is usually a socket too new to be listed yet, ask again next time
+        if (uid == UID_UNKNOWN)
+            mFlows.remove(key);
+        else
+            mFlows.put(key, new Flow(uid, now));
+        return uid;
+    }
+
+    /**
+     * @return the first package of the uid, or null if there is none
+     */
+    public synchronized String getPackageName(int uid) {
+        long now = SystemClock.elapsedRealtime();
+        PackageName cached = mPackages.get(uid);
+        if (cached != null && now - cached.resolvedAt < PACKAGE_TTL_MS)
+            return cached.name;
+
+        String[] packages = mContext.getPackageManager().getPackagesForUid(uid);
+        String name = packages != null && packages.length > 0 ? packages[0] : null;
+        mPackages.put(uid, new PackageName(name, now));
+        return name;
+    }
+
+    /**
+     * Forgets everything resolved, e.g. after apps were installed or removed.
+     */
+    public synchronized void clear() {
+        mFlows.clear();
+        mPackages.clear();
+        mUidByPort.clear();
+        mReadAt = 0;
+    }
+
+    public synchronized String getStats() {
+        return "flows cached=" + mFlowHits + " resolved=" + mLookups + " proc reads=" + mReads;
+    }
+
+    @TargetApi(Build.VERSION_CODES.Q)
+    private int getConnectionOwnerUid(int protocol, String sourceAddr, int sourcePort, String destAddr, int destPort) {
+        ConnectivityManager cm = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null)
+            return UID_UNKNOWN;
+        try {
+            return cm.getConnectionOwnerUid(protocol, new InetSocketAddress(sourceAddr, sourcePort),
+                    new InetSocketAddress(destAddr, destPort));
+        } catch (SecurityException | IllegalArgumentException e) {
+            return UID_UNKNOWN;
+        }
+    }
+
+    /**
+     * @param newFlow true if the flow was not in the cache, its port may be listed under the
+     *                uid of an app that closed it since
+     */
+    private int getUidByPort(int port, long now, boolean newFlow) {
+        int uid = mUidByPort.get(port, UID_UNKNOWN);
+        long age = now - mReadAt;
+        if (age >= MIN_REREAD_MS && (uid == UID_UNKNOWN || newFlow || age >= PORT_TTL_MS)) {
+            readSockets(now);
+            uid = mUidByPort.get(port, UID_UNKNOWN);
+        }
+        return uid;
+    }
+
+    private void readSockets(long now) {
+        mReads++;
+        mReadAt = now;
+        mUidByPort.clear();
+        // tcp6 last, a port listed in both is looked up as the old tcp6-first search found it
+        indexFile(TCP_4_FILE_PATH);
+        indexFile(TCP_6_FILE_PATH);
+    }
+
+    private void indexFile(String path) {
+        int length;
+        try {
+            length = readFully(path);
+        } catch (IOException e) {
+            Log.d(TAG, "unable to read " + path, e);
+            return;
+        }
+        indexSockets(mBuffer, length, mPortIndex);
+    }
+
+    private int readFully(String path) throws IOException {
+        InputStream is = new FileInputStream(path);
+        try {
+            int length = 0;
+            int read;
+            while ((read = is.read(mBuffer, length, mBuffer.length - length)) != -1) {
+                length += read;
+                if (length == mBuffer.length)
+                    mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+            }
+            return length;
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Adds the local port and uid of every line but the header, without building strings.
+     * Lines look like "0: 0100007F:C368 00000000:0000 0A 00000000:00000000 00:00000000
+     * 00000000 10123 0 34999 ...".
+     */
+    static void indexSockets(byte[] data, int length, PortIndex uidByPort) {
+        int offset = skipLine(data, 0, length);
+        while (offset < length) {
+            int port = -1;
+            int uid = -1;
+            int token = 0;
+            int i = offset;
+            while (i < length && data[i] != '\n' && token <= UID_TOKEN) {
+                while (i < length && data[i] == ' ')
+                    i++;
+                int start = i;
+                while (i < length && data[i] != ' ' && data[i] != '\n')
+                    i++;
+
+                if (token == 1) {
+                    int colon = start;
+                    while (colon < i && data[colon] != ':')
+                        colon++;
+                    port = parseNumber(data, colon + 1, i, 16);
+                } else if (token == UID_TOKEN) {
+                    uid = parseNumber(data, start, i, 10);
+                }
+                token++;
+            }
+
+            if (port != -1 && uid != -1)
+                uidByPort.put(port, uid);
+            offset = skipLine(data, i, length);
+        }
+    }
+
+    private static int skipLine(byte[] data, int offset, int length) {
+        while (offset < length && data[offset] != '\n')
+            offset++;
+        return offset + 1;
+    }
+
+    /**
+     * @return the number in data[start, end), or -1 if it is empty or not a number
+     */
+    private static int parseNumber(byte[] data, int start, int end, int radix) {
+        if (start >= end)
+            return -1;
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(data[i], radix);
+            if (digit == -1)
+                return -1;
+            value = value * radix + digit;
+        }
+        return value;
+    }
+
+    private static class Flow {
+        final int uid;
+        final long resolvedAt;
+
+        Flow(int uid, long resolvedAt) {
+            this.uid = uid;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+
+    private static class PackageName {
+        final String name;
+        final long resolvedAt;
+
+        PackageName(String name, long resolvedAt) {
+            this.name = name;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.torproject.android.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BridgeSelectorTest {
+
+    private static final String FAST = "obfs4 192.0.2.1:443 A0000000000000000000000000000000000000A1 cert=x iat-mode=0";
+    private static final String DEAD = "obfs4 192.0.2.2:443 B0000000000000000000000000000000000000B2 cert=x iat-mode=0";
+    private static final String NEW = "obfs4 192.0.2.3:443 C0000000000000000000000000000000000000C3 cert=x iat-mode=0";
+    private static final String PLAIN = "192.0.2.4:9001";
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("bridges", "");
+        assertTrue(mDir.delete() && mDir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void picksAtMostTheCountFromTheCandidates() {
+        BridgeSelector selector = new BridgeSelector(mDir, new Random(1));
+        List<String> lines = Arrays.asList(FAST, DEAD, NEW, PLAIN);
+
+        List<String> selected = selector.select(lines, 2);
+        assertEquals(2, selected.size());
+        assertTrue(lines.containsAll(selected));
+        assertEquals(4, selector.select(lines, 10).size());
+    }
+
+    @Test
+    public void creditsOnlyTheBridgeTorUsed() {
+        BridgeSelector selector = new BridgeSelector(mDir, new FixedRandom());
+        List<String> started = Arrays.asList(FAST, DEAD, NEW);
+
+        assertTrue(selector.recordBootstrap(started, "a0000000000000000000000000000000000000a1"));
+
+        // the unused bridges still rank as bridges without any data
+        List<String> selected = selector.select(Arrays.asList(NEW, DEAD, FAST), 3);
+        assertEquals(FAST, selected.get(0));
+    }
+
+    @Test
+    public void ranksFailedBridgesLast() {
+        BridgeSelector selector = new BridgeSelector(mDir, new FixedRandom());
+        selector.recordFailure(Collections.singletonList(DEAD));
+        selector.recordBootstrap(Arrays.asList(FAST, DEAD), "A0000000000000000000000000000000000000A1");
+
+        assertEquals(Arrays.asList(FAST, NEW, DEAD), selector.select(Arrays.asList(DEAD, NEW, FAST), 3));
+    }
+
+    @Test
+    public void recordsNothingForAnUnknownGuard() {
+        BridgeSelector selector = new BridgeSelector(mDir, new FixedRandom());
+        assertFalse(selector.recordBootstrap(Arrays.asList(FAST, PLAIN), "D0000000000000000000000000000000000000D4"));
+        assertFalse(new File(mDir, "bridge_stats.json").exists());
+    }
+
+    @Test
+    public void keepsTheStatisticsAcrossRestarts() {
+        new BridgeSelector(mDir, new FixedRandom()).recordFailure(Arrays.asList(FAST, PLAIN));
+
+        BridgeSelector selector = new BridgeSelector(mDir, new FixedRandom());
+        assertEquals(Arrays.asList(NEW, FAST, PLAIN), selector.select(Arrays.asList(FAST, PLAIN, NEW), 3));
+    }
+
+    /**
+     * No jitter, ties keep their order.
+     */
+    private static class FixedRandom extends Random {
+        @Override
+        public double nextDouble() {
+            return 0;
+        }
+    }
+}
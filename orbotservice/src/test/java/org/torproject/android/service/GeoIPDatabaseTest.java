@@ -0,0 +1,154 @@
+package org.torproject.android.service;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Loads generated geoip and geoip6 files shaped like tor's: a few hundred thousand sorted,
+ * non overlapping ranges with gaps between them.
+ */
+public class GeoIPDatabaseTest {
+
+    private static final int V4_RANGES = 200_000;
+    private static final int V6_RANGES = 50_000;
+    private static final long V4_BASE = 0x01000000L;
+    private static final String[] COUNTRIES = {"DE", "US", "FR", "NL", "SE", "CA", "JP", "BR", "IN", "ZA"};
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("geoip", "");
+        assertTrue(mDir.delete() && mDir.mkdir());
+
+        Writer geoip = new OutputStreamWriter(new FileOutputStream(new File(mDir, TorServiceConstants.GEOIP_ASSET_KEY)), "US-ASCII");
+        geoip.write("# comments and malformed lines are skipped\n");
+        for (int i = 0; i < V4_RANGES; i++) {
+            long start = V4_BASE + i * 256L;
+            geoip.write(start + "," + (start + 199) + "," + COUNTRIES[i % COUNTRIES.length] + "\n");
+        }
+        // overlaps the last range
+        geoip.write((V4_BASE + (V4_RANGES - 1) * 256L + 100) + ",4294967295,XX\n");
+        geoip.close();
+
+        Writer geoip6 = new OutputStreamWriter(new FileOutputStream(new File(mDir, TorServiceConstants.GEOIP6_ASSET_KEY)), "US-ASCII");
+        for (int i = 0; i < V6_RANGES; i++)
+            geoip6.write(String.format("2001:%x::,2001:%x:ff::,%s\n", i, i, COUNTRIES[i % COUNTRIES.length]));
+        geoip6.close();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void findsTheRangeOfAnAddress() throws IOException {
+        GeoIPDatabase geoIP = GeoIPDatabase.load(mDir);
+
+        assertEquals(V4_RANGES, geoIP.getV4RangeCount());
+        assertEquals(V6_RANGES, geoIP.getV6RangeCount());
+
+        assertEquals("DE", geoIP.lookup("1.0.0.0"));
+        assertEquals("DE", geoIP.lookup("1.0.0.199"));
+        assertNull(geoIP.lookup("1.0.0.200"));
+        assertEquals("US", geoIP.lookup("1.0.1.0"));
+        assertNull(geoIP.lookup("0.255.255.255"));
+        assertNull(geoIP.lookup("255.255.255.255"));
+
+        assertEquals("DE", geoIP.lookup("2001:0::1"));
+        assertEquals("US", geoIP.lookup("[2001:1:ff::]"));
+        assertNull(geoIP.lookup("2001:1:100::"));
+        assertNull(geoIP.lookup("not an address"));
+
+        assertEquals(Arrays.asList("BR", "CA", "DE", "FR", "IN", "JP", "NL", "SE", "US", "ZA"),
+                Arrays.asList(geoIP.getCountries()));
+    }
+
+    @Test
+    public void answersTheSameFromTheIndex() throws IOException {
+        GeoIPDatabase parsed = GeoIPDatabase.load(mDir);
+        assertTrue(new File(mDir, "geoip.idx").exists());
+        GeoIPDatabase indexed = GeoIPDatabase.load(mDir);
+
+        assertEquals(parsed.getV4RangeCount(), indexed.getV4RangeCount());
+        assertEquals(parsed.getV6RangeCount(), indexed.getV6RangeCount());
+        Random random = new Random(1);
+        for (int i = 0; i < 10_000; i++) {
+            int address = (int) (V4_BASE + random.nextInt(V4_RANGES * 256));
+            assertEquals(parsed.lookup(address), indexed.lookup(address));
+        }
+        assertEquals(parsed.lookup("2001:2a::1"), indexed.lookup("2001:2a::1"));
+    }
+
+    /**
+     * Lookups per second by number and from address literals, and the time to load the
+     * files and the index. Only runs with -Dbenchmark=true.
+     */
+    @Test
+    public void benchmarkLookupsPerSecond() throws IOException {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+        long start = System.nanoTime();
+        GeoIPDatabase.load(mDir);
+        long parseMs = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        GeoIPDatabase geoIP = GeoIPDatabase.load(mDir);
+        long indexMs = (System.nanoTime() - start) / 1_000_000;
+
+        int count = 1_000_000;
+        int[] v4 = new int[count];
+        String[] literals = new String[4096];
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++)
+            v4[i] = random.nextInt();
+        for (int i = 0; i < literals.length; i++)
+            literals[i] = (1 + random.nextInt(3)) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+
+        // warm up
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            if (geoIP.lookup(v4[i]) != null)
+                found++;
+        }
+
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (geoIP.lookup(v4[i]) != null)
+                found++;
+        }
+        double v4PerSecond = count * 1e9 / (System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (geoIP.lookup(literals[i % literals.length]) != null)
+                found++;
+        }
+        double literalsPerSecond = count * 1e9 / (System.nanoTime() - start);
+
+        System.out.println(String.format("GeoIP: parse %dms, index %dms, %.0f lookups/s by number, %.0f lookups/s from literals (%d)",
+                parseMs, indexMs, v4PerSecond, literalsPerSecond, found));
+        // a binary search over a few hundred thousand ranges, far below what it does on a phone
+        assertTrue(v4PerSecond > 100_000);
+        assertTrue(literalsPerSecond > 50_000);
+    }
+}
@@ -0,0 +1,308 @@
+package org.torproject.android.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.torproject.android.service.util.ExternalIPFetcher;
+import org.torproject.android.service.util.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link RelayMetadataService} and {@link ExternalIPFetcher} against a stand-in Onionoo
+ * that knows every fingerprint starting with "A" and none starting with "B".
+ */
+public class RelayMetadataServiceTest {
+
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    private HttpServer mServer;
+    private final List<List<String>> mLookups = Collections.synchronizedList(new ArrayList<List<String>>());
+    private volatile boolean mRefuseBatches = false;
+
+    private File mDir;
+    private RelayMetadataService mService;
+    private final LinkedBlockingQueue<Result> mResults = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/details", this::handle);
+        mServer.start();
+
+        mDir = File.createTempFile("relay-metadata", "");
+        assertTrue(mDir.delete() && mDir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        if (mService != null)
+            mService.shutdown();
+        mServer.stop(0);
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void batchesLookupsThatArriveTogether() throws Exception {
+        startService();
+        String[] fingerprints = {fingerprint('A', 1), fingerprint('A', 2), fingerprint('A', 6), fingerprint('B', 1)};
+        for (String fingerprint : fingerprints)
+            mService.lookup(fingerprint.toLowerCase(Locale.US), this::onResult);
+
+        for (int i = 0; i < fingerprints.length; i++) {
+            Result result = take();
+            if (result.fingerprint.charAt(0) == 'B') {
+                assertNull(result.metadata);
+            } else {
+                assertNotNull(result.metadata);
+                assertEquals("Country " + result.fingerprint.charAt(39), result.metadata.country);
+            }
+        }
+
+        assertEquals(1, mLookups.size());
+        assertEquals(fingerprints.length, mLookups.get(0).size());
+        assertEquals(1, mService.getRequests());
+    }
+
+    @Test
+    public void parsesIPv4AndIPv6Addresses() throws Exception {
+        startService();
+        mService.lookup(fingerprint('A', 1), this::onResult);
+        mService.lookup(fingerprint('A', 6), this::onResult);
+
+        for (int i = 0; i < 2; i++) {
+            Result result = take();
+            if (result.fingerprint.equals(fingerprint('A', 6)))
+                assertEquals("2001:db8::6", result.metadata.ipAddress);
+            else
+                assertEquals("10.0.0.1", result.metadata.ipAddress);
+        }
+    }
+
+    @Test
+    public void sharesOneLookupBetweenConcurrentCallers() throws Exception {
+        startService();
+        mService.lookup(fingerprint('A', 1), this::onResult);
+        mService.lookup(fingerprint('A', 1), this::onResult);
+
+        assertNotNull(take().metadata);
+        assertNotNull(take().metadata);
+        assertEquals(1, mLookups.size());
+        assertEquals(1, mService.getDeduplicated());
+    }
+
+    @Test
+    public void fallsBackToSingleLookupsWhenBatchesAreRefused() throws Exception {
+        mRefuseBatches = true;
+        startService();
+        mService.lookup(fingerprint('A', 1), this::onResult);
+        mService.lookup(fingerprint('A', 2), this::onResult);
+        mService.lookup(fingerprint('A', 3), this::onResult);
+
+        for (int i = 0; i < 3; i++)
+            assertNotNull(take().metadata);
+
+        // the refused batch, then one request per relay
+        assertEquals(4, mLookups.size());
+        assertEquals(3, mLookups.get(0).size());
+        for (int i = 1; i < 4; i++)
+            assertEquals(1, mLookups.get(i).size());
+
+        // and it stays that way
+        mService.lookup(fingerprint('A', 4), this::onResult);
+        mService.lookup(fingerprint('A', 5), this::onResult);
+        take();
+        take();
+        assertEquals(6, mLookups.size());
+    }
+
+    @Test
+    public void answersFromTheCacheUntilEntriesExpire() throws Exception {
+        long now = System.currentTimeMillis();
+        JSONArray cache = new JSONArray()
+                .put(entry(fingerprint('A', 1), true, now - 4 * DAY_MS))
+                .put(entry(fingerprint('A', 2), true, now - 2 * DAY_MS))
+                .put(entry(fingerprint('B', 1), false, now - 7 * HOUR_MS))
+                .put(entry(fingerprint('B', 2), false, now - HOUR_MS));
+        writeCache(cache);
+        startService();
+
+        // still valid, answered on the calling thread
+        mService.lookup(fingerprint('A', 2), this::onResult);
+        assertEquals("cached", mResults.poll().metadata.organization);
+        mService.lookup(fingerprint('B', 2), this::onResult);
+        assertNull(mResults.poll().metadata);
+        assertEquals(2, mService.getCacheHits());
+
+        // a known relay expires after three days, an unknown one after six hours
+        mService.lookup(fingerprint('A', 1), this::onResult);
+        mService.lookup(fingerprint('B', 1), this::onResult);
+        take();
+        take();
+        assertEquals(1, mLookups.size());
+        assertEquals(2, mLookups.get(0).size());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedRelay() throws Exception {
+        long now = System.currentTimeMillis();
+        JSONArray cache = new JSONArray();
+        for (int i = 0; i < 512; i++)
+            cache.put(entry(fingerprint('A', 1000 + i), true, now));
+        writeCache(cache);
+        startService();
+
+        // the oldest entry is used again, so the second oldest is the one to go
+        mService.lookup(fingerprint('A', 1000), this::onResult);
+        assertNotNull(mResults.poll());
+        mService.lookup(fingerprint('A', 1), this::onResult);
+        take();
+
+        mService.lookup(fingerprint('A', 1002), this::onResult);
+        assertNotNull(mResults.poll());
+        mService.lookup(fingerprint('A', 1000), this::onResult);
+        assertNotNull(mResults.poll());
+        assertEquals(1, mLookups.size());
+
+        mService.lookup(fingerprint('A', 1001), this::onResult);
+        take();
+        assertEquals(2, mLookups.size());
+        assertEquals(Collections.singletonList(fingerprint('A', 1001)), mLookups.get(1));
+    }
+
+    @Test
+    public void keepsTheCacheAcrossRestarts() throws Exception {
+        startService();
+        mService.lookup(fingerprint('A', 1), this::onResult);
+        take();
+        // the cache is written right after the listeners were called
+        File cache = new File(mDir, "relay_metadata.json");
+        for (int i = 0; i < 100 && !cache.exists(); i++)
+            Thread.sleep(50);
+        mService.shutdown();
+
+        startService();
+        mService.lookup(fingerprint('A', 1), this::onResult);
+        assertEquals("10.0.0.1", mResults.poll().metadata.ipAddress);
+        assertEquals(1, mLookups.size());
+    }
+
+    private void startService() {
+        String baseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/details";
+        mService = new RelayMetadataService(mDir, new ExternalIPFetcher(baseUrl));
+        mService.setProxy(Proxy.NO_PROXY);
+    }
+
+    private void onResult(String fingerprint, RelayMetadataService.Metadata metadata) {
+        mResults.add(new Result(fingerprint, metadata));
+    }
+
+    private Result take() throws InterruptedException {
+        Result result = mResults.poll(10, TimeUnit.SECONDS);
+        assertNotNull("no answer from the relay metadata service", result);
+        return result;
+    }
+
+    private void writeCache(JSONArray entries) {
+        assertTrue(Utils.writeFileAtomically(new File(mDir, "relay_metadata.json"), entries.toString()));
+    }
+
+    private static JSONObject entry(String fingerprint, boolean known, long fetchedAt) throws Exception {
+        JSONObject entry = new JSONObject().put("fingerprint", fingerprint).put("fetched", fetchedAt);
+        if (known)
+            entry.put("ip", "10.1.1.1").put("country", "Cached").put("as", "cached");
+        return entry;
+    }
+
+    /**
+     * @return a 40 digit fingerprint starting with the letter and ending with the number
+     */
+    private static String fingerprint(char letter, int number) {
+        return String.format(Locale.US, "%c%039d", letter, number);
+    }
+
+    /**
+     * Answers "?fields=...&lookup=FP,FP" like Onionoo, or with 400 for several fingerprints
+     * when batches are refused.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        String lookup = "";
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("lookup="))
+                lookup = URLDecoder.decode(parameter.substring("lookup=".length()), "UTF-8");
+        }
+
+        ArrayList<String> fingerprints = new ArrayList<>();
+        Collections.addAll(fingerprints, lookup.split(","));
+        mLookups.add(fingerprints);
+
+        if (mRefuseBatches && fingerprints.size() > 1) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+
+        try {
+            JSONArray relays = new JSONArray();
+            for (String fingerprint : fingerprints) {
+                if (fingerprint.charAt(0) != 'A')
+                    continue;
+                char last = fingerprint.charAt(fingerprint.length() - 1);
+                String address = last == '6' ? "[2001:db8::6]:9001" : "10.0.0." + last + ":9001";
+                relays.put(new JSONObject()
+                        .put("fingerprint", fingerprint)
+                        .put("country_name", "Country " + last)
+                        .put("as_name", "AS " + last)
+                        .put("or_addresses", new JSONArray().put(address)));
+            }
+
+            byte[] body = new JSONObject().put("relays", relays).toString().getBytes("UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(body);
+            os.close();
+        } catch (Exception e) {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        }
+    }
+
+    private static class Result {
+        final String fingerprint;
+        final RelayMetadataService.Metadata metadata;
+
+        Result(String fingerprint, RelayMetadataService.Metadata metadata) {
+            this.fingerprint = fingerprint;
+            this.metadata = metadata;
+        }
+    }
+}
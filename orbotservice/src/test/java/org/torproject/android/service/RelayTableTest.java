@@ -0,0 +1,143 @@
+package org.torproject.android.service;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.StringTokenizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RelayTableTest {
+
+    private static final String GUARD = "$A0000000000000000000000000000000000000A1~guard";
+    private static final String MIDDLE = "$B0000000000000000000000000000000000000B2=middle";
+    private static final String EXIT = "$C0000000000000000000000000000000000000C3";
+
+    @Test
+    public void internsEachRelayOnce() {
+        RelayTable relays = new RelayTable();
+        int[] hops = new int[3];
+
+        assertEquals(3, relays.internPath(GUARD + ',' + MIDDLE + ',' + EXIT, hops));
+        int[] again = new int[3];
+        relays.internPath(GUARD + ',' + MIDDLE + ',' + EXIT, again);
+
+        assertEquals(3, relays.size());
+        for (int i = 0; i < 3; i++)
+            assertSame(relays.get(hops[i]), relays.get(again[i]));
+        assertEquals("A0000000000000000000000000000000000000A1", relays.get(hops[0]).id);
+        assertEquals("guard", relays.get(hops[0]).name);
+        assertEquals("middle", relays.get(hops[1]).name);
+    }
+
+    @Test
+    public void fillsInTheNicknameLater() {
+        RelayTable relays = new RelayTable();
+        int[] hops = new int[1];
+
+        relays.internPath(EXIT, hops);
+        assertEquals(relays.get(hops[0]).id, relays.get(hops[0]).name);
+
+        relays.internPath(EXIT + "~exit", hops);
+        assertEquals("exit", relays.get(hops[0]).name);
+    }
+
+    @Test
+    public void growsPastItsInitialCapacity() {
+        RelayTable relays = new RelayTable();
+        int[] ids = new int[1000];
+        for (int i = 0; i < ids.length; i++) {
+            String fingerprint = String.format("%040X", i);
+            ids[i] = relays.intern(fingerprint, 0, fingerprint.length(), 0, 0);
+        }
+
+        assertEquals(ids.length, relays.size());
+        for (int i = 0; i < ids.length; i++)
+            assertEquals(String.format("%040X", i), relays.get(ids[i]).id);
+
+        relays.clear();
+        assertNull(relays.get(ids[0]));
+    }
+
+    @Test
+    public void countsTheHopsOfAPath() {
+        assertEquals(1, RelayTable.maxHops(EXIT));
+        assertEquals(3, RelayTable.maxHops(GUARD + ',' + MIDDLE + ',' + EXIT));
+    }
+
+    /**
+     * Bytes allocated per CIRC path by the interned parser and by the StringTokenizer and
+     * split() parser it replaced, once every relay is known. Only runs with -Dbenchmark=true.
+     */
+    @Test
+    public void benchmarkAllocationPerEvent() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+
+        String[] paths = new String[64];
+        for (int i = 0; i < paths.length; i++)
+            paths[i] = String.format("$%040X~guard%d,$%040X=middle%d,$%040X~exit%d", i, i, i + 1000, i, i + 2000, i);
+
+        RelayTable relays = new RelayTable();
+        int[] hops = new int[RelayTable.maxHops(paths[0])];
+        HashMap<String, TorEventHandler.Node> legacy = new HashMap<>();
+        int events = 200_000;
+
+        // warm up, and intern every relay
+        long sink = 0;
+        for (int i = 0; i < events; i++) {
+            sink += relays.internPath(paths[i % paths.length], hops);
+            sink += legacyParse(paths[i % paths.length], legacy);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < events; i++)
+            sink += relays.internPath(paths[i % paths.length], hops);
+        long interned = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < events; i++)
+            sink += legacyParse(paths[i % paths.length], legacy);
+        long tokenized = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        System.out.println("bytes allocated per CIRC event: interned=" + (double) interned / events
+                + " tokenized=" + (double) tokenized / events + " (" + sink + ")");
+        // a few bytes of slack for the measuring itself
+        assertTrue(interned / events < 4);
+        assertTrue(interned < tokenized);
+    }
+
+    /**
+     * The per hop work circuitStatus did before the relay table, without the logging.
+     */
+    private static int legacyParse(String path, HashMap<String, TorEventHandler.Node> nodes) {
+        StringTokenizer st = new StringTokenizer(path, ",");
+        int hops = 0;
+        while (st.hasMoreTokens()) {
+            String nodePath = st.nextToken();
+            String[] nodeParts = nodePath.contains("=") ? nodePath.split("=") : nodePath.split("~");
+            String nodeId = nodeParts[0].substring(1);
+            String nodeName = nodeParts.length == 2 ? nodeParts[1] : nodeId;
+
+            TorEventHandler.Node node = nodes.get(nodeId);
+            if (node == null) {
+                node = new TorEventHandler.Node();
+                node.id = nodeId;
+                node.name = nodeName;
+                nodes.put(nodeId, node);
+            }
+            hops++;
+        }
+        return hops;
+    }
+}
@@ -0,0 +1,96 @@
+package org.torproject.android.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StreamLatencyTrackerTest {
+
+    private final StreamLatencyTracker mTracker = new StreamLatencyTracker();
+
+    @Test
+    public void timesAttachAndSuccessPerPort() {
+        mTracker.onStreamStatus("1", "NEW", "example.com:443", 1000);
+        mTracker.onStreamStatus("1", "SENTCONNECT", "example.com:443", 1030);
+        mTracker.onStreamStatus("1", "SUCCEEDED", "example.com:443", 1200);
+        mTracker.onStreamStatus("2", "NEWRESOLVE", "example.com", 1000);
+        mTracker.onStreamStatus("2", "SUCCEEDED", "example.com", 1050);
+
+        assertEquals(1, mTracker.getAttached().count);
+        assertInBucket(30, mTracker.getAttached().p50);
+        assertEquals(2, mTracker.getSucceeded().count);
+        assertInBucket(200, mTracker.getByPort().get(443).p50);
+        assertInBucket(50, mTracker.getByPort().get(0).p50);
+        assertEquals(0, mTracker.getFailed().count);
+    }
+
+    @Test
+    public void timesStreamsThatNeverSucceeded() {
+        mTracker.onStreamStatus("1", "NEW", "example.com:80", 0);
+        mTracker.onStreamStatus("1", "FAILED", "example.com:80", 500);
+        // closing after success is not a failure
+        mTracker.onStreamStatus("2", "NEW", "example.com:80", 0);
+        mTracker.onStreamStatus("2", "SUCCEEDED", "example.com:80", 100);
+        mTracker.onStreamStatus("2", "CLOSED", "example.com:80", 900);
+
+        assertEquals(1, mTracker.getFailed().count);
+        assertInBucket(500, mTracker.getFailed().p50);
+    }
+
+    @Test
+    public void ignoresStreamsOpenedBeforeListening() {
+        mTracker.onStreamStatus("1", "SUCCEEDED", "example.com:80", 100);
+        mTracker.onStreamStatus("1", "CLOSED", "example.com:80", 200);
+        mTracker.onStreamCircuit("1", "5");
+
+        assertEquals(0, mTracker.getSucceeded().count);
+        assertEquals(0, mTracker.getFailed().count);
+        assertTrue(mTracker.getByCircuit().isEmpty());
+    }
+
+    @Test
+    public void recordsOnTheCircuitKnownAfterSuccess() {
+        mTracker.onStreamStatus("1", "NEW", "example.com:443", 0);
+        mTracker.onStreamStatus("1", "SUCCEEDED", "example.com:443", 300);
+        assertTrue(mTracker.getByCircuit().isEmpty());
+
+        mTracker.onStreamCircuit("1", "7");
+        mTracker.onStreamCircuit("1", "7");
+        assertEquals(1, mTracker.getByCircuit().get("7").count);
+        assertInBucket(300, mTracker.getByCircuit().get("7").p50);
+    }
+
+    @Test
+    public void recordsOnTheCircuitKnownBeforeSuccess() {
+        mTracker.onStreamStatus("1", "NEW", "example.com:443", 0);
+        mTracker.onStreamCircuit("1", "7");
+        assertTrue(mTracker.getByCircuit().isEmpty());
+
+        mTracker.onStreamStatus("1", "SUCCEEDED", "example.com:443", 40);
+        assertEquals(1, mTracker.getByCircuit().get("7").count);
+        assertInBucket(40, mTracker.getByCircuit().get("7").p50);
+    }
+
+    @Test
+    public void forgetsClosedCircuits() {
+        mTracker.onStreamStatus("1", "NEW", "example.com:443", 0);
+        mTracker.onStreamStatus("1", "SUCCEEDED", "example.com:443", 40);
+        mTracker.onStreamCircuit("1", "7");
+
+        mTracker.onCircuitClosed("7");
+        assertNull(mTracker.getByCircuit().get("7"));
+
+        mTracker.clear();
+        assertEquals(0, mTracker.getSucceeded().count);
+        assertTrue(mTracker.getByPort().isEmpty());
+    }
+
+    /**
+     * The histograms answer with the upper bound of a bucket, within an eighth of the value.
+     */
+    private static void assertInBucket(long expected, long actual) {
+        assertTrue(expected + " -> " + actual, actual >= expected && actual <= expected + expected / 8);
+    }
+}
@@ -0,0 +1,65 @@
+package org.torproject.android.service.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void hasNoPercentilesWithoutSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(-1, histogram.getPercentile(0.5));
+        assertEquals(-1, histogram.getPercentiles().p99);
+    }
+
+    @Test
+    public void keepsSmallDurationsExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 0; ms < 8; ms++)
+            histogram.record(ms);
+
+        assertEquals(8, histogram.getCount());
+        assertEquals(3, histogram.getPercentile(0.5));
+        assertEquals(7, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void staysWithinAnEighthOfTheDuration() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long ms = 1; ms <= LatencyHistogram.MAX_MS; ms = ms * 17 / 16 + 1) {
+            histogram.clear();
+            histogram.record(ms);
+            long percentile = histogram.getPercentile(0.5);
+            assertTrue(ms + " -> " + percentile, percentile >= ms && percentile <= ms + ms / 8);
+        }
+    }
+
+    @Test
+    public void clampsDurationsOutOfRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getPercentile(0.5));
+
+        histogram.clear();
+        histogram.record(LatencyHistogram.MAX_MS * 10);
+        assertEquals(LatencyHistogram.MAX_MS, histogram.getPercentile(0.5));
+    }
+
+    @Test
+    public void findsTheTail() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++)
+            histogram.record(10);
+        for (int i = 0; i < 10; i++)
+            histogram.record(1000);
+
+        LatencyHistogram.Percentiles percentiles = histogram.getPercentiles();
+        assertEquals(100, percentiles.count);
+        assertEquals(10, percentiles.p50);
+        assertEquals(10, percentiles.p90);
+        assertTrue(percentiles.p99 >= 1000 && percentiles.p99 <= 1125);
+    }
+}
@@ -0,0 +1,314 @@
+package org.torproject.android.service.vpn;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link DnsForwarder} against a stand-in DNS server that answers "a.example" with an A
+ * record, "nx.example" with NXDOMAIN, "slow.example" after a while and "drop.example" never.
+ */
+public class DnsForwarderTest {
+
+    private static final int TIMEOUT_MS = 500;
+    private static final int A_TTL = 300;
+    private static final int RCODE_SERVFAIL = 2;
+    private static final int RCODE_NXDOMAIN = 3;
+
+    private final InetAddress mLoopback = InetAddress.getLoopbackAddress();
+    private final ConcurrentHashMap<String, AtomicInteger> mUpstreamQueries = new ConcurrentHashMap<>();
+    private DatagramSocket mUpstream;
+    private Thread mUpstreamThread;
+
+    private DnsForwarder mForwarder;
+    private DatagramSocket mClient;
+    private InetSocketAddress mListen;
+    private int mNextId = 1;
+
+    @Before
+    public void setUp() throws IOException {
+        mUpstream = new DatagramSocket(0, mLoopback);
+        mUpstreamThread = new Thread(this::serve, "stand-in DNS");
+        mUpstreamThread.start();
+
+        DatagramSocket probe = new DatagramSocket(0, mLoopback);
+        mListen = new InetSocketAddress(mLoopback, probe.getLocalPort());
+        probe.close();
+
+        mForwarder = new DnsForwarder(TIMEOUT_MS);
+        mForwarder.start(mListen, new InetSocketAddress(mLoopback, mUpstream.getLocalPort()));
+
+        mClient = new DatagramSocket(0, mLoopback);
+        mClient.setSoTimeout(5000);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mForwarder.stop();
+        mClient.close();
+        mUpstream.close();
+        mUpstreamThread.join();
+    }
+
+    @Test
+    public void answersRepeatedQueriesFromTheCache() throws Exception {
+        int id = send("a.example");
+        byte[] answer = receive();
+        assertEquals(id, getShort(answer, 0));
+        assertEquals(0, rcode(answer));
+        assertEquals(A_TTL, firstTtl(answer));
+
+        // the cached answer repeats the question as it was asked this time
+        id = send("A.Example");
+        answer = receive();
+        assertEquals(id, getShort(answer, 0));
+        assertEquals("A.Example", questionName(answer));
+
+        assertEquals(1, upstreamQueries("a.example"));
+        assertEquals(1, mForwarder.getMisses());
+        assertEquals(1, mForwarder.getHits());
+    }
+
+    @Test
+    public void countsTheTtlDownWhileCached() throws Exception {
+        send("a.example");
+        receive();
+        Thread.sleep(2100);
+
+        send("a.example");
+        long ttl = firstTtl(receive());
+        assertTrue("ttl " + ttl, ttl <= A_TTL - 2 && ttl >= A_TTL - 3);
+        assertEquals(1, upstreamQueries("a.example"));
+    }
+
+    @Test
+    public void cachesNamesThatDoNotExist() throws Exception {
+        send("nx.example");
+        assertEquals(RCODE_NXDOMAIN, rcode(receive()));
+        send("nx.example");
+        assertEquals(RCODE_NXDOMAIN, rcode(receive()));
+
+        assertEquals(1, upstreamQueries("nx.example"));
+        assertEquals(1, mForwarder.getNegativeHits());
+    }
+
+    @Test
+    public void sendsOneQueryForConcurrentAsks() throws Exception {
+        HashSet<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 3; i++)
+            ids.add(send("slow.example"));
+
+        HashSet<Integer> answered = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            byte[] answer = receive();
+            assertEquals(0, rcode(answer));
+            answered.add(getShort(answer, 0));
+        }
+
+        assertEquals(ids, answered);
+        assertEquals(1, upstreamQueries("slow.example"));
+        assertEquals(2, mForwarder.getCoalesced());
+    }
+
+    @Test
+    public void answersServerFailureWhenUpstreamIsSilent() throws Exception {
+        long start = System.nanoTime();
+        int id = send("drop.example");
+        byte[] answer = receive();
+        long waitedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(id, getShort(answer, 0));
+        assertEquals(RCODE_SERVFAIL, rcode(answer));
+        assertTrue("waited " + waitedMs + "ms", waitedMs >= TIMEOUT_MS);
+        assertEquals(1, mForwarder.getTimeouts());
+
+        // a failure is not cached
+        send("drop.example");
+        assertEquals(RCODE_SERVFAIL, rcode(receive()));
+        assertEquals(2, upstreamQueries("drop.example"));
+    }
+
+    private int send(String name) throws IOException {
+        int id = mNextId++;
+        byte[] query = query(id, name);
+        mClient.send(new DatagramPacket(query, query.length, mListen));
+        return id;
+    }
+
+    private byte[] receive() throws IOException {
+        byte[] buffer = new byte[512];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        mClient.receive(packet);
+        return Arrays.copyOf(buffer, packet.getLength());
+    }
+
+    private int upstreamQueries(String name) {
+        AtomicInteger count = mUpstreamQueries.get(name);
+        return count == null ? 0 : count.get();
+    }
+
+    private void serve() {
+        byte[] buffer = new byte[512];
+        while (true) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                mUpstream.receive(packet);
+            } catch (IOException e) {
+                return; // closed
+            }
+            byte[] query = Arrays.copyOf(buffer, packet.getLength());
+            String name = questionName(query).toLowerCase(Locale.US);
+            mUpstreamQueries.putIfAbsent(name, new AtomicInteger());
+            mUpstreamQueries.get(name).incrementAndGet();
+
+            byte[] answer;
+            if (name.equals("nx.example")) {
+                answer = nxdomain(query);
+            } else if (name.equals("drop.example")) {
+                continue;
+            } else {
+                if (name.equals("slow.example"))
+                    sleep(300);
+                answer = address(query);
+            }
+
+            try {
+                mUpstream.send(new DatagramPacket(answer, answer.length, packet.getSocketAddress()));
+            } catch (SocketException e) {
+                return; // closed
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static byte[] query(int id, String name) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeShort(out, id);
+        writeShort(out, 0x0100); // recursion desired
+        writeShort(out, 1);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        for (String label : name.split("\\.")) {
+            out.write(label.length());
+            out.write(label.getBytes(), 0, label.length());
+        }
+        out.write(0);
+        writeShort(out, 1); // A
+        writeShort(out, 1); // IN
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the answer with one A record pointing back at the question
+     */
+    private static byte[] address(byte[] query) {
+        ByteArrayOutputStream out = response(query, 0, 1, 0);
+        writeShort(out, 0xc00c);
+        writeShort(out, 1);
+        writeShort(out, 1);
+        writeInt(out, A_TTL);
+        writeShort(out, 4);
+        out.write(new byte[]{10, 0, 0, 1}, 0, 4);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return NXDOMAIN with the zone's SOA, whose minimum of 30s is the negative TTL
+     */
+    private static byte[] nxdomain(byte[] query) {
+        ByteArrayOutputStream out = response(query, RCODE_NXDOMAIN, 0, 1);
+        writeShort(out, 0xc00c);
+        writeShort(out, 6);
+        writeShort(out, 1);
+        writeInt(out, 3600);
+        writeShort(out, 2 + 5 * 4);
+        out.write(0); // mname
+        out.write(0); // rname
+        writeInt(out, 1);
+        writeInt(out, 7200);
+        writeInt(out, 900);
+        writeInt(out, 86400);
+        writeInt(out, 30);
+        return out.toByteArray();
+    }
+
+    private static ByteArrayOutputStream response(byte[] query, int rcode, int answers, int authorities) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeShort(out, getShort(query, 0));
+        writeShort(out, 0x8180 | rcode);
+        writeShort(out, 1);
+        writeShort(out, answers);
+        writeShort(out, authorities);
+        writeShort(out, 0);
+        out.write(query, 12, query.length - 12);
+        return out;
+    }
+
+    private static String questionName(byte[] packet) {
+        StringBuilder name = new StringBuilder();
+        int offset = 12;
+        while (packet[offset] != 0) {
+            if (name.length() > 0)
+                name.append('.');
+            name.append(new String(packet, offset + 1, packet[offset]));
+            offset += packet[offset] + 1;
+        }
+        return name.toString();
+    }
+
+    private static int rcode(byte[] packet) {
+        return getShort(packet, 2) & 0x000f;
+    }
+
+    /**
+     * @return the TTL of the first answer record, which follows the single question
+     */
+    private static long firstTtl(byte[] packet) {
+        int offset = 12;
+        while (packet[offset] != 0)
+            offset += packet[offset] + 1;
+        offset += 5; // end of name, type and class
+        offset += 2 + 2 + 2; // compressed name, type and class of the record
+        return ((long) getShort(packet, offset) << 16) | getShort(packet, offset + 2);
+    }
+
+    private static int getShort(byte[] packet, int offset) {
+        return ((packet[offset] & 0xff) << 8) | (packet[offset + 1] & 0xff);
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value) {
+        writeShort(out, (int) (value >> 16));
+        writeShort(out, (int) value);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
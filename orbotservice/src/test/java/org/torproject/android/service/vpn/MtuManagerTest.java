@@ -0,0 +1,71 @@
+package org.torproject.android.service.vpn;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class MtuManagerTest {
+
+    private final ArrayList<Integer> mChanges = new ArrayList<>();
+    private final MtuManager mManager = new MtuManager(mChanges::add);
+
+    @Test
+    public void usesTheSmallerOfLinkAndAdvertised() {
+        mManager.choose("wifi:wlan0", 1500, 1400, 0, true);
+        assertEquals(1400, mManager.getMtu());
+
+        mManager.choose("cellular:rmnet0", 1420, 1500, 0, true);
+        assertEquals(1420, mManager.getMtu());
+
+        // either may be unknown
+        mManager.choose("cellular:rmnet0", 0, 1440, 0, true);
+        assertEquals(1440, mManager.getMtu());
+        mManager.choose("other:null", 0, 0, 0, true);
+        assertEquals(MtuManager.DEFAULT_MTU, mManager.getMtu());
+    }
+
+    @Test
+    public void overrideWins() {
+        mManager.choose("wifi:wlan0", 1500, 1500, 1300, true);
+        assertEquals(1300, mManager.getMtu());
+
+        mManager.choose("wifi:wlan0", 1350, 1350, 1450, true);
+        assertEquals(1450, mManager.getMtu());
+    }
+
+    @Test
+    public void staysWithinWhatIpv6AndEthernetAllow() {
+        mManager.choose("cellular:rmnet0", 576, 0, 0, true);
+        assertEquals(1280, mManager.getMtu());
+
+        mManager.choose("ethernet:eth0", 9000, 9000, 0, true);
+        assertEquals(1500, mManager.getMtu());
+
+        mManager.choose("wifi:wlan0", 1500, 1500, 1000, true);
+        assertEquals(1280, mManager.getMtu());
+        mManager.choose("wifi:wlan0", 1500, 1500, 65535, true);
+        assertEquals(1500, mManager.getMtu());
+    }
+
+    @Test
+    public void tellsTheListenerOnlyOfChanges() {
+        mManager.choose("wifi:wlan0", 1500, 0, 0, true);
+        assertEquals(Collections.emptyList(), mChanges);
+
+        mManager.choose("cellular:rmnet0", 1400, 0, 0, true);
+        mManager.choose("cellular:rmnet0", 1400, 1440, 0, true);
+        assertEquals(Collections.singletonList(1400), mChanges);
+
+        // the first look at the network, while the VPN is set up with its result
+        mManager.choose("wifi:wlan0", 1500, 0, 0, false);
+        assertEquals(MtuManager.DEFAULT_MTU, mManager.getMtu());
+        assertEquals(Collections.singletonList(1400), mChanges);
+
+        mManager.choose("wifi:wlan0", 1500, 0, 1300, true);
+        assertEquals(Arrays.asList(1400, 1300), mChanges);
+    }
+}
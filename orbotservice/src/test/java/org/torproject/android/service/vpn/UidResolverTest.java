@@ -0,0 +1,81 @@
+package org.torproject.android.service.vpn;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Indexes /proc/net/tcp and tcp6 as a device lists them.
+ */
+public class UidResolverTest {
+
+    private static final String TCP = ""
+            + "  sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode\n"
+            + "   0: 0100007F:2382 00000000:0000 0A 00000000:00000000 00:00000000 00000000 10123        0 34999 1 0000000000000000 100 0 0 10 0\n"
+            + "   1: 0F02000A:C368 8E5BD9AC:01BB 01 00000000:00000000 02:0000ABCD 00000000 10087        0 45112 2 0000000000000000 22 4 30 10 -1\n"
+            + "   2: 0F02000A:B0F1 8E5BD9AC:01BB 06 00000000:00000000 03:00001234 00000000     0        0 0 3 0000000000000000\n";
+
+    private static final String TCP6 = ""
+            + "  sl  local_address                         remote_address                        st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode\n"
+            + "   0: 00000000000000000000000000000000:1F90 00000000000000000000000000000000:0000 0A 00000000:00000000 00:00000000 00000000  1000        0 51234 1 0000000000000000 100 0 0 10 0\n"
+            + "   1: 0000000000000000FFFF00000F02000A:C368 0000000000000000FFFF00008E5BD9AC:01BB 01 00000000:00000000 00:00000000 00000000 10200        0 51300 1 0000000000000000 20 4 28 10 -1";
+
+    private final HashMap<Integer, Integer> mUidByPort = new HashMap<>();
+
+    @Test
+    public void indexesTheLocalPortOfEachSocket() {
+        index(TCP);
+
+        assertEquals(3, mUidByPort.size());
+        assertEquals(10123, (int) mUidByPort.get(0x2382));
+        assertEquals(10087, (int) mUidByPort.get(0xC368));
+        // a socket in TIME_WAIT belongs to root
+        assertEquals(0, (int) mUidByPort.get(0xB0F1));
+    }
+
+    @Test
+    public void skipsTheHeader() {
+        // the first line is taken for the header, whatever it holds
+        index(TCP.substring(TCP.indexOf('\n') + 1));
+
+        assertEquals(2, mUidByPort.size());
+        assertNull(mUidByPort.get(0x2382));
+    }
+
+    @Test
+    public void readsTheLastLineWithoutNewline() {
+        index(TCP6);
+
+        assertEquals(2, mUidByPort.size());
+        assertEquals(1000, (int) mUidByPort.get(0x1F90));
+        assertEquals(10200, (int) mUidByPort.get(0xC368));
+    }
+
+    @Test
+    public void tcp6IsIndexedOverTcp() {
+        index(TCP);
+        index(TCP6);
+
+        assertEquals(10200, (int) mUidByPort.get(0xC368));
+        assertEquals(10123, (int) mUidByPort.get(0x2382));
+        assertEquals(1000, (int) mUidByPort.get(0x1F90));
+    }
+
+    @Test
+    public void ignoresLinesCutShort() {
+        index("header\n   0: 0100007F:2382 00000000:0000 0A\n   1: 0100007F:zz 00000000:0000 0A 00000000:00000000 00:00000000 00000000 10123\n");
+        assertEquals(0, mUidByPort.size());
+    }
+
+    private void index(String proc) {
+        // with room to spare, as the read buffer has
+        byte[] data = new byte[proc.length() + 64];
+        byte[] bytes = proc.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, data, 0, bytes.length);
+        UidResolver.indexSockets(data, bytes.length, mUidByPort::put);
+    }
+}